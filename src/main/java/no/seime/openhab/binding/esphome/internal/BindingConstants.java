@@ -12,6 +12,8 @@
  */
 package no.seime.openhab.binding.esphome.internal;
 
+import java.util.Set;
+
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.openhab.core.thing.ThingTypeUID;
 
@@ -33,4 +35,18 @@ public class BindingConstants {
     public static final String CHANNEL_CONFIGURATION_ENTITY_KEY = "entity_key";
     public static final String CHANNEL_CONFIGURATION_ENTITY_TYPE = "entity_type";
     public static final String CHANNEL_CONFIGURATION_ENTITY_FIELD = "entity_field";
+
+    // Channel configuration set by the user, see OH-INF/config/channel-config.xml
+    public static final String CHANNEL_CONFIG_DESCRIPTION_URI = "channel-type:esphome:state";
+    public static final String CHANNEL_CONFIGURATION_PUBLISH_MODE = "publishMode";
+    public static final String PUBLISH_MODE_CHANGES = "changes";
+    public static final String PUBLISH_MODE_ALL = "all";
+    public static final String CHANNEL_SENSOR_CONFIG_DESCRIPTION_URI = "channel-type:esphome:sensor";
+    public static final String CHANNEL_CONFIGURATION_DEADBAND = "deadband";
+    public static final String CHANNEL_CONFIGURATION_DEADBAND_PERCENT = "deadbandPercent";
+    public static final String CHANNEL_CONFIGURATION_MIN_INTERVAL = "minInterval";
+    public static final String CHANNEL_CONFIGURATION_MAX_INTERVAL = "maxInterval";
+    public static final Set<String> CHANNEL_USER_CONFIGURATION = Set.of(CHANNEL_CONFIGURATION_PUBLISH_MODE,
+            CHANNEL_CONFIGURATION_DEADBAND, CHANNEL_CONFIGURATION_DEADBAND_PERCENT, CHANNEL_CONFIGURATION_MIN_INTERVAL,
+            CHANNEL_CONFIGURATION_MAX_INTERVAL);
 }
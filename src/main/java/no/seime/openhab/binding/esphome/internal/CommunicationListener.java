@@ -31,4 +31,16 @@ public interface CommunicationListener {
     void onParseError(CommunicationError error);
 
     void onConnect() throws ProtocolAPIError;
+
+    /**
+     * Called on the I/O thread for every packet received from the device, before it is queued for processing
+     */
+    void onAlive();
+
+    /**
+     * Called on the I/O thread, pings from the device are only answered once the API connection is established
+     *
+     * @return true if the device has accepted the hello and connect requests
+     */
+    boolean isConnected();
 }
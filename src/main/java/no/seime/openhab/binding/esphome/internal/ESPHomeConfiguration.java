@@ -48,4 +48,20 @@ public class ESPHomeConfiguration {
     public LogLevel deviceLogLevel = LogLevel.NONE;
 
     public boolean enableBluetoothProxy = false;
+
+    public boolean lazyDiagnosticChannels = false;
+
+    public boolean publishChangesOnly = false;
+
+    public int heartbeatInterval = 0;
+
+    public int aggregationWindow = 0;
+
+    public int commandDedupeWindow = 0;
+
+    public boolean parallelDispatch = false;
+
+    public int commandMergeWindow = 200;
+
+    public int maxMessagesPerSecond = 0;
 }
@@ -51,6 +51,24 @@ public class ESPHomeConnection {
         }
     }
 
+    /**
+     * Write several frames with one gathering write
+     */
+    public synchronized void send(ByteBuffer[] buffers) throws ProtocolAPIError {
+        if (socketChannel != null) {
+            try {
+                while (buffers[buffers.length - 1].hasRemaining()) {
+                    logger.trace("[{}] Writing {} frames", logPrefix, buffers.length);
+                    socketChannel.write(buffers);
+                }
+            } catch (IOException e) {
+                throw new ProtocolAPIError(String.format("[%s] Error sending messages: %s ", logPrefix, e));
+            }
+        } else {
+            logger.warn("[{}] Attempted to send data on a closed connection", logPrefix);
+        }
+    }
+
     public void connect(String hostname, int port) throws ProtocolAPIError {
         try {
             logger.info("[{}] Opening socket to {} at port {}.", logPrefix, hostname, port);
@@ -21,7 +21,9 @@ import java.nio.charset.StandardCharsets;
 import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.Base64;
-import java.util.UUID;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.ShortBufferException;
@@ -32,40 +34,66 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.protobuf.GeneratedMessage;
-import com.jano7.executor.KeyRunnable;
-import com.jano7.executor.KeySequentialExecutor;
 import com.southernstorm.noise.protocol.CipherStatePair;
 import com.southernstorm.noise.protocol.HandshakeState;
 
 import io.esphome.api.ApiOptions;
+import io.esphome.api.PingRequest;
+import io.esphome.api.PingResponse;
 import no.seime.openhab.binding.esphome.internal.CommunicationListener;
+import no.seime.openhab.binding.esphome.internal.comm.PacketScheduler.PacketClass;
 
 public class EncryptedFrameHelper {
     public static final int PROTOCOL_PLAINTEXT = 0x00;
     public static final int PROTOCOL_ENCRYPTED = 0x01;
     private final static String NOISE_PROTOCOL = "Noise_NNpsk0_25519_ChaChaPoly_SHA256";
+    private static final int PING_REQUEST_ID = MessageTypeToClassConverter.getMessageId(PingRequest.class);
+    private static final int PING_RESPONSE_ID = MessageTypeToClassConverter.getMessageId(PingResponse.class);
     protected final Logger logger = LoggerFactory.getLogger(EncryptedFrameHelper.class);
     private final String encryptionKeyBase64;
     private final String expectedDeviceId;
-    private final KeySequentialExecutor scheduler;
+    private final PacketScheduler scheduler;
     private final MessageTypeToClassConverter messageTypeToClassConverter = new MessageTypeToClassConverter();
-    protected CommunicationListener listener;
+    protected volatile CommunicationListener listener;
     protected ByteBuffer internalBuffer = ByteBuffer.allocate(READ_BUFFER_SIZE * 2);
     protected ESPHomeConnection connection;
     protected String logPrefix;
     private HandshakeState client;
     private CipherStatePair cipherStatePair;
     private NoiseProtocolState state;
-    private final String connectionId = UUID.randomUUID().toString();
+    // Packets with the same key are processed in order. Shared by all connections of a device, so that packets of a
+    // previous connection are never processed concurrently with those of the next one
+    private final String packetKey;
+    // Encrypting advances the nonce of the cipher, frames must be written in the order they were encrypted
+    private final Object sendLock = new Object();
+    private final OutboundScheduler outboundScheduler;
+    private final ScheduledExecutorService outboundExecutor;
 
+    /**
+     * @param maxMessagesPerSecond budget of messages sent to the device per second, 0 for no limit
+     */
     public EncryptedFrameHelper(ConnectionSelector connectionSelector, CommunicationListener listener,
             String encryptionKeyBase64, @Nullable String expectedDeviceId, String logPrefix,
-            KeySequentialExecutor packetProcessor) {
+            PacketScheduler packetProcessor, String packetKey, ScheduledExecutorService outboundExecutor,
+            int maxMessagesPerSecond) {
         this.logPrefix = logPrefix;
+        this.packetKey = packetKey;
         this.listener = listener;
         this.encryptionKeyBase64 = encryptionKeyBase64;
         this.expectedDeviceId = expectedDeviceId;
         this.scheduler = packetProcessor;
+        this.outboundExecutor = outboundExecutor;
+        this.outboundScheduler = new OutboundScheduler(outboundExecutor, new OutboundScheduler.MessageWriter() {
+            @Override
+            public void write(GeneratedMessage message) {
+                EncryptedFrameHelper.this.write(message);
+            }
+
+            @Override
+            public void writeAll(List<GeneratedMessage> messages) {
+                EncryptedFrameHelper.this.writeAll(messages);
+            }
+        }, logPrefix, maxMessagesPerSecond);
 
         connection = new ESPHomeConnection(connectionSelector, this, logPrefix);
     }
@@ -204,13 +232,14 @@ public class EncryptedFrameHelper {
                 cipherStatePair = client.split();
                 state = NoiseProtocolState.READY;
 
-                scheduler.execute(new KeyRunnable<>(connectionId, () -> {
+                scheduler.execute(packetKey, () -> {
                     try {
                         listener.onConnect();
                     } catch (Exception e) {
                         listener.onParseError(CommunicationError.PACKET_ERROR);
                     }
-                }));
+                    return PacketClass.CONTROL;
+                });
             } catch (ShortBufferException | BadPaddingException e) {
                 throw new ProtocolAPIError(e.getMessage());
             }
@@ -218,17 +247,53 @@ public class EncryptedFrameHelper {
     }
 
     private void handleReady(final byte[] packetData) {
-        // Pass on to packet processor
-        scheduler.execute(new KeyRunnable<>(connectionId, () -> {
+        // Decrypt on the I/O thread, which reads the packets of the connection in order as the cipher requires, and
+        // handle liveness right away so that a backlog of packets to process never looks like an unresponsive device
+        int messageType;
+        byte[] messageData;
+        try {
+            byte[] decrypted = decryptPacket(packetData);
+            messageType = (decrypted[0] << 8) | decrypted[1];
+            messageData = Arrays.copyOfRange(decrypted, 4, decrypted.length);
+        } catch (Exception e) {
+            listener.onParseError(CommunicationError.PACKET_ERROR);
+            return;
+        }
+        handleMessage(messageType, messageData);
+    }
+
+    void handleMessage(int messageType, byte[] messageData) {
+        CommunicationListener listener = this.listener;
+        listener.onAlive();
+        if (messageType == PING_REQUEST_ID) {
+            if (!listener.isConnected()) {
+                logger.debug("[{}] Ignoring ping request, not connected", logPrefix);
+                return;
+            }
+            // Write on the outbound executor, the I/O thread must not wait for a slow socket
             try {
-                byte[] decrypted = decryptPacket(packetData);
-                int messageType = (decrypted[0] << 8) | decrypted[1];
-                byte[] messageData = Arrays.copyOfRange(decrypted, 4, decrypted.length);
-                decodeProtoMessage(messageType, messageData);
-            } catch (Exception e) {
-                listener.onParseError(CommunicationError.PACKET_ERROR);
+                outboundExecutor.execute(this::sendPingResponse);
+            } catch (RejectedExecutionException e) {
+                logger.debug("[{}] Executor is shut down, not responding to ping request", logPrefix);
             }
-        }));
+        } else if (messageType == PING_RESPONSE_ID) {
+            logger.debug("[{}] Received ping response", logPrefix);
+        } else {
+            // Pass on to packet processor
+            scheduler.execute(packetKey, () -> {
+                decodeProtoMessage(messageType, messageData);
+                return PacketClass.of(messageType);
+            });
+        }
+    }
+
+    private void sendPingResponse() {
+        logger.debug("[{}] Responding to ping request", logPrefix);
+        try {
+            send(PingResponse.getDefaultInstance());
+        } catch (ProtocolAPIError e) {
+            logger.warn("[{}] Error sending ping response", logPrefix, e);
+        }
     }
 
     public ByteBuffer encodeFrame(GeneratedMessage message) throws ProtocolAPIError {
@@ -271,9 +336,14 @@ public class EncryptedFrameHelper {
     }
 
     public void close() {
+        outboundScheduler.close();
         connection.close();
     }
 
+    public OutboundScheduler getOutboundScheduler() {
+        return outboundScheduler;
+    }
+
     protected void processBuffer() throws ProtocolException {
         internalBuffer.flip(); // Prepare for reading
 
@@ -381,7 +451,22 @@ public class EncryptedFrameHelper {
         listener.onParseError(error);
     }
 
+    /**
+     * Send a message, subject to the budget of messages per second of the connection
+     */
     public void send(GeneratedMessage message) throws ProtocolAPIError {
+        outboundScheduler.send(message);
+    }
+
+    /**
+     * Send several messages with one write to the socket, subject to the budget of messages per second of the
+     * connection
+     */
+    public void sendAll(List<GeneratedMessage> messages) throws ProtocolAPIError {
+        outboundScheduler.sendAll(messages);
+    }
+
+    private void write(GeneratedMessage message) {
         if (logger.isDebugEnabled()) {
             // ToString method costs a bit
             logger.debug("[{}] Sending message type {} with content '{}'", logPrefix,
@@ -389,7 +474,9 @@ public class EncryptedFrameHelper {
         }
         try {
             if (connection != null) {
-                connection.send(encodeFrame(message));
+                synchronized (sendLock) {
+                    connection.send(encodeFrame(message));
+                }
             } else {
                 logger.debug("Connection is null, cannot send message");
             }
@@ -398,6 +485,26 @@ public class EncryptedFrameHelper {
         }
     }
 
+    private void writeAll(List<GeneratedMessage> messages) {
+        logger.debug("[{}] Sending {} messages in one write", logPrefix, messages.size());
+        try {
+            if (connection != null) {
+                // Encrypt in the order the frames are written
+                synchronized (sendLock) {
+                    ByteBuffer[] frames = new ByteBuffer[messages.size()];
+                    for (int i = 0; i < frames.length; i++) {
+                        frames[i] = encodeFrame(messages.get(i));
+                    }
+                    connection.send(frames);
+                }
+            } else {
+                logger.debug("Connection is null, cannot send messages");
+            }
+        } catch (ProtocolAPIError e) {
+            logger.warn("Error sending messages", e);
+        }
+    }
+
     private enum NoiseProtocolState {
         HELLO,
         HANDSHAKE,
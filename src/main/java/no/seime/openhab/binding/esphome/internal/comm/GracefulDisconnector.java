@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2010-2025 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.esphome.internal.comm;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.protobuf.GeneratedMessage;
+
+import io.esphome.api.DisconnectRequest;
+import io.esphome.api.DisconnectResponse;
+import no.seime.openhab.binding.esphome.internal.CommunicationListener;
+
+/**
+ * Closes device connections politely without blocking the caller. A {@link DisconnectRequest} is sent and the
+ * connection is closed when the device answers with a {@link DisconnectResponse}, or when the grace period expires.
+ * <p>
+ * All disconnects in flight share the same bookkeeping, so that binding shutdown can wait for every device with a
+ * single deadline instead of one timeout per device.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public class GracefulDisconnector {
+
+    private static final long GRACE_PERIOD_MS = 1000;
+
+    private final Logger logger = LoggerFactory.getLogger(GracefulDisconnector.class);
+
+    private final ScheduledExecutorService scheduler;
+    private final Map<EncryptedFrameHelper, CompletableFuture<Void>> pending = new ConcurrentHashMap<>();
+
+    public GracefulDisconnector(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Send a disconnect request and take over ownership of the connection. The previous packet listener will not
+     * receive any more callbacks.
+     */
+    public void disconnect(EncryptedFrameHelper frameHelper, String logPrefix) {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        pending.put(frameHelper, done);
+        done.whenComplete((v, e) -> {
+            pending.remove(frameHelper);
+            frameHelper.close();
+        });
+
+        frameHelper.setPacketListener(new CommunicationListener() {
+            @Override
+            public void onPacket(GeneratedMessage message) {
+                if (message instanceof DisconnectResponse) {
+                    logger.debug("[{}] Device acknowledged disconnect", logPrefix);
+                    done.complete(null);
+                }
+            }
+
+            @Override
+            public void onEndOfStream(String message) {
+                done.complete(null);
+            }
+
+            @Override
+            public void onParseError(CommunicationError error) {
+                done.complete(null);
+            }
+
+            @Override
+            public void onConnect() {
+                // Not expected on an established connection
+            }
+
+            @Override
+            public void onAlive() {
+                // The grace period is fixed, liveness does not extend it
+            }
+
+            @Override
+            public boolean isConnected() {
+                // Do not answer pings while disconnecting
+                return false;
+            }
+        });
+
+        try {
+            frameHelper.send(DisconnectRequest.getDefaultInstance());
+            scheduler.schedule(() -> done.complete(null), GRACE_PERIOD_MS, TimeUnit.MILLISECONDS);
+        } catch (ProtocolAPIError | RuntimeException e) {
+            // Includes RejectedExecutionException when the scheduler is already shut down
+            logger.debug("[{}] Could not send disconnect request, closing connection", logPrefix, e);
+            done.complete(null);
+        }
+    }
+
+    /**
+     * Wait until all disconnects in flight have completed or the deadline has passed, then close any remaining
+     * connections.
+     *
+     * @param timeoutMs shared deadline for all connections
+     */
+    public void awaitAll(long timeoutMs) {
+        CompletableFuture<?>[] futures = pending.values().toArray(CompletableFuture[]::new);
+        if (futures.length == 0) {
+            return;
+        }
+        logger.debug("Waiting for {} devices to acknowledge disconnect", futures.length);
+        try {
+            CompletableFuture.allOf(futures).get(timeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.debug("Not all devices acknowledged disconnect within {} ms, closing connections", timeoutMs);
+        } catch (ExecutionException e) {
+            logger.debug("Error waiting for devices to disconnect", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        pending.values().forEach(f -> f.complete(null));
+    }
+}
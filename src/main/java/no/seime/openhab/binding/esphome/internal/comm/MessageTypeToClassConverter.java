@@ -4,18 +4,36 @@ import java.lang.reflect.Method;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.google.protobuf.Descriptors;
 import com.google.protobuf.GeneratedMessage;
 
 import io.esphome.api.Api;
 
 public class MessageTypeToClassConverter {
 
+    /**
+     * Highest native API message id, for sizing tables indexed by message id
+     */
+    public static final int MAX_MESSAGE_ID = Api.getDescriptor().getMessageTypes().stream()
+            .mapToInt(MessageTypeToClassConverter::messageId).max().orElse(0);
+
+    private static final ClassValue<Integer> MESSAGE_IDS = new ClassValue<>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            try {
+                return messageId((Descriptors.Descriptor) type.getMethod("getDescriptor").invoke(null));
+            } catch (ReflectiveOperationException e) {
+                return 0;
+            }
+        }
+    };
+
     private final Map<Integer, Method> messageTypeToMessageClass = new HashMap<>();
 
     public MessageTypeToClassConverter() {
         Api.getDescriptor().getMessageTypes().forEach(messageDescriptor -> {
             try {
-                int id = messageDescriptor.getOptions().getExtension(io.esphome.api.ApiOptions.id);
+                int id = messageId(messageDescriptor);
                 if (id > 0) {
                     Class<? extends GeneratedMessage> subclass = Class.forName(messageDescriptor.getFullName())
                             .asSubclass(GeneratedMessage.class);
@@ -32,4 +50,15 @@ public class MessageTypeToClassConverter {
     public Method getMethod(int id) {
         return messageTypeToMessageClass.get(id);
     }
+
+    /**
+     * @return the native API message id of the message class, or 0 if the class has none. Resolved once per class.
+     */
+    public static int getMessageId(Class<? extends GeneratedMessage> messageClass) {
+        return MESSAGE_IDS.get(messageClass);
+    }
+
+    private static int messageId(Descriptors.Descriptor messageDescriptor) {
+        return messageDescriptor.getOptions().getExtension(io.esphome.api.ApiOptions.id);
+    }
 }
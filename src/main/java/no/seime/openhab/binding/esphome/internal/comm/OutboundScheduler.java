@@ -0,0 +1,374 @@
+/**
+ * Copyright (c) 2023 Contributors to the Seime Openhab Addons project
+ * <p>
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ * <p>
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ * <p>
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.esphome.internal.comm;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.GeneratedMessage;
+
+/**
+ * Limits the rate of messages sent to a device, so that a slider dragged across its range or a burst of Home
+ * Assistant state pushes does not flood a device that is short of memory.
+ * <p>
+ * Messages are sent right away as long as the budget of messages per second allows, and queued otherwise. Queued
+ * messages go out by {@link OutboundClass}, commands before state pushes before Bluetooth requests, and in order within
+ * a class. A command setting the value of an entity, like the brightness of a light or the position of a cover,
+ * replaces a command of the same type for the same entity still waiting in the queue, so that only the latest value is
+ * sent, unless the queued command sets fields the new one does not. Event like requests such as button presses, media
+ * player commands and service calls are always sent. Connection handling and streamed audio are never held back.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public class OutboundScheduler {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    // Commands setting a value, where only the latest value matters
+    private static final Set<String> SET_POINT_COMMANDS = Set.of("LightCommandRequest", "NumberCommandRequest",
+            "CoverCommandRequest", "ValveCommandRequest", "FanCommandRequest", "ClimateCommandRequest",
+            "SwitchCommandRequest", "SelectCommandRequest", "TextCommandRequest", "DateCommandRequest",
+            "TimeCommandRequest", "DateTimeCommandRequest", "WaterHeaterCommandRequest");
+    private static final String MEDIA_PLAYER_COMMAND = "MediaPlayerCommandRequest";
+
+    private final Logger logger = LoggerFactory.getLogger(OutboundScheduler.class);
+
+    private final ScheduledExecutorService scheduler;
+    private final MessageWriter writer;
+    private final String logPrefix;
+    private final int messagesPerSecond;
+    private final LongSupplier nanoTime;
+
+    // Guarded by this
+    private final Map<OutboundClass, ArrayDeque<Pending>> queues = new HashMap<>();
+    private final Map<PendingKey, Pending> pendingCommands = new HashMap<>();
+    private double tokens;
+    private long refilledNanos;
+    private boolean draining;
+    private @Nullable ScheduledFuture<?> drainFuture;
+    private boolean closed;
+    private long replaced;
+
+    /**
+     * @param messagesPerSecond budget of messages per second, also the largest burst sent at once. 0 for no limit.
+     */
+    public OutboundScheduler(ScheduledExecutorService scheduler, MessageWriter writer, String logPrefix,
+            int messagesPerSecond) {
+        this(scheduler, writer, logPrefix, messagesPerSecond, System::nanoTime);
+    }
+
+    OutboundScheduler(ScheduledExecutorService scheduler, MessageWriter writer, String logPrefix,
+            int messagesPerSecond, LongSupplier nanoTime) {
+        this.scheduler = scheduler;
+        this.writer = writer;
+        this.logPrefix = logPrefix;
+        this.messagesPerSecond = messagesPerSecond;
+        this.nanoTime = nanoTime;
+        this.tokens = messagesPerSecond;
+        this.refilledNanos = nanoTime.getAsLong();
+        for (OutboundClass outboundClass : OutboundClass.values()) {
+            queues.put(outboundClass, new ArrayDeque<>());
+        }
+    }
+
+    public void send(GeneratedMessage message) throws ProtocolAPIError {
+        OutboundClass outboundClass = OutboundClass.of(message);
+        if (messagesPerSecond <= 0 || outboundClass == OutboundClass.IMMEDIATE) {
+            writer.write(message);
+            return;
+        }
+        synchronized (this) {
+            if (closed) {
+                logger.debug("[{}] Connection closed, not sending {}", logPrefix, message.getClass().getSimpleName());
+                return;
+            }
+            PendingKey key = pendingKey(outboundClass, message);
+            if (!replace(key, message)) {
+                Pending pending = new Pending(message, key);
+                queues.get(outboundClass).add(pending);
+                if (key != null) {
+                    pendingCommands.put(key, pending);
+                }
+            }
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        drain();
+    }
+
+    /**
+     * Send several messages with one write if the budget allows all of them and nothing is queued, otherwise queue them
+     * one by one
+     */
+    public void sendAll(List<GeneratedMessage> messages) throws ProtocolAPIError {
+        if (messages.isEmpty()) {
+            return;
+        }
+        if (messagesPerSecond <= 0) {
+            writer.writeAll(messages);
+            return;
+        }
+        boolean writeNow;
+        synchronized (this) {
+            if (closed) {
+                logger.debug("[{}] Connection closed, not sending {} messages", logPrefix, messages.size());
+                return;
+            }
+            refill();
+            writeNow = !draining && getQueued() == 0 && tokens >= messages.size();
+            if (writeNow) {
+                tokens -= messages.size();
+                // Hold back other senders until the messages are written
+                draining = true;
+            }
+        }
+        if (writeNow) {
+            try {
+                writer.writeAll(messages);
+            } finally {
+                boolean drainQueued;
+                synchronized (this) {
+                    drainQueued = getQueued() > 0;
+                    draining = drainQueued;
+                }
+                if (drainQueued) {
+                    drain();
+                }
+            }
+            return;
+        }
+        for (GeneratedMessage message : messages) {
+            send(message);
+        }
+    }
+
+    /**
+     * Drop all queued messages, when the connection is closed
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            queues.values().forEach(ArrayDeque::clear);
+            pendingCommands.clear();
+            ScheduledFuture<?> future = drainFuture;
+            if (future != null) {
+                future.cancel(false);
+                drainFuture = null;
+            }
+        }
+    }
+
+    /**
+     * @return number of commands replaced by a later command for the same entity before they were sent
+     */
+    public synchronized long getReplaced() {
+        return replaced;
+    }
+
+    /**
+     * @return number of messages waiting for budget
+     */
+    public synchronized int getQueued() {
+        return queues.values().stream().mapToInt(ArrayDeque::size).sum();
+    }
+
+    private boolean replace(@Nullable PendingKey key, GeneratedMessage message) {
+        Pending pending = key == null ? null : pendingCommands.get(key);
+        if (pending == null || !message.getAllFields().keySet().containsAll(pending.message.getAllFields().keySet())) {
+            return false;
+        }
+        // Keep the place in the queue, send the latest value
+        pending.message = message;
+        replaced++;
+        return true;
+    }
+
+    /**
+     * Send queued messages while the budget allows, one thread at a time so that messages are written in queue order
+     */
+    private void drain() {
+        while (true) {
+            Pending next;
+            synchronized (this) {
+                refill();
+                next = tokens >= 1 ? poll() : null;
+                if (next == null) {
+                    draining = false;
+                    if (!closed && getQueued() > 0) {
+                        scheduleDrain();
+                    }
+                    return;
+                }
+                tokens--;
+            }
+            try {
+                writer.write(next.message);
+            } catch (ProtocolAPIError e) {
+                logger.warn("[{}] Error sending {}", logPrefix, next.message.getClass().getSimpleName(), e);
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    draining = false;
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void scheduleDrain() {
+        if (drainFuture != null) {
+            return;
+        }
+        long delayNanos = (long) ((1 - tokens) * NANOS_PER_SECOND / messagesPerSecond);
+        try {
+            drainFuture = scheduler.schedule(() -> {
+                synchronized (this) {
+                    drainFuture = null;
+                    if (draining || closed) {
+                        return;
+                    }
+                    draining = true;
+                }
+                drain();
+            }, Math.max(1, delayNanos), TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            logger.debug("[{}] Scheduler is shut down, dropping {} queued messages", logPrefix, getQueued());
+            queues.values().forEach(ArrayDeque::clear);
+            pendingCommands.clear();
+        }
+    }
+
+    private void refill() {
+        long now = nanoTime.getAsLong();
+        tokens = Math.min(messagesPerSecond,
+                tokens + (double) (now - refilledNanos) * messagesPerSecond / NANOS_PER_SECOND);
+        refilledNanos = now;
+    }
+
+    private @Nullable Pending poll() {
+        for (OutboundClass outboundClass : OutboundClass.values()) {
+            Pending pending = queues.get(outboundClass).poll();
+            if (pending != null) {
+                if (pending.key != null) {
+                    pendingCommands.remove(pending.key, pending);
+                }
+                return pending;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return key of a command that may be replaced by a later one, or null if the message must always be sent
+     */
+    private static @Nullable PendingKey pendingKey(OutboundClass outboundClass, GeneratedMessage message) {
+        if (outboundClass != OutboundClass.COMMAND || !isSetPoint(message)) {
+            return null;
+        }
+        FieldDescriptor keyField = message.getDescriptorForType().findFieldByName("key");
+        if (keyField == null || keyField.getJavaType() != FieldDescriptor.JavaType.INT) {
+            return null;
+        }
+        return new PendingKey(message.getClass(), (Integer) message.getField(keyField));
+    }
+
+    private static boolean isSetPoint(GeneratedMessage message) {
+        String name = message.getDescriptorForType().getName();
+        if (MEDIA_PLAYER_COMMAND.equals(name)) {
+            // A volume change is a value, play, pause and the like are events
+            FieldDescriptor hasCommand = message.getDescriptorForType().findFieldByName("has_command");
+            return hasCommand != null && !(Boolean) message.getField(hasCommand);
+        }
+        return SET_POINT_COMMANDS.contains(name);
+    }
+
+    /**
+     * Writes a message to the connection
+     */
+    @FunctionalInterface
+    public interface MessageWriter {
+        void write(GeneratedMessage message) throws ProtocolAPIError;
+
+        /**
+         * Write several messages at once, by default one by one
+         */
+        default void writeAll(List<GeneratedMessage> messages) throws ProtocolAPIError {
+            for (GeneratedMessage message : messages) {
+                write(message);
+            }
+        }
+    }
+
+    /**
+     * Classes of outbound messages, queued messages are sent in this order
+     */
+    public enum OutboundClass {
+        /**
+         * Connection handling, subscriptions, pings and streamed audio, sent right away outside the budget
+         */
+        IMMEDIATE,
+        /**
+         * Entity commands and service calls
+         */
+        COMMAND,
+        /**
+         * Home Assistant states pushed to the device
+         */
+        STATE,
+        /**
+         * Bluetooth proxy, camera and serial proxy requests
+         */
+        BULK;
+
+        public static OutboundClass of(GeneratedMessage message) {
+            String name = message.getDescriptorForType().getName();
+            if (name.endsWith("CommandRequest") || name.equals("ExecuteServiceRequest")) {
+                return COMMAND;
+            } else if (name.equals("HomeAssistantStateResponse")) {
+                return STATE;
+            } else if (name.startsWith("Bluetooth") || name.equals("CameraImageRequest")
+                    || name.startsWith("SerialProxy")) {
+                return BULK;
+            }
+            return IMMEDIATE;
+        }
+    }
+
+    private record PendingKey(Class<?> type, int key) {
+    }
+
+    private static final class Pending {
+        private GeneratedMessage message;
+        private final @Nullable PendingKey key;
+
+        private Pending(GeneratedMessage message, @Nullable PendingKey key) {
+            this.message = message;
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,377 @@
+/**
+ * Copyright (c) 2023 Contributors to the Seime Openhab Addons project
+ * <p>
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ * <p>
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ * <p>
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.esphome.internal.comm;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.protobuf.Descriptors;
+
+import io.esphome.api.Api;
+import io.esphome.api.ApiOptions;
+
+/**
+ * Processes received packets in order for each device, sharing the threads fairly between devices with deficit round
+ * robin.
+ * <p>
+ * Each device has a queue of packets. Devices with queued packets take turns, and in each turn a device may process
+ * packets until it has used up its quantum. What a packet costs depends on its {@link PacketClass}: the weight of a
+ * class is the number of packets of that class a device may process in one turn. A device flooding the binding with
+ * Bluetooth advertisements or entity listings thus only holds a thread for a short while before the other devices get
+ * their turn. The class of a packet is only known once it has been decrypted, so it is charged after processing.
+ * <p>
+ * Packets may also be queued per entity of a device, processed in order for each entity but concurrently with the
+ * other packets of the device. The entity queues belong to the device: they are served in the turn of the device and
+ * charged to its quantum, so that a device processing entity states in parallel gets no more turns than any other.
+ * Further workers join the turn of a device only when no other device is waiting for its turn.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public class PacketScheduler {
+
+    private static final long QUANTUM = 1_000_000;
+
+    private final Logger logger = LoggerFactory.getLogger(PacketScheduler.class);
+
+    private final Executor executor;
+    private final int maxWorkers;
+    private final long[] costs = new long[PacketClass.values().length];
+
+    // Guarded by this
+    private final Map<String, Mailbox> mailboxes = new HashMap<>();
+    private final ArrayDeque<Mailbox> ready = new ArrayDeque<>();
+    // Devices in their turn with entity queues waiting for a worker
+    private final ArrayDeque<Mailbox> joinable = new ArrayDeque<>();
+    private int workers;
+
+    /**
+     * @param maxWorkers maximum number of packets processed concurrently, typically the number of threads of the
+     *            executor
+     */
+    public PacketScheduler(Executor executor, int maxWorkers) {
+        this.executor = executor;
+        this.maxWorkers = maxWorkers;
+        setWeights(8, 4, 1);
+    }
+
+    /**
+     * Set the number of packets of each class a device may process per turn
+     */
+    public synchronized void setWeights(int control, int state, int bulk) {
+        costs[PacketClass.CONTROL.ordinal()] = QUANTUM / Math.max(1, control);
+        costs[PacketClass.STATE.ordinal()] = QUANTUM / Math.max(1, state);
+        costs[PacketClass.BULK.ordinal()] = QUANTUM / Math.max(1, bulk);
+    }
+
+    /**
+     * Queue a packet. Packets with the same key are processed one at a time, in the order they were queued.
+     */
+    public void execute(String key, PacketTask task) {
+        queue(key, null, task);
+    }
+
+    /**
+     * Queue a packet of an entity of a device. Packets of the same entity are processed one at a time, in the order
+     * they were queued, and may be processed concurrently with the other packets of the device.
+     */
+    public void execute(String key, int entity, PacketTask task) {
+        queue(key, entity, task);
+    }
+
+    /**
+     * @return time packets of the device and its entities waited in their queues since the previous call, or null if
+     *         none were processed
+     */
+    public synchronized @Nullable QueueWait getQueueWait(String key) {
+        Mailbox mailbox = mailboxes.get(key);
+        if (mailbox == null || mailbox.processed == 0) {
+            return null;
+        }
+        QueueWait queueWait = new QueueWait(mailbox.processed, mailbox.waitedNanos / mailbox.processed,
+                mailbox.maxWaitNanos);
+        mailbox.processed = 0;
+        mailbox.waitedNanos = 0;
+        mailbox.maxWaitNanos = 0;
+        return queueWait;
+    }
+
+    /**
+     * Forget the queues of a device and of its entities when the device is gone. Packets already queued are still
+     * processed.
+     */
+    public synchronized void remove(String key) {
+        mailboxes.remove(key);
+    }
+
+    private void queue(String key, @Nullable Integer entity, PacketTask task) {
+        boolean startWorker = false;
+        synchronized (this) {
+            Mailbox mailbox = mailboxes.computeIfAbsent(key, Mailbox::new);
+            Lane lane = entity == null ? mailbox.deviceLane
+                    : mailbox.entityLanes.computeIfAbsent(entity, e -> new Lane());
+            lane.queue.add(new Packet(task, System.nanoTime()));
+            if (!lane.busy && !lane.pending) {
+                lane.pending = true;
+                mailbox.pending.add(lane);
+            }
+            boolean wantsWorker;
+            if (!mailbox.scheduled) {
+                mailbox.scheduled = true;
+                ready.add(mailbox);
+                wantsWorker = true;
+            } else {
+                wantsWorker = offerJoin(mailbox);
+            }
+            if (wantsWorker && workers < maxWorkers) {
+                workers++;
+                startWorker = true;
+            }
+        }
+        if (startWorker) {
+            submit();
+        }
+    }
+
+    private void submit() {
+        try {
+            executor.execute(this::work);
+        } catch (RejectedExecutionException e) {
+            logger.debug("Packet executor is shut down, not processing queued packets");
+            synchronized (this) {
+                workers--;
+            }
+        }
+    }
+
+    /**
+     * Give the next device with queued packets its turn, or help a device in its turn with the queues of its other
+     * entities. Continues in a new task rather than looping, so that other work of a shared executor is not held up
+     * by a steady stream of packets.
+     */
+    private void work() {
+        Mailbox mailbox;
+        synchronized (this) {
+            mailbox = ready.poll();
+            if (mailbox != null) {
+                mailbox.deficit += QUANTUM;
+            } else {
+                mailbox = pollJoinable();
+                if (mailbox == null) {
+                    workers--;
+                    return;
+                }
+            }
+            mailbox.active++;
+        }
+        serve(mailbox);
+        synchronized (this) {
+            mailbox.active--;
+            if (mailbox.active == 0) {
+                // Last worker of the turn
+                if (mailbox.pending.isEmpty()) {
+                    mailbox.scheduled = false;
+                    mailbox.deficit = 0;
+                } else {
+                    ready.add(mailbox);
+                }
+            }
+            if (ready.isEmpty() && joinable.isEmpty()) {
+                workers--;
+                return;
+            }
+        }
+        submit();
+    }
+
+    /**
+     * Process packets of a device while its quantum lasts, taking one queue at a time
+     */
+    private void serve(Mailbox mailbox) {
+        Lane lane = null;
+        while (true) {
+            Packet packet;
+            boolean startHelper = false;
+            synchronized (this) {
+                if (lane == null) {
+                    lane = mailbox.pending.poll();
+                    if (lane == null) {
+                        return;
+                    }
+                    lane.pending = false;
+                    lane.busy = true;
+                    if (offerJoin(mailbox) && workers < maxWorkers) {
+                        workers++;
+                        startHelper = true;
+                    }
+                }
+                packet = mailbox.deficit > 0 ? lane.queue.poll() : null;
+                if (packet == null) {
+                    lane.busy = false;
+                    if (!lane.queue.isEmpty()) {
+                        lane.pending = true;
+                        mailbox.pending.add(lane);
+                    }
+                    if (mailbox.deficit <= 0) {
+                        return;
+                    }
+                    lane = null;
+                    continue;
+                }
+                long waited = System.nanoTime() - packet.queuedNanos;
+                mailbox.processed++;
+                mailbox.waitedNanos += waited;
+                mailbox.maxWaitNanos = Math.max(mailbox.maxWaitNanos, waited);
+            }
+            if (startHelper) {
+                submit();
+            }
+            PacketClass packetClass;
+            try {
+                packetClass = packet.task.process();
+            } catch (RuntimeException e) {
+                logger.warn("[{}] Error processing packet", mailbox.key, e);
+                packetClass = PacketClass.STATE;
+            }
+            synchronized (this) {
+                mailbox.deficit -= costs[packetClass.ordinal()];
+            }
+        }
+    }
+
+    /**
+     * Ask for another worker for a device in its turn with queues no worker has taken yet
+     *
+     * @return true if the device was not already waiting for a worker
+     */
+    private boolean offerJoin(Mailbox mailbox) {
+        if (mailbox.active == 0 || mailbox.deficit <= 0 || mailbox.pending.isEmpty() || mailbox.joinable) {
+            return false;
+        }
+        mailbox.joinable = true;
+        joinable.add(mailbox);
+        return true;
+    }
+
+    private @Nullable Mailbox pollJoinable() {
+        Mailbox mailbox;
+        while ((mailbox = joinable.poll()) != null) {
+            mailbox.joinable = false;
+            // The turn may have ended since
+            if (mailbox.active > 0 && mailbox.deficit > 0 && !mailbox.pending.isEmpty()) {
+                return mailbox;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Processes one packet
+     */
+    @FunctionalInterface
+    public interface PacketTask {
+        /**
+         * @return the class of the processed packet, determining what it costs the device
+         */
+        PacketClass process();
+    }
+
+    /**
+     * Time packets of a device waited to be processed
+     */
+    public record QueueWait(long packets, long averageNanos, long maxNanos) {
+    }
+
+    public enum PacketClass {
+        /**
+         * Connection handling, such as hello, ping and disconnect
+         */
+        CONTROL,
+        /**
+         * Entity listings and states, the default
+         */
+        STATE,
+        /**
+         * High volume streams: Bluetooth advertisements, device logs, audio and camera images
+         */
+        BULK;
+
+        private static final Set<String> CONTROL_MESSAGES = Set.of("HelloResponse", "AuthenticationResponse",
+                "DisconnectRequest", "DisconnectResponse", "PingRequest", "PingResponse", "DeviceInfoResponse",
+                "GetTimeRequest", "ExecuteServiceResponse", "HomeassistantActionRequest");
+        private static final Set<String> BULK_MESSAGES = Set.of("BluetoothLEAdvertisementResponse",
+                "BluetoothLERawAdvertisementsResponse", "SubscribeLogsResponse", "VoiceAssistantAudio",
+                "CameraImageResponse", "SerialProxyDataReceived");
+
+        private static final PacketClass[] BY_ID = new PacketClass[MessageTypeToClassConverter.MAX_MESSAGE_ID + 1];
+
+        static {
+            Arrays.fill(BY_ID, STATE);
+            for (Descriptors.Descriptor descriptor : Api.getDescriptor().getMessageTypes()) {
+                int id = descriptor.getOptions().getExtension(ApiOptions.id);
+                if (id > 0) {
+                    String name = descriptor.getName();
+                    BY_ID[id] = CONTROL_MESSAGES.contains(name) ? CONTROL
+                            : BULK_MESSAGES.contains(name) ? BULK : STATE;
+                }
+            }
+        }
+
+        public static PacketClass of(int messageId) {
+            return messageId > 0 && messageId < BY_ID.length ? BY_ID[messageId] : STATE;
+        }
+    }
+
+    private record Packet(PacketTask task, long queuedNanos) {
+    }
+
+    private static final class Mailbox {
+        private final String key;
+        private final Lane deviceLane = new Lane();
+        private final Map<Integer, Lane> entityLanes = new HashMap<>();
+        // Queues with packets no worker has taken, in the order they got them
+        private final ArrayDeque<Lane> pending = new ArrayDeque<>();
+        // In the ready queue or in its turn
+        private boolean scheduled;
+        private boolean joinable;
+        // Workers in the turn of the device
+        private int active;
+        private long deficit;
+        private long processed;
+        private long waitedNanos;
+        private long maxWaitNanos;
+
+        private Mailbox(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * Queue of the device itself or of one of its entities, taken by one worker at a time
+     */
+    private static final class Lane {
+        private final ArrayDeque<Packet> queue = new ArrayDeque<>();
+        private boolean pending;
+        private boolean busy;
+    }
+}
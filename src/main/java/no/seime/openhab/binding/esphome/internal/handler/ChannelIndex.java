@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2010-2025 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.esphome.internal.handler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.thing.Channel;
+import org.openhab.core.thing.ChannelUID;
+
+import no.seime.openhab.binding.esphome.internal.BindingConstants;
+
+/**
+ * Lookup of the channels of a thing by entity key and field, and by channel id.
+ * <p>
+ * Entity keys are resolved through an open-addressing table of primitive ints, so a lookup neither walks the channel
+ * list nor allocates. Whether a channel is linked to an item is kept in a bitset by channel position, so that state
+ * updates for unlinked channels can be dropped before conversion. The channels are fixed when the index is built, once
+ * per interrogation, while the bit of a channel is updated in place when its link changes.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public final class ChannelIndex {
+
+    public static final ChannelIndex EMPTY = new ChannelIndex(List.of());
+
+    private final Channel[] channels;
+    private final AtomicLongArray linked;
+    private final int mask;
+    private final int[] keys;
+    private final @Nullable Entity[] entities;
+    private final Map<String, Integer> ordinalsById;
+
+    /**
+     * Index where all channels are considered linked
+     */
+    public ChannelIndex(List<Channel> channels) {
+        this(channels, channelUID -> true);
+    }
+
+    public ChannelIndex(List<Channel> channels, Predicate<ChannelUID> isLinked) {
+        this.channels = channels.toArray(Channel[]::new);
+        linked = new AtomicLongArray((this.channels.length + 63) >>> 6);
+
+        Map<Integer, List<Integer>> channelsByKey = new LinkedHashMap<>();
+        Map<String, Integer> byId = new HashMap<>();
+        for (int i = 0; i < this.channels.length; i++) {
+            Channel channel = this.channels[i];
+            byId.put(channel.getUID().getId(), i);
+            if (isLinked.test(channel.getUID())) {
+                setLinked(i, true);
+            }
+            Object key = channel.getConfiguration().get(BindingConstants.CHANNEL_CONFIGURATION_ENTITY_KEY);
+            if (key instanceof Number number) {
+                channelsByKey.computeIfAbsent(number.intValue(), k -> new ArrayList<>()).add(i);
+            }
+        }
+        ordinalsById = Map.copyOf(byId);
+
+        // Keep the load factor at or below 0.5
+        int capacity = Integer.highestOneBit(Math.max(1, channelsByKey.size()) * 2 - 1) << 1;
+        mask = capacity - 1;
+        keys = new int[capacity];
+        entities = new Entity[capacity];
+        for (Map.Entry<Integer, List<Integer>> entry : channelsByKey.entrySet()) {
+            int key = entry.getKey();
+            int slot = slot(key);
+            while (entities[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            entities[slot] = new Entity(this.channels, entry.getValue());
+        }
+    }
+
+    /**
+     * @return the first channel of the entity, regardless of field
+     */
+    public @Nullable Channel get(int key) {
+        int ordinal = ordinal(key);
+        return ordinal < 0 ? null : channels[ordinal];
+    }
+
+    public @Nullable Channel get(int key, String field) {
+        int ordinal = ordinal(key, field);
+        return ordinal < 0 ? null : channels[ordinal];
+    }
+
+    public @Nullable Channel get(String channelId) {
+        Integer ordinal = ordinalsById.get(channelId);
+        return ordinal == null ? null : channels[ordinal];
+    }
+
+    /**
+     * @return the first channel of the entity if it is linked to an item
+     */
+    public @Nullable Channel getLinked(int key) {
+        int ordinal = ordinal(key);
+        return ordinal < 0 || !isLinked(ordinal) ? null : channels[ordinal];
+    }
+
+    public @Nullable Channel getLinked(int key, String field) {
+        int ordinal = ordinal(key, field);
+        return ordinal < 0 || !isLinked(ordinal) ? null : channels[ordinal];
+    }
+
+    /**
+     * Record that the channel was linked to or unlinked from an item
+     *
+     * @return false if the channel is not in the index
+     */
+    public boolean setLinked(String channelId, boolean isLinked) {
+        Integer ordinal = ordinalsById.get(channelId);
+        if (ordinal == null) {
+            return false;
+        }
+        setLinked(ordinal, isLinked);
+        return true;
+    }
+
+    /**
+     * @return number of channels the index was built from
+     */
+    public int size() {
+        return channels.length;
+    }
+
+    private int ordinal(int key) {
+        Entity entity = find(key);
+        return entity == null ? -1 : entity.ordinals[0];
+    }
+
+    private int ordinal(int key, String field) {
+        Entity entity = find(key);
+        if (entity == null) {
+            return -1;
+        }
+        @Nullable
+        String[] fields = entity.fields;
+        for (int i = 0; i < fields.length; i++) {
+            if (field.equals(fields[i])) {
+                return entity.ordinals[i];
+            }
+        }
+        return -1;
+    }
+
+    private boolean isLinked(int ordinal) {
+        return (linked.get(ordinal >>> 6) & (1L << ordinal)) != 0;
+    }
+
+    private void setLinked(int ordinal, boolean isLinked) {
+        long bit = 1L << ordinal;
+        linked.getAndUpdate(ordinal >>> 6, word -> isLinked ? word | bit : word & ~bit);
+    }
+
+    private @Nullable Entity find(int key) {
+        int slot = slot(key);
+        Entity entity;
+        while ((entity = entities[slot]) != null) {
+            if (keys[slot] == key) {
+                return entity;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    private int slot(int key) {
+        int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private static final class Entity {
+        private final int[] ordinals;
+        private final @Nullable String[] fields;
+
+        private Entity(Channel[] channels, List<Integer> entityOrdinals) {
+            ordinals = entityOrdinals.stream().mapToInt(Integer::intValue).toArray();
+            fields = new String[ordinals.length];
+            for (int i = 0; i < ordinals.length; i++) {
+                Object field = channels[ordinals[i]].getConfiguration()
+                        .get(BindingConstants.CHANNEL_CONFIGURATION_ENTITY_FIELD);
+                fields[i] = field instanceof String s ? s : null;
+            }
+        }
+    }
+}
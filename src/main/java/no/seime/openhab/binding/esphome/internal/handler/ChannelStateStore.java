@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2010-2025 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.esphome.internal.handler;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.DoubleFunction;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.types.State;
+
+/**
+ * Last state received from the device for each channel of a thing, so that a REFRESH can be answered without asking
+ * the device to send all its states again.
+ * <p>
+ * Channels are assigned a slot on first use, and values are kept in arrays indexed by slot. Numbers are stored as
+ * primitive floats and only converted to a {@link State} when read. Other states are stored as is, with string states
+ * interned since text sensors tend to repeat a small set of values.
+ * <p>
+ * A state is unconfirmed from when a command is sent to the channel until the device reports the state again.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public final class ChannelStateStore {
+
+    private static final byte KIND_NONE = 0;
+    private static final byte KIND_NUMBER = 1;
+    private static final byte KIND_STATE = 2;
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MAX_INTERNED_STRINGS = 1024;
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final Map<String, StringType> internedStrings = new HashMap<>();
+    private byte[] kinds = new byte[INITIAL_CAPACITY];
+    private float[] numbers = new float[INITIAL_CAPACITY];
+    private long[] receivedNanos = new long[INITIAL_CAPACITY];
+    private boolean[] commanded = new boolean[INITIAL_CAPACITY];
+    private @Nullable State[] states = new State[INITIAL_CAPACITY];
+
+    public synchronized void recordNumber(String channelId, float value) {
+        int slot = slot(channelId);
+        kinds[slot] = KIND_NUMBER;
+        numbers[slot] = value;
+        states[slot] = null;
+        receivedNanos[slot] = System.nanoTime();
+        commanded[slot] = false;
+    }
+
+    public synchronized void recordState(String channelId, State state) {
+        int slot = slot(channelId);
+        kinds[slot] = KIND_STATE;
+        states[slot] = state instanceof StringType string ? intern(string) : state;
+        receivedNanos[slot] = System.nanoTime();
+        commanded[slot] = false;
+    }
+
+    /**
+     * A command has been sent to the channel, the recorded state is unconfirmed until the device reports it again
+     */
+    public synchronized void recordCommand(String channelId) {
+        commanded[slot(channelId)] = true;
+    }
+
+    /**
+     * @param numberConverter creates the state of a stored number
+     * @return the last state recorded for the channel, or null if none
+     */
+    public synchronized @Nullable State get(String channelId, DoubleFunction<State> numberConverter) {
+        Integer slot = slots.get(channelId);
+        return slot == null ? null : state(slot, numberConverter);
+    }
+
+    /**
+     * @param maxAgeNanos maximum time since the state was received
+     * @return the last state recorded for the channel, or null if none, if it is older than the given age or if a
+     *         command has been sent to the channel since
+     */
+    public synchronized @Nullable State getConfirmed(String channelId, long maxAgeNanos,
+            DoubleFunction<State> numberConverter) {
+        Integer slot = slots.get(channelId);
+        if (slot == null || commanded[slot] || System.nanoTime() - receivedNanos[slot] > maxAgeNanos) {
+            return null;
+        }
+        return state(slot, numberConverter);
+    }
+
+    private @Nullable State state(int slot, DoubleFunction<State> numberConverter) {
+        return switch (kinds[slot]) {
+            case KIND_NUMBER -> numberConverter.apply(numbers[slot]);
+            case KIND_STATE -> states[slot];
+            default -> null;
+        };
+    }
+
+    /**
+     * Forget all recorded states. Slots are kept.
+     */
+    public synchronized void clear() {
+        Arrays.fill(kinds, KIND_NONE);
+        Arrays.fill(states, null);
+        Arrays.fill(commanded, false);
+        internedStrings.clear();
+    }
+
+    /**
+     * @return the slot of the channel, assigned on first use and kept for the lifetime of the store
+     */
+    private int slot(String channelId) {
+        Integer slot = slots.get(channelId);
+        if (slot == null) {
+            slot = slots.size();
+            slots.put(channelId, slot);
+            if (slot == kinds.length) {
+                int capacity = kinds.length * 2;
+                kinds = Arrays.copyOf(kinds, capacity);
+                numbers = Arrays.copyOf(numbers, capacity);
+                receivedNanos = Arrays.copyOf(receivedNanos, capacity);
+                commanded = Arrays.copyOf(commanded, capacity);
+                states = Arrays.copyOf(states, capacity);
+            }
+        }
+        return slot;
+    }
+
+    private StringType intern(StringType string) {
+        StringType interned = internedStrings.get(string.toString());
+        if (interned != null) {
+            return interned;
+        }
+        if (internedStrings.size() >= MAX_INTERNED_STRINGS) {
+            internedStrings.clear();
+        }
+        internedStrings.put(string.toString(), string);
+        return string;
+    }
+}
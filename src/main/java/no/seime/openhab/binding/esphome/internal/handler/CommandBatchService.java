@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2023 Contributors to the Seime Openhab Addons project
+ * <p>
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ * <p>
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ * <p>
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.esphome.internal.handler;
+
+import static org.openhab.core.library.CoreItemFactory.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.library.types.DateTimeType;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.HSBType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.QuantityType;
+import org.openhab.core.library.types.StopMoveType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.library.types.UpDownType;
+import org.openhab.core.thing.Channel;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.types.Command;
+import org.openhab.core.types.TypeParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends commands to channels of several ESPHome devices at once, for instance to set a scene.
+ * <p>
+ * Commands are grouped by device, and the devices handle their commands in parallel. The requests resulting from the
+ * commands for one device are merged per entity and written to the connection with one write, instead of one write per
+ * command. The commands are sent directly to the devices, they do not pass the event bus as item commands, and items
+ * are updated once the devices report their new states.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public class CommandBatchService {
+
+    private final Logger logger = LoggerFactory.getLogger(CommandBatchService.class);
+
+    private final Function<ThingUID, @Nullable ESPHomeHandler> handlers;
+    private final Executor executor;
+
+    /**
+     * @param handlers looks up the handler of an ESPHome device thing
+     */
+    public CommandBatchService(Function<ThingUID, @Nullable ESPHomeHandler> handlers, Executor executor) {
+        this.handlers = handlers;
+        this.executor = executor;
+    }
+
+    /**
+     * @return completes once the requests for all devices have been written
+     */
+    public CompletableFuture<Void> sendCommands(Collection<ChannelCommand> commands) {
+        Map<ThingUID, List<ChannelCommand>> byDevice = new LinkedHashMap<>();
+        for (ChannelCommand command : commands) {
+            byDevice.computeIfAbsent(command.channelUID().getThingUID(), k -> new ArrayList<>()).add(command);
+        }
+
+        List<CompletableFuture<Void>> devices = new ArrayList<>();
+        byDevice.forEach((thingUID, deviceCommands) -> {
+            ESPHomeHandler handler = handlers.apply(thingUID);
+            if (handler == null) {
+                logger.warn("Not sending {} commands to {}, it is not an ESPHome device", deviceCommands.size(),
+                        thingUID);
+                return;
+            }
+            devices.add(CompletableFuture.runAsync(() -> handler.handleCommandBatch(deviceCommands), executor));
+        });
+        return CompletableFuture.allOf(devices.toArray(CompletableFuture[]::new));
+    }
+
+    /**
+     * @return the channel of an ESPHome device, or null if there is no such channel
+     */
+    public @Nullable Channel getChannel(ChannelUID channelUID) {
+        ESPHomeHandler handler = handlers.apply(channelUID.getThingUID());
+        return handler == null ? null : handler.getThing().getChannel(channelUID);
+    }
+
+    /**
+     * Parse a command as the item type accepted by the channel would
+     *
+     * @return the command, or null if the value is not a valid command for the item type
+     */
+    public static @Nullable Command parseCommand(@Nullable String acceptedItemType, String value) {
+        String itemType = acceptedItemType == null ? STRING : acceptedItemType.split(":")[0];
+        return switch (itemType) {
+            case SWITCH -> TypeParser.parseCommand(List.of(OnOffType.class), value);
+            case DIMMER -> TypeParser.parseCommand(List.of(OnOffType.class, PercentType.class), value);
+            case COLOR -> TypeParser.parseCommand(List.of(OnOffType.class, PercentType.class, HSBType.class), value);
+            case ROLLERSHUTTER -> TypeParser
+                    .parseCommand(List.of(UpDownType.class, StopMoveType.class, PercentType.class), value);
+            case NUMBER -> TypeParser.parseCommand(List.of(DecimalType.class, QuantityType.class), value);
+            case DATETIME -> TypeParser.parseCommand(List.of(DateTimeType.class), value);
+            default -> new StringType(value);
+        };
+    }
+
+    /**
+     * A command for a channel of an ESPHome device
+     */
+    public record ChannelCommand(ChannelUID channelUID, Command command) {
+    }
+}
@@ -12,33 +12,141 @@
  */
 package no.seime.openhab.binding.esphome.internal.handler;
 
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
 import org.openhab.core.storage.StorageService;
 import org.openhab.core.thing.ThingUID;
 import org.openhab.core.thing.binding.AbstractStorageBasedTypeProvider;
 import org.openhab.core.thing.type.ChannelType;
 import org.openhab.core.thing.type.ChannelTypeProvider;
+import org.openhab.core.thing.type.ChannelTypeUID;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Channel Type Provider that does a callback the handler that initiated it.
+ * <p>
+ * Keeps an index of the channel type UIDs registered per thing, so that replacing or removing the channel types of a
+ * single thing does not require scanning (and deserializing) every channel type in storage.
  *
  * @author Arne Seime - Initial contribution
  */
 @Component(service = { ESPChannelTypeProvider.class, ChannelTypeProvider.class })
 @NonNullByDefault
 public class ESPChannelTypeProvider extends AbstractStorageBasedTypeProvider {
+
+    // Channel type ids are created as <thingId>_<random UUID>, see AbstractMessageHandler.addChannelType
+    private static final int UUID_SUFFIX_LENGTH = 37;
+
+    private final Logger logger = LoggerFactory.getLogger(ESPChannelTypeProvider.class);
+
+    private final Map<String, Set<ChannelTypeUID>> channelTypesByThing = new ConcurrentHashMap<>();
+    private volatile boolean indexLoaded = false;
+
     @Activate
     public ESPChannelTypeProvider(@Reference StorageService storageService) {
         super(storageService);
     }
 
-    public void removeChannelTypesForThing(ThingUID uid) {
+    /**
+     * Replace all channel types registered for a thing with the given ones. Channel types previously registered for
+     * the thing that are not part of the new set are removed. All storage mutations happen back-to-back in one call,
+     * so the underlying storage can commit them as a single write.
+     *
+     * @param uid thing the channel types belong to
+     * @param channelTypes the complete set of channel types for the thing
+     */
+    public synchronized void putChannelTypesForThing(ThingUID uid, Collection<ChannelType> channelTypes) {
+        loadIndex();
+
+        Set<ChannelTypeUID> newUIDs = ConcurrentHashMap.newKeySet(channelTypes.size());
+        for (ChannelType channelType : channelTypes) {
+            newUIDs.add(channelType.getUID());
+        }
+
+        Set<ChannelTypeUID> existing = channelTypesByThing.get(uid.getId());
+        int removed = 0;
+        if (existing != null) {
+            for (ChannelTypeUID channelTypeUID : existing) {
+                if (!newUIDs.contains(channelTypeUID)) {
+                    super.removeChannelType(channelTypeUID);
+                    removed++;
+                }
+            }
+        }
+        for (ChannelType channelType : channelTypes) {
+            super.putChannelType(channelType);
+        }
+        channelTypesByThing.put(uid.getId(), newUIDs);
+
+        logger.debug("[{}] Stored {} channel types, removed {} stale", uid.getId(), channelTypes.size(), removed);
+    }
+
+    public synchronized void removeChannelTypesForThing(ThingUID uid) {
+        loadIndex();
+
+        Set<ChannelTypeUID> existing = channelTypesByThing.remove(uid.getId());
+        if (existing != null) {
+            existing.forEach(super::removeChannelType);
+        }
+    }
+
+    @Override
+    public synchronized void putChannelType(ChannelType channelType) {
+        loadIndex();
+
+        super.putChannelType(channelType);
+        String thingId = thingIdOf(channelType.getUID());
+        if (thingId != null) {
+            channelTypesByThing.computeIfAbsent(thingId, k -> ConcurrentHashMap.newKeySet()).add(channelType.getUID());
+        }
+    }
+
+    @Override
+    public synchronized void removeChannelType(ChannelTypeUID channelTypeUID) {
+        loadIndex();
+
+        super.removeChannelType(channelTypeUID);
+        String thingId = thingIdOf(channelTypeUID);
+        if (thingId != null) {
+            Set<ChannelTypeUID> uids = channelTypesByThing.get(thingId);
+            if (uids != null) {
+                uids.remove(channelTypeUID);
+            }
+        }
+    }
+
+    /**
+     * Build the per-thing index from storage. Only done once per provider lifetime, after that the index is
+     * maintained by the mutating methods.
+     */
+    private void loadIndex() {
+        if (indexLoaded) {
+            return;
+        }
+        for (ChannelType channelType : getChannelTypes(null)) {
+            String thingId = thingIdOf(channelType.getUID());
+            if (thingId != null) {
+                channelTypesByThing.computeIfAbsent(thingId, k -> ConcurrentHashMap.newKeySet())
+                        .add(channelType.getUID());
+            }
+        }
+        indexLoaded = true;
+    }
 
-        String thingUid = uid.getId();
-        getChannelTypes(null).stream().map(ChannelType::getUID).filter(c -> c.getAsString().endsWith(thingUid))
-                .forEach(this::removeChannelType);
+    private static @Nullable String thingIdOf(ChannelTypeUID channelTypeUID) {
+        String id = channelTypeUID.getId();
+        if (id.length() <= UUID_SUFFIX_LENGTH || id.charAt(id.length() - UUID_SUFFIX_LENGTH) != '_') {
+            return null;
+        }
+        return id.substring(0, id.length() - UUID_SUFFIX_LENGTH);
     }
 }
@@ -17,8 +17,14 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.jdt.annotation.NonNull;
@@ -35,7 +41,9 @@ import org.openhab.core.net.NetworkAddressService;
 import org.openhab.core.thing.*;
 import org.openhab.core.thing.binding.BaseThingHandler;
 import org.openhab.core.thing.binding.ThingActions;
+import org.openhab.core.thing.binding.ThingHandlerService;
 import org.openhab.core.thing.type.ChannelType;
+import org.openhab.core.thing.type.ChannelTypeUID;
 import org.openhab.core.types.*;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
@@ -43,8 +51,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.net.InetAddresses;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
 import com.google.protobuf.GeneratedMessage;
-import com.jano7.executor.KeySequentialExecutor;
 
 import io.esphome.api.*;
 import no.seime.openhab.binding.esphome.events.ESPHomeEventFactory;
@@ -55,6 +64,7 @@ import no.seime.openhab.binding.esphome.internal.audio.ESPHomeVoiceAssistantAudi
 import no.seime.openhab.binding.esphome.internal.bluetooth.ESPHomeBluetoothProxyHandler;
 import no.seime.openhab.binding.esphome.internal.comm.*;
 import no.seime.openhab.binding.esphome.internal.handler.action.AbstractESPHomeThingAction;
+import no.seime.openhab.binding.esphome.internal.handler.action.CommandBatchActions;
 import no.seime.openhab.binding.esphome.internal.handler.action.DynamicThingActionsGenerator;
 import no.seime.openhab.binding.esphome.internal.message.*;
 import no.seime.openhab.binding.esphome.internal.message.statesubscription.ESPHomeEventSubscriber;
@@ -71,9 +81,17 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
 
     private static final int API_VERSION_MAJOR = 1;
     private static final int API_VERSION_MINOR = 14;
+    // Refreshes of channels without a known state within this period are served by a single state subscription
+    private static final long RESYNC_DELAY_MS = 500;
     private static final String DEVICE_LOGGER_NAME = "ESPHOMEDEVICE";
     private static final String ACTION_TAG_SCANNED = "esphome.tag_scanned";
     static final String PROPERTY_LAST_KNOWN_IP_ADDRESS = "lastKnownIpAddress";
+    static final String PROPERTY_STATE_UPDATES_SHED = "stateUpdatesShed";
+    static final String PROPERTY_STATE_UPDATES_COALESCED = "stateUpdatesCoalesced";
+    static final String PROPERTY_PACKET_QUEUE_WAIT_AVERAGE = "packetQueueWaitAverage";
+    static final String PROPERTY_PACKET_QUEUE_WAIT_MAX = "packetQueueWaitMax";
+    static final String PROPERTY_OUTBOUND_COMMANDS_REPLACED = "outboundCommandsReplaced";
+    private static final long QUEUE_WAIT_REPORT_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
 
     /**
      * Voice assistant feature flags advertised by ESPHome in {@code DeviceInfoResponse.voice_assistant_feature_flags}.
@@ -105,18 +123,111 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
         }
     }
 
+    // Message handler types, shared by all things. Handlers themselves are created per thing on first use
+    private static final Map<String, MessageHandlerType> MESSAGE_HANDLER_TYPES_BY_ENTITY_TYPE;
+
+    static {
+        Map<String, MessageHandlerType> byEntityType = new HashMap<>();
+
+        // Register message handlers for each type of message pairs
+        register(byEntityType, EntityTypes.SELECT, SelectMessageHandler::new, ListEntitiesSelectResponse.class,
+                SelectStateResponse.class);
+        register(byEntityType, EntityTypes.SENSOR, SensorMessageHandler::new, ListEntitiesSensorResponse.class,
+                SensorStateResponse.class);
+        register(byEntityType, EntityTypes.BINARY_SENSOR, BinarySensorMessageHandler::new,
+                ListEntitiesBinarySensorResponse.class, BinarySensorStateResponse.class);
+        register(byEntityType, EntityTypes.TEXT_SENSOR, TextSensorMessageHandler::new,
+                ListEntitiesTextSensorResponse.class, TextSensorStateResponse.class);
+        register(byEntityType, EntityTypes.TEXT, TextMessageHandler::new, ListEntitiesTextResponse.class,
+                TextStateResponse.class);
+        register(byEntityType, EntityTypes.SWITCH, SwitchMessageHandler::new, ListEntitiesSwitchResponse.class,
+                SwitchStateResponse.class);
+        register(byEntityType, EntityTypes.CLIMATE, ClimateMessageHandler::new, ListEntitiesClimateResponse.class,
+                ClimateStateResponse.class);
+        register(byEntityType, EntityTypes.NUMBER, NumberMessageHandler::new, ListEntitiesNumberResponse.class,
+                NumberStateResponse.class);
+        register(byEntityType, EntityTypes.LIGHT, LightMessageHandler::new, ListEntitiesLightResponse.class,
+                LightStateResponse.class);
+        register(byEntityType, EntityTypes.BUTTON, ButtonMessageHandler::new, ListEntitiesButtonResponse.class,
+                ButtonCommandRequest.class);
+        register(byEntityType, EntityTypes.COVER, CoverMessageHandler::new, ListEntitiesCoverResponse.class,
+                CoverStateResponse.class);
+        register(byEntityType, EntityTypes.FAN, FanMessageHandler::new, ListEntitiesFanResponse.class,
+                FanStateResponse.class);
+        register(byEntityType, EntityTypes.DATE, DateMessageHandler::new, ListEntitiesDateResponse.class,
+                DateStateResponse.class);
+        register(byEntityType, EntityTypes.DATE_TIME, DateTimeMessageHandler::new, ListEntitiesDateTimeResponse.class,
+                DateTimeStateResponse.class);
+        register(byEntityType, EntityTypes.TIME, TimeMessageHandler::new, ListEntitiesTimeResponse.class,
+                TimeStateResponse.class);
+        register(byEntityType, EntityTypes.LOCK, LockMessageHandler::new, ListEntitiesLockResponse.class,
+                LockStateResponse.class);
+        register(byEntityType, EntityTypes.VALVE, ValveMessageHandler::new, ListEntitiesValveResponse.class,
+                ValveStateResponse.class);
+        register(byEntityType, EntityTypes.MEDIA_PLAYER, MediaPlayerMessageHandler::new,
+                ListEntitiesMediaPlayerResponse.class, MediaPlayerStateResponse.class);
+
+        MESSAGE_HANDLER_TYPES_BY_ENTITY_TYPE = Map.copyOf(byEntityType);
+    }
+
+    // Message handler types are indexed from 0 in the order they were registered
+    private static final int MESSAGE_HANDLER_TYPE_COUNT = MESSAGE_HANDLER_TYPES_BY_ENTITY_TYPE.size();
+
+    // Consumers of messages received while connected, by native API message id
+    private static final @Nullable MessageConsumer[] DISPATCH_TABLE = buildDispatchTable();
+
+    // Entity key field of state messages
+    private static final ClassValue<Optional<FieldDescriptor>> ENTITY_KEY_FIELDS = new ClassValue<>() {
+        @Override
+        protected Optional<FieldDescriptor> computeValue(Class<?> type) {
+            try {
+                Descriptor descriptor = (Descriptor) type.getMethod("getDescriptor").invoke(null);
+                return Optional.ofNullable(descriptor.findFieldByName("key"))
+                        .filter(field -> field.getJavaType() == FieldDescriptor.JavaType.INT);
+            } catch (ReflectiveOperationException e) {
+                return Optional.empty();
+            }
+        }
+    };
+
+    private static void register(Map<String, MessageHandlerType> byEntityType, String entityType,
+            Function<ESPHomeHandler, AbstractMessageHandler<? extends GeneratedMessage, ? extends GeneratedMessage>> factory,
+            Class<? extends GeneratedMessage> listEntitiesClass, Class<? extends GeneratedMessage> stateClass) {
+        byEntityType.put(entityType,
+                new MessageHandlerType(byEntityType.size(), factory, listEntitiesClass, stateClass));
+    }
+
+    private record MessageHandlerType(int index,
+            Function<ESPHomeHandler, AbstractMessageHandler<? extends GeneratedMessage, ? extends GeneratedMessage>> factory,
+            Class<? extends GeneratedMessage> listEntitiesClass, Class<? extends GeneratedMessage> stateClass) {
+    }
+
     private final Logger logger = LoggerFactory.getLogger(ESPHomeHandler.class);
     private final Logger deviceLogger = LoggerFactory.getLogger(DEVICE_LOGGER_NAME);
 
     private final ConnectionSelector connectionSelector;
     private final ESPChannelTypeProvider dynamicChannelTypeProvider;
     private final ESPStateDescriptionProvider stateDescriptionProvider;
-    private final Map<String, AbstractMessageHandler<? extends GeneratedMessage, ? extends GeneratedMessage>> commandTypeToHandlerMap = new HashMap<>();
-    private final Map<Class<? extends GeneratedMessage>, AbstractMessageHandler<? extends GeneratedMessage, ? extends GeneratedMessage>> classToHandlerMap = new HashMap<>();
+    private final @Nullable AbstractMessageHandler<?, ?>[] messageHandlers = new AbstractMessageHandler<?, ?>[
+            MESSAGE_HANDLER_TYPE_COUNT];
     private final List<Channel> dynamicChannels = new ArrayList<>();
+    private final List<ChannelType> dynamicChannelTypes = new ArrayList<>();
+    private final Map<ChannelUID, StateDescription> dynamicStateDescriptions = new HashMap<>();
+    private final Map<ChannelUID, CommandDescription> dynamicCommandDescriptions = new HashMap<>();
+    // Channels of diagnostic and disabled by default entities not materialized, by entity key. Only kept during
+    // interrogation, in case a later channel of the same entity turns out to be linked
+    private final Map<Integer, List<DeferredChannel>> deferredChannels = new HashMap<>();
+    // Keys of the entities and ids of the channels not materialized, looked up for every state and channel
+    private final Set<Integer> deferredEntities = ConcurrentHashMap.newKeySet();
+    private final Set<String> deferredChannelIds = ConcurrentHashMap.newKeySet();
+    private final Set<Integer> materializedAdvancedEntities = new HashSet<>();
+    private volatile ChannelIndex channelIndex = ChannelIndex.EMPTY;
     private final ESPHomeEventSubscriber eventSubscriber;
     private final MonitoredScheduledThreadPoolExecutor executorService;
-    private final KeySequentialExecutor packetProcessor;
+    private final PacketScheduler packetProcessor;
+    // Key of the packet queue of the device, shared by all its connections
+    private final String packetKey;
+    private long queueWaitReportedNanos = System.nanoTime();
     private final EventPublisher eventPublisher;
     @Nullable
     private final String defaultEncryptionKey;
@@ -124,18 +235,24 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
     private final AudioHTTPServer audioHTTPServer;
     private final NetworkAddressService networkAddressService;
     private @Nullable ESPHomeConfiguration config;
-    private @Nullable EncryptedFrameHelper frameHelper;
+    private volatile @Nullable EncryptedFrameHelper frameHelper;
     @Nullable
     private ScheduledFuture<?> pingWatchdogFuture;
     @Nullable
     private ScheduledFuture<?> connectionTimeoutFuture;
-    private Instant lastPong = Instant.now();
+    @Nullable
+    private ScheduledFuture<?> resyncFuture;
+    // Time of the last packet received from the device, set on the I/O thread
+    private volatile Instant lastReceived = Instant.now();
     @Nullable
     private ScheduledFuture<?> connectFuture;
-    private final Object connectionStateLock = new Object();
-    private ConnectionState connectionState = ConnectionState.UNINITIALIZED;
-    private boolean disposed = false;
-    private boolean interrogated;
+    // Serializes connection lifecycle transitions. Packets are dispatched on the sequential packet processor of the
+    // device, and commands and events sent, without taking it, checking the connection state atomically instead
+    private final Object lifecycleLock = new Object();
+    private final AtomicReference<ConnectionState> connectionState = new AtomicReference<>(
+            ConnectionState.UNINITIALIZED);
+    private volatile boolean disposed = false;
+    private volatile boolean interrogated;
     private boolean bluetoothProxyStarted = false;
     // default is not used initialized in initialize()
     private ExponentialBackoff exponentialBackoff = new ExponentialBackoff(10, 500);
@@ -143,10 +260,11 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
     private String resolvedIpAddressForCurrentConnection;
 
     private final Set<ServiceRegistration<?>> thingActionServiceRegistrations = new HashSet<>();
-    private final Map<Integer, ListEntitiesMediaPlayerResponse> mediaPlayers = new HashMap<>();
-    private final Map<Integer, MediaPlayerStateResponse> mediaPlayerStates = new HashMap<>();
-    private final Map<Integer, ESPHomeAudioSink> audioSinks = new HashMap<>();
-    private final Map<Integer, ServiceRegistration<AudioSink>> audioSinkRegistrations = new HashMap<>();
+    // Only allocated once the device exposes a media player. Replaced on the packet thread, read by commands
+    private volatile Map<Integer, ListEntitiesMediaPlayerResponse> mediaPlayers = Map.of();
+    private volatile Map<Integer, MediaPlayerStateResponse> mediaPlayerStates = Map.of();
+    private volatile Map<Integer, ESPHomeAudioSink> audioSinks = Map.of();
+    private volatile Map<Integer, ServiceRegistration<AudioSink>> audioSinkRegistrations = Map.of();
     private @Nullable ESPHomeVoiceAssistantAudioSource audioSource;
     private @Nullable ServiceRegistration<AudioSource> audioSourceRegistration;
     private int voiceAssistantFeatureFlags;
@@ -155,15 +273,52 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
     @Nullable
     private ESPHomeBluetoothProxyHandler espHomeBluetoothProxyHandler;
 
+    // Incremented whenever thing actions are cleared, to discard actions generated for a previous connection
+    private int thingActionGeneration;
+
+    @Nullable
+    private final StateSnapshotStore stateSnapshotStore;
     @Nullable
-    private ClassLoader thingActionClassLoader;
+    private final GracefulDisconnector disconnector;
+    private volatile @Nullable StateSnapshot stateSnapshot;
+    @Nullable
+    private final StateAdmissionController admissionController;
+    private volatile StateAdmissionController.@Nullable Budget admissionBudget;
+    // States restored from the snapshot that the device has not yet confirmed, by channel id
+    private final Map<String, State> unconfirmedStates = new ConcurrentHashMap<>();
+    private final ChannelStateStore stateStore = new ChannelStateStore();
+    // Recreated in initialize() with the configured log prefix and merge window
+    private volatile CommandAggregator commandAggregator;
+    @Nullable
+    private final CommandBatchService commandBatchService;
+    // Requests collected while handling a batch of commands on this thread, written to the device at once
+    private final ThreadLocal<@Nullable List<GeneratedMessage>> batchedMessages = new ThreadLocal<>();
+    // Delayed entity tasks, such as publishing a state held back by a channel filter
+    private final Set<ScheduledFuture<?>> entityTaskFutures = ConcurrentHashMap.newKeySet();
 
     public ESPHomeHandler(Thing thing, ConnectionSelector connectionSelector,
             ESPChannelTypeProvider dynamicChannelTypeProvider, ESPStateDescriptionProvider stateDescriptionProvider,
             ESPHomeEventSubscriber eventSubscriber, MonitoredScheduledThreadPoolExecutor executorService,
-            KeySequentialExecutor packetProcessor, EventPublisher eventPublisher, @Nullable String defaultEncryptionKey,
+            PacketScheduler packetProcessor, EventPublisher eventPublisher, @Nullable String defaultEncryptionKey,
             BundleContext bundleContext, AudioHTTPServer audioHTTPServer, NetworkAddressService networkAddressService) {
+        this(thing, connectionSelector, dynamicChannelTypeProvider, stateDescriptionProvider, eventSubscriber,
+                executorService, packetProcessor, eventPublisher, defaultEncryptionKey, bundleContext, audioHTTPServer,
+                networkAddressService, null, null, null, null);
+    }
+
+    public ESPHomeHandler(Thing thing, ConnectionSelector connectionSelector,
+            ESPChannelTypeProvider dynamicChannelTypeProvider, ESPStateDescriptionProvider stateDescriptionProvider,
+            ESPHomeEventSubscriber eventSubscriber, MonitoredScheduledThreadPoolExecutor executorService,
+            PacketScheduler packetProcessor, EventPublisher eventPublisher, @Nullable String defaultEncryptionKey,
+            BundleContext bundleContext, AudioHTTPServer audioHTTPServer, NetworkAddressService networkAddressService,
+            @Nullable StateSnapshotStore stateSnapshotStore, @Nullable GracefulDisconnector disconnector,
+            @Nullable StateAdmissionController admissionController,
+            @Nullable CommandBatchService commandBatchService) {
         super(thing);
+        this.commandBatchService = commandBatchService;
+        this.stateSnapshotStore = stateSnapshotStore;
+        this.disconnector = disconnector;
+        this.admissionController = admissionController;
         this.connectionSelector = connectionSelector;
         this.dynamicChannelTypeProvider = dynamicChannelTypeProvider;
         this.stateDescriptionProvider = stateDescriptionProvider;
@@ -171,58 +326,52 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
         this.eventSubscriber = eventSubscriber;
         this.executorService = executorService;
         this.packetProcessor = packetProcessor;
+        this.packetKey = thing.getUID().getAsString();
         this.eventPublisher = eventPublisher;
         this.defaultEncryptionKey = defaultEncryptionKey;
         this.bundleContext = bundleContext;
         this.audioHTTPServer = audioHTTPServer;
         this.networkAddressService = networkAddressService;
+        commandAggregator = new CommandAggregator(executorService, this::sendMessage, logPrefix, 0);
+    }
 
-        // Register message handlers for each type of message pairs
-        registerMessageHandler(EntityTypes.SELECT, new SelectMessageHandler(this), ListEntitiesSelectResponse.class,
-                SelectStateResponse.class);
-        registerMessageHandler(EntityTypes.SENSOR, new SensorMessageHandler(this), ListEntitiesSensorResponse.class,
-                SensorStateResponse.class);
-        registerMessageHandler(EntityTypes.BINARY_SENSOR, new BinarySensorMessageHandler(this),
-                ListEntitiesBinarySensorResponse.class, BinarySensorStateResponse.class);
-        registerMessageHandler(EntityTypes.TEXT_SENSOR, new TextSensorMessageHandler(this),
-                ListEntitiesTextSensorResponse.class, TextSensorStateResponse.class);
-        registerMessageHandler(EntityTypes.TEXT, new TextMessageHandler(this), ListEntitiesTextResponse.class,
-                TextStateResponse.class);
-        registerMessageHandler(EntityTypes.SWITCH, new SwitchMessageHandler(this), ListEntitiesSwitchResponse.class,
-                SwitchStateResponse.class);
-        registerMessageHandler(EntityTypes.CLIMATE, new ClimateMessageHandler(this), ListEntitiesClimateResponse.class,
-                ClimateStateResponse.class);
-        registerMessageHandler(EntityTypes.NUMBER, new NumberMessageHandler(this), ListEntitiesNumberResponse.class,
-                NumberStateResponse.class);
-        registerMessageHandler(EntityTypes.LIGHT, new LightMessageHandler(this), ListEntitiesLightResponse.class,
-                LightStateResponse.class);
-        registerMessageHandler(EntityTypes.BUTTON, new ButtonMessageHandler(this), ListEntitiesButtonResponse.class,
-                ButtonCommandRequest.class);
-        registerMessageHandler(EntityTypes.COVER, new CoverMessageHandler(this), ListEntitiesCoverResponse.class,
-                CoverStateResponse.class);
-        registerMessageHandler(EntityTypes.FAN, new FanMessageHandler(this), ListEntitiesFanResponse.class,
-                FanStateResponse.class);
-        registerMessageHandler(EntityTypes.DATE, new DateMessageHandler(this), ListEntitiesDateResponse.class,
-                DateStateResponse.class);
-        registerMessageHandler(EntityTypes.DATE_TIME, new DateTimeMessageHandler(this),
-                ListEntitiesDateTimeResponse.class, DateTimeStateResponse.class);
-        registerMessageHandler(EntityTypes.TIME, new TimeMessageHandler(this), ListEntitiesTimeResponse.class,
-                TimeStateResponse.class);
-        registerMessageHandler(EntityTypes.LOCK, new LockMessageHandler(this), ListEntitiesLockResponse.class,
-                LockStateResponse.class);
-        registerMessageHandler(EntityTypes.VALVE, new ValveMessageHandler(this), ListEntitiesValveResponse.class,
-                ValveStateResponse.class);
-        registerMessageHandler(EntityTypes.MEDIA_PLAYER, new MediaPlayerMessageHandler(this),
-                ListEntitiesMediaPlayerResponse.class, MediaPlayerStateResponse.class);
+    /**
+     * @return the message handlers created so far, as they are only created for entity types the device exposes
+     */
+    List<AbstractMessageHandler<?, ?>> getCreatedMessageHandlers() {
+        List<AbstractMessageHandler<?, ?>> created = new ArrayList<>();
+        synchronized (messageHandlers) {
+            for (AbstractMessageHandler<?, ?> messageHandler : messageHandlers) {
+                if (messageHandler != null) {
+                    created.add(messageHandler);
+                }
+            }
+        }
+        return created;
     }
 
-    private void registerMessageHandler(String entityType,
-            AbstractMessageHandler<? extends GeneratedMessage, ? extends GeneratedMessage> messageHandler,
-            Class<? extends GeneratedMessage> listEntitiesClass, Class<? extends GeneratedMessage> stateClass) {
+    /**
+     * @return whether media player or audio sink state is held, which the maps are only allocated for
+     */
+    boolean hasMediaPlayerState() {
+        return !(mediaPlayers.isEmpty() && mediaPlayerStates.isEmpty() && audioSinks.isEmpty()
+                && audioSinkRegistrations.isEmpty());
+    }
 
-        commandTypeToHandlerMap.put(entityType, messageHandler);
-        classToHandlerMap.put(listEntitiesClass, messageHandler);
-        classToHandlerMap.put(stateClass, messageHandler);
+    private @Nullable AbstractMessageHandler<? extends GeneratedMessage, ? extends GeneratedMessage> getMessageHandler(
+            @Nullable MessageHandlerType type) {
+        if (type == null) {
+            return null;
+        }
+        synchronized (messageHandlers) {
+            AbstractMessageHandler<? extends GeneratedMessage, ? extends GeneratedMessage> messageHandler = messageHandlers[type
+                    .index()];
+            if (messageHandler == null) {
+                messageHandler = type.factory().apply(this);
+                messageHandlers[type.index()] = messageHandler;
+            }
+            return messageHandler;
+        }
     }
 
     @Override
@@ -237,6 +386,19 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
             logPrefix = String.format("%s", config.logPrefix); // To avoid nullness warning
         }
 
+        commandAggregator = new CommandAggregator(executorService, this::sendMessage, logPrefix,
+                config.commandMergeWindow);
+        channelIndex = newChannelIndex(thing.getChannels());
+        synchronized (messageHandlers) {
+            // Recreated with the current thing and channel configuration on first use
+            Arrays.fill(messageHandlers, null);
+        }
+        StateAdmissionController controller = admissionController;
+        if (controller != null && admissionBudget == null) {
+            admissionBudget = controller.register(logPrefix, this::postState, this::updateAdmissionProperties);
+        }
+        restoreStateSnapshot();
+
         exponentialBackoff = new ExponentialBackoff(config.reconnectInterval, config.maxReconnectInterval);
         if (config.hostname != null && !config.hostname.isEmpty()) {
             scheduleConnect(0);
@@ -247,53 +409,126 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
 
     @Override
     public void dispose() {
-        synchronized (connectionStateLock) {
+        synchronized (lifecycleLock) {
             disposed = true;
             eventSubscriber.removeEventSubscriptions(this);
             stateDescriptionProvider.removeDescriptionsForThing(thing.getUID());
             cancelConnectFuture();
             cancelPingWatchdog();
             cancelConnectionTimeoutWatchdog();
-            if (frameHelper != null) {
-                if (connectionState == ConnectionState.CONNECTED) {
-                    try {
-                        frameHelper.send(DisconnectRequest.getDefaultInstance());
-                    } catch (ProtocolAPIError e) {
-                        // Quietly ignore
+            cancelResync();
+            entityTaskFutures.forEach(future -> future.cancel(false));
+            entityTaskFutures.clear();
+            EncryptedFrameHelper helper = frameHelper;
+            ConnectionState previousState = connectionState.getAndSet(ConnectionState.UNINITIALIZED);
+            if (helper != null) {
+                GracefulDisconnector gracefulDisconnector = disconnector;
+                if (previousState == ConnectionState.CONNECTED && gracefulDisconnector != null) {
+                    // Hand the connection over, it is closed once the device acknowledges or the grace period ends
+                    gracefulDisconnector.disconnect(helper, logPrefix);
+                } else {
+                    if (previousState == ConnectionState.CONNECTED) {
+                        try {
+                            helper.send(DisconnectRequest.getDefaultInstance());
+                        } catch (ProtocolAPIError e) {
+                            // Quietly ignore
+                        }
                     }
+                    // ALWAYS close the connection to ensure the socket and I/O threads
+                    // are terminated and resources are released.
+                    helper.close();
                 }
-                // ALWAYS close the connection to ensure the socket and I/O threads
-                // are terminated and resources are released.
-                frameHelper.close();
                 frameHelper = null;
             }
+            packetProcessor.remove(packetKey);
 
             // ThingActions
             clearThingActions();
             unregisterAudioSinks();
             unregisterAudioSource();
 
-            connectionState = ConnectionState.UNINITIALIZED;
-
-            thingActionClassLoader = null;
+            StateSnapshot snapshot = stateSnapshot;
+            if (snapshot != null) {
+                snapshot.close();
+                stateSnapshot = null;
+            }
+            unconfirmedStates.clear();
+            stateStore.clear();
+            commandAggregator.clear();
+
+            StateAdmissionController controller = admissionController;
+            StateAdmissionController.Budget budget = admissionBudget;
+            if (controller != null && budget != null) {
+                controller.unregister(budget);
+                admissionBudget = null;
+            }
         }
         super.dispose();
     }
 
+    /**
+     * Post the last known states from the previous run, so that items have a value while the device is connecting.
+     * The states are considered unconfirmed until the device reports them again.
+     */
+    private void restoreStateSnapshot() {
+        StateSnapshotStore store = stateSnapshotStore;
+        if (store == null) {
+            return;
+        }
+        StateSnapshot snapshot = store.open(thing.getUID());
+        stateSnapshot = snapshot;
+        snapshot.getStates().forEach((channelId, state) -> {
+            Channel channel = thing.getChannel(channelId);
+            if (channel != null) {
+                unconfirmedStates.put(channelId, state);
+                super.updateState(channel.getUID(), state);
+            }
+        });
+        logger.debug("[{}] Restored {} channel states from snapshot", logPrefix, unconfirmedStates.size());
+    }
+
     private void clearThingActions() {
+        thingActionGeneration++;
         thingActionServiceRegistrations.stream().filter(e -> e != null).forEach(ServiceRegistration::unregister);
         thingActionServiceRegistrations.clear();
     }
 
+    private void registerThingAction(ListEntitiesServicesResponse listEntitiesServicesResponse, int generation) {
+        try {
+            AbstractESPHomeThingAction thingAction = DynamicThingActionsGenerator
+                    .generateDynamicThingAction(listEntitiesServicesResponse);
+            thingAction.setListEntitiesServicesResponse(listEntitiesServicesResponse);
+            thingAction.setThingHandler(this);
+            synchronized (lifecycleLock) {
+                // Skip if the actions were cleared by a reconnect or dispose while the class was generated
+                if (generation == thingActionGeneration && !disposed) {
+                    thingActionServiceRegistrations
+                            .add(bundleContext.registerService(ThingActions.class, thingAction, new Hashtable<>()));
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("[{}] Error generating dynamic actions from device: {}", logPrefix, e.getMessage(), e);
+        }
+    }
+
     @Override
     public void handleRemoval() {
         dynamicChannelTypeProvider.removeChannelTypesForThing(thing.getUID());
+        // Removal is followed by dispose, which must not write the snapshot again
+        StateSnapshot snapshot = stateSnapshot;
+        if (snapshot != null) {
+            snapshot.delete();
+        }
+        StateSnapshotStore store = stateSnapshotStore;
+        if (store != null) {
+            store.delete(thing.getUID());
+        }
 
         super.handleRemoval();
     }
 
     private void refreshAudioServices() {
-        if (!interrogated || disposed || connectionState != ConnectionState.CONNECTED) {
+        if (!interrogated || disposed || connectionState.get() != ConnectionState.CONNECTED) {
             unregisterAudioSinks();
             unregisterAudioSource();
             return;
@@ -324,6 +559,10 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
                 ESPHomeAudioSink newAudioSink = new ESPHomeAudioSink(this, audioHTTPServer, mediaPlayer,
                         supportedFormats, baseUrl);
                 newAudioSink.updateState(mediaPlayerStates.get(mediaPlayer.getKey()));
+                if (audioSinks.isEmpty()) {
+                    audioSinks = new HashMap<>();
+                    audioSinkRegistrations = new HashMap<>();
+                }
                 audioSinkRegistrations.put(mediaPlayer.getKey(),
                         bundleContext.registerService(AudioSink.class, newAudioSink, new Hashtable<>()));
                 audioSinks.put(mediaPlayer.getKey(), newAudioSink);
@@ -376,8 +615,8 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
         for (ServiceRegistration<AudioSink> registration : audioSinkRegistrations.values()) {
             registration.unregister();
         }
-        audioSinkRegistrations.clear();
-        audioSinks.clear();
+        audioSinkRegistrations = Map.of();
+        audioSinks = Map.of();
     }
 
     private void unregisterAudioSource() {
@@ -398,6 +637,10 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
     }
 
     private void handleMediaPlayerEntity(ListEntitiesMediaPlayerResponse message) {
+        if (mediaPlayers.isEmpty()) {
+            mediaPlayers = new HashMap<>();
+            mediaPlayerStates = new HashMap<>();
+        }
         mediaPlayers.put(message.getKey(), message);
     }
 
@@ -443,12 +686,12 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
     }
 
     private void connect() {
-        synchronized (connectionStateLock) {
+        synchronized (lifecycleLock) {
             try {
                 if (disposed) {
                     return;
                 }
-                connectionState = ConnectionState.CONNECTING;
+                connectionState.set(ConnectionState.CONNECTING);
 
                 String hostname = config.hostname;
                 int port = config.port;
@@ -477,10 +720,12 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
                     }
                 }
 
-                frameHelper = new EncryptedFrameHelper(connectionSelector, this, encryptionKey, config.deviceId,
-                        logPrefix, packetProcessor);
+                EncryptedFrameHelper helper = new EncryptedFrameHelper(connectionSelector, this, encryptionKey,
+                        config.deviceId, logPrefix, packetProcessor, packetKey, executorService,
+                        config.maxMessagesPerSecond);
+                frameHelper = helper;
 
-                frameHelper.connect(connectionTarget.connectHost, port);
+                helper.connect(connectionTarget.connectHost, port);
 
                 cancelConnectionTimeoutWatchdog();
                 connectionTimeoutFuture = executorService.schedule(() -> {
@@ -504,7 +749,7 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
                 }
                 logger.warn("[{}] Error initial connection: {}", logPrefix, message);
                 updateStatus(ThingStatus.OFFLINE, ThingStatusDetail.COMMUNICATION_ERROR, message);
-                connectionState = ConnectionState.UNINITIALIZED;
+                connectionState.set(ConnectionState.UNINITIALIZED);
                 resolvedIpAddressForCurrentConnection = null;
                 scheduleConnect(exponentialBackoff.getNextDelay());
             }
@@ -512,91 +757,134 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
     }
 
     public void sendMessage(GeneratedMessage message) throws ProtocolAPIError {
-        frameHelper.send(message);
+        List<GeneratedMessage> batch = batchedMessages.get();
+        if (batch != null) {
+            batch.add(message);
+            return;
+        }
+        EncryptedFrameHelper helper = frameHelper;
+        if (helper == null) {
+            logger.debug("[{}] Not connected, not sending {}", logPrefix, message.getClass().getSimpleName());
+            return;
+        }
+        helper.send(message);
     }
 
     @Override
     public void handleCommand(ChannelUID channelUID, Command command) {
-        synchronized (connectionStateLock) {
-            if (connectionState != ConnectionState.CONNECTED) {
-                logger.debug("[{}] Not connected, ignoring command {}", logPrefix, command);
-                return;
+        if (connectionState.get() != ConnectionState.CONNECTED) {
+            logger.debug("[{}] Not connected, ignoring command {}", logPrefix, command);
+            return;
+        }
+
+        if (command == RefreshType.REFRESH) {
+            if (!refreshFromStateStore(channelUID)) {
+                scheduleResync();
             }
+            return;
+        }
 
-            if (command == RefreshType.REFRESH) {
-                try {
-                    frameHelper.send(SubscribeStatesRequest.getDefaultInstance());
-                } catch (ProtocolAPIError e) {
-                    logger.error("[{}] Error sending command {} to channel {}: {}", logPrefix, command, channelUID,
-                            e.getMessage());
+        Optional<Channel> optionalChannel = Optional.ofNullable(findChannel(channelUID.getId()));
+        optionalChannel.ifPresent(channel -> {
+            try {
+                String entityType = (String) channel.getConfiguration()
+                        .get(BindingConstants.CHANNEL_CONFIGURATION_ENTITY_TYPE);
+                if (entityType == null) {
+                    logger.warn("[{}] No entity type configuration found for channel {}", logPrefix, channelUID);
+                    return;
                 }
-                return;
-            }
 
-            Optional<Channel> optionalChannel = thing.getChannels().stream().filter(e -> e.getUID().equals(channelUID))
-                    .findFirst();
-            optionalChannel.ifPresent(channel -> {
-                try {
-                    String entityType = (String) channel.getConfiguration()
-                            .get(BindingConstants.CHANNEL_CONFIGURATION_ENTITY_TYPE);
-                    if (entityType == null) {
-                        logger.warn("[{}] No entity type configuration found for channel {}", logPrefix, channelUID);
-                        return;
-                    }
+                AbstractMessageHandler<? extends GeneratedMessage, ? extends GeneratedMessage> abstractMessageHandler = getMessageHandler(
+                        MESSAGE_HANDLER_TYPES_BY_ENTITY_TYPE.get(entityType));
+                if (abstractMessageHandler == null) {
+                    logger.warn("[{}] No message handler for entity type {}", logPrefix, entityType);
+                } else if (isRedundantCommand(abstractMessageHandler, channel, command)) {
+                    logger.debug("[{}] Not sending command {} to channel {}, the device recently reported it",
+                            logPrefix, command, channelUID);
+                } else {
+                    int key = ((BigDecimal) channel.getConfiguration()
+                            .get(BindingConstants.CHANNEL_CONFIGURATION_ENTITY_KEY)).intValue();
+                    abstractMessageHandler.sendCommand(channel, command, key);
+                }
 
-                    AbstractMessageHandler<? extends GeneratedMessage, ? extends GeneratedMessage> abstractMessageHandler = commandTypeToHandlerMap
-                            .get(entityType);
-                    if (abstractMessageHandler == null) {
-                        logger.warn("[{}] No message handler for entity type {}", logPrefix, entityType);
-                    } else {
-                        int key = ((BigDecimal) channel.getConfiguration()
-                                .get(BindingConstants.CHANNEL_CONFIGURATION_ENTITY_KEY)).intValue();
-                        abstractMessageHandler.handleCommand(channel, command, key);
-                    }
+            } catch (Exception e) {
+                logger.error("[{}] Error sending command {} to channel {}: {}", logPrefix, command, channelUID,
+                        e.getMessage(), e);
+            }
+        });
+    }
 
-                } catch (Exception e) {
-                    logger.error("[{}] Error sending command {} to channel {}: {}", logPrefix, command, channelUID,
-                            e.getMessage(), e);
-                }
-            });
+    /**
+     * Handle several commands and write the resulting requests to the device at once. Commands for the same entity
+     * are merged right away rather than after the merge window.
+     */
+    public void handleCommandBatch(Collection<CommandBatchService.ChannelCommand> commands) {
+        List<GeneratedMessage> batch = new ArrayList<>();
+        batchedMessages.set(batch);
+        try {
+            for (CommandBatchService.ChannelCommand command : commands) {
+                handleCommand(command.channelUID(), command.command());
+            }
+            commandAggregator.flush();
+        } finally {
+            batchedMessages.remove();
+        }
+        EncryptedFrameHelper helper = frameHelper;
+        if (batch.isEmpty() || helper == null) {
+            return;
+        }
+        logger.debug("[{}] Sending {} requests for {} commands", logPrefix, batch.size(), commands.size());
+        try {
+            helper.sendAll(batch);
+        } catch (ProtocolAPIError e) {
+            logger.warn("[{}] Error sending batch of {} requests", logPrefix, batch.size(), e);
         }
     }
 
     @Override
     public void onConnect() throws ProtocolAPIError {
-        synchronized (connectionStateLock) {
-            cancelConnectionTimeoutWatchdog();
-            exponentialBackoff.reset();
-            logger.debug("[{}] Encrypted connection established. Starting API handshake.", logPrefix);
-            HelloRequest helloRequest = HelloRequest.newBuilder().setClientInfo("openHAB")
-                    .setApiVersionMajor(API_VERSION_MAJOR).setApiVersionMinor(API_VERSION_MINOR).build();
-            connectionState = ConnectionState.HELLO_SENT;
-            frameHelper.send(helloRequest);
-            // Send this at the same time; no need to wait
-            frameHelper.send(AuthenticationRequest.getDefaultInstance());
+        cancelConnectionTimeoutWatchdog();
+        exponentialBackoff.reset();
+        logger.debug("[{}] Encrypted connection established. Starting API handshake.", logPrefix);
+        HelloRequest helloRequest = HelloRequest.newBuilder().setClientInfo("openHAB")
+                .setApiVersionMajor(API_VERSION_MAJOR).setApiVersionMinor(API_VERSION_MINOR).build();
+        if (!connectionState.compareAndSet(ConnectionState.CONNECTING, ConnectionState.HELLO_SENT)) {
+            logger.debug("[{}] Connection was closed during the handshake", logPrefix);
+            return;
         }
+        sendMessage(helloRequest);
+        // Send this at the same time; no need to wait
+        sendMessage(AuthenticationRequest.getDefaultInstance());
+    }
+
+    @Override
+    public void onAlive() {
+        lastReceived = Instant.now();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connectionState.get() == ConnectionState.CONNECTED;
     }
 
     @Override
     public void onPacket(@NonNull GeneratedMessage message) {
-        synchronized (connectionStateLock) {
-            try {
-                switch (connectionState) {
-                    case UNINITIALIZED -> logger.debug(
-                            "[{}] Received packet {} while uninitialized, this can happen when the socket is closed while unprocessed packets exists. Ignoring",
-                            logPrefix, message.getClass().getSimpleName());
-                    case CONNECTING -> {
-                        // We are still connecting, so we ignore any packets
-                        logger.debug("[{}] Received packet {} while connecting, ignoring", logPrefix,
-                                message.getClass().getSimpleName());
-                    }
-                    case HELLO_SENT -> handleHelloResponse(message);
-                    case CONNECTED -> handleConnected(message);
+        try {
+            switch (connectionState.get()) {
+                case UNINITIALIZED -> logger.debug(
+                        "[{}] Received packet {} while uninitialized, this can happen when the socket is closed while unprocessed packets exists. Ignoring",
+                        logPrefix, message.getClass().getSimpleName());
+                case CONNECTING -> {
+                    // We are still connecting, so we ignore any packets
+                    logger.debug("[{}] Received packet {} while connecting, ignoring", logPrefix,
+                            message.getClass().getSimpleName());
                 }
-            } catch (ProtocolAPIError e) {
-                logger.warn("[{}] Error parsing packet", logPrefix, e);
-                onParseError(CommunicationError.PACKET_ERROR);
+                case HELLO_SENT -> handleHelloResponse(message);
+                case CONNECTED -> handleConnected(message);
             }
+        } catch (ProtocolAPIError e) {
+            logger.warn("[{}] Error parsing packet", logPrefix, e);
+            onParseError(CommunicationError.PACKET_ERROR);
         }
     }
 
@@ -617,8 +905,12 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
     }
 
     private void handleDisconnection(ThingStatusDetail detail, String message, boolean scheduleReconnect) {
-        synchronized (connectionStateLock) {
-            if (connectionState == ConnectionState.UNINITIALIZED || disposed) {
+        synchronized (lifecycleLock) {
+            if (disposed) {
+                return;
+            }
+            // Stop dispatching packets of the connection right away
+            if (connectionState.getAndSet(ConnectionState.UNINITIALIZED) == ConnectionState.UNINITIALIZED) {
                 return;
             }
 
@@ -634,19 +926,26 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
             eventSubscriber.removeEventSubscriptions(this);
             cancelPingWatchdog();
             cancelConnectionTimeoutWatchdog();
+            cancelResync();
+            commandAggregator.clear();
             unregisterAudioSinks();
             unregisterAudioSource();
-            mediaPlayers.clear();
-            mediaPlayerStates.clear();
+            mediaPlayers = Map.of();
+            mediaPlayerStates = Map.of();
             interrogated = false;
             voiceAssistantFeatureFlags = 0;
 
-            if (frameHelper != null) {
-                frameHelper.close();
+            EncryptedFrameHelper helper = frameHelper;
+            if (helper != null) {
+                helper.close();
                 frameHelper = null;
             }
 
-            connectionState = ConnectionState.UNINITIALIZED;
+            StateSnapshot snapshot = stateSnapshot;
+            if (snapshot != null) {
+                snapshot.flush();
+            }
+
             resolvedIpAddressForCurrentConnection = null;
 
             if (scheduleReconnect) {
@@ -655,7 +954,7 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
         }
     }
 
-    private void handleConnected(GeneratedMessage message) throws ProtocolAPIError {
+    void handleConnected(GeneratedMessage message) throws ProtocolAPIError {
         if (logger.isDebugEnabled()) {
             // ToString method costs a bit
             logger.debug("[{}] Received message type {} with content '{}'", logPrefix,
@@ -665,153 +964,260 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
             return;
         }
 
-        if (message instanceof AuthenticationResponse connectResponse) {
-            if (connectResponse.getInvalidPassword()) {
-                logger.debug("[{}] Received login response {}", logPrefix, connectResponse);
-
-                handleDisconnection(ThingStatusDetail.CONFIGURATION_ERROR, "Invalid password", false);
-            }
-            return;
+        int messageId = MessageTypeToClassConverter.getMessageId(message.getClass());
+        MessageConsumer consumer = messageId < DISPATCH_TABLE.length ? DISPATCH_TABLE[messageId] : null;
+        if (consumer != null) {
+            consumer.accept(this, message);
+        } else {
+            logger.warn("[{}] Unhandled message of type {}. This is lack of support in the binding. Content: '{}'.",
+                    logPrefix, message.getClass().getName(), message);
         }
+    }
 
-        if (message instanceof DeviceInfoResponse rsp) {
-            Map<String, String> props = new HashMap<>(thing.getProperties());
-            props.put(Thing.PROPERTY_FIRMWARE_VERSION, rsp.getEsphomeVersion());
-            props.put(Thing.PROPERTY_MAC_ADDRESS, rsp.getMacAddress());
-            props.put(Thing.PROPERTY_MODEL_ID, rsp.getModel());
-            props.put("name", rsp.getName());
-            props.put(Thing.PROPERTY_VENDOR, rsp.getManufacturer());
-            props.put("compilationTime", rsp.getCompilationTime());
-            if (!rsp.getProjectName().isEmpty()) {
-                props.put("projectName", rsp.getProjectName());
-            } else {
-                props.remove("projectName");
-            }
-            if (!rsp.getProjectVersion().isEmpty()) {
-                props.put("projectVersion", rsp.getProjectVersion());
-            } else {
-                props.remove("projectVersion");
-            }
-            voiceAssistantFeatureFlags = rsp.getVoiceAssistantFeatureFlags();
-            updateThing(editThing().withProperties(props).build());
-        } else if (message instanceof ListEntitiesMediaPlayerResponse mediaPlayerResponse) {
-            handleMediaPlayerEntity(mediaPlayerResponse);
-            classToHandlerMap.get(message.getClass()).handleMessage(message);
-        } else if (message instanceof ListEntitiesDoneResponse) {
-            updateThing(editThing().withChannels(dynamicChannels).build());
-            logger.debug("[{}] Device interrogation complete, done updating thing channels", logPrefix);
-            interrogated = true;
-            refreshAudioServices();
-            frameHelper.send(SubscribeStatesRequest.getDefaultInstance());
-        } else if (message instanceof PingRequest) {
-            logger.debug("[{}] Responding to ping request", logPrefix);
-            frameHelper.send(PingResponse.getDefaultInstance());
-        } else if (message instanceof PingResponse) {
-            logger.debug("[{}] Received ping response", logPrefix);
-            lastPong = Instant.now();
-        } else if (message instanceof DisconnectRequest) {
-            frameHelper.send(DisconnectResponse.getDefaultInstance());
-            remoteDisconnect();
-        } else if (message instanceof DisconnectResponse) {
-            if (frameHelper != null) {
-                frameHelper.close();
-                frameHelper = null;
+    /**
+     * Build the table of consumers for messages received while connected, indexed by native API message id
+     */
+    private static @Nullable MessageConsumer[] buildDispatchTable() {
+        @Nullable
+        MessageConsumer[] table = new MessageConsumer[MessageTypeToClassConverter.MAX_MESSAGE_ID + 1];
+        BiConsumer<Class<? extends GeneratedMessage>, MessageConsumer> register = (messageClass,
+                consumer) -> table[MessageTypeToClassConverter.getMessageId(messageClass)] = consumer;
+
+        // Entities
+        for (MessageHandlerType type : MESSAGE_HANDLER_TYPES_BY_ENTITY_TYPE.values()) {
+            register.accept(type.listEntitiesClass(),
+                    (handler, message) -> handler.requireMessageHandler(type).handleListEntities(message));
+            register.accept(type.stateClass(), (handler, message) -> handler.dispatchState(type, message));
+        }
+        MessageHandlerType mediaPlayerType = MESSAGE_HANDLER_TYPES_BY_ENTITY_TYPE.get(EntityTypes.MEDIA_PLAYER);
+        register.accept(ListEntitiesMediaPlayerResponse.class, (handler, message) -> {
+            handler.handleMediaPlayerEntity((ListEntitiesMediaPlayerResponse) message);
+            handler.requireMessageHandler(mediaPlayerType).handleListEntities(message);
+        });
+        register.accept(MediaPlayerStateResponse.class, (handler, message) -> {
+            handler.handleMediaPlayerState((MediaPlayerStateResponse) message);
+            handler.requireMessageHandler(mediaPlayerType).handleStateMessage(message);
+        });
+        register.accept(ListEntitiesServicesResponse.class,
+                (handler, message) -> handler.handleListEntitiesServices((ListEntitiesServicesResponse) message));
+        register.accept(ListEntitiesDoneResponse.class, (handler, message) -> handler.handleListEntitiesDone());
+
+        // Control
+        register.accept(AuthenticationResponse.class,
+                (handler, message) -> handler.handleAuthenticationResponse((AuthenticationResponse) message));
+        register.accept(DeviceInfoResponse.class,
+                (handler, message) -> handler.handleDeviceInfo((DeviceInfoResponse) message));
+        // Ping requests and responses are handled by the frame helper as soon as they are received
+        register.accept(DisconnectRequest.class, (handler, message) -> {
+            handler.sendMessage(DisconnectResponse.getDefaultInstance());
+            handler.remoteDisconnect();
+        });
+        register.accept(DisconnectResponse.class, (handler, message) -> {
+            synchronized (handler.lifecycleLock) {
+                EncryptedFrameHelper helper = handler.frameHelper;
+                if (helper != null) {
+                    helper.close();
+                    handler.frameHelper = null;
+                }
             }
-        } else if (message instanceof SubscribeLogsResponse subscribeLogsResponse) {
-            deviceLogger.info("[{}] {}", logPrefix, subscribeLogsResponse.getMessage().toStringUtf8());
-        } else if (message instanceof VoiceAssistantRequest voiceAssistantRequest) {
-            ESPHomeVoiceAssistantAudioSource source = audioSource;
+        });
+        register.accept(GetTimeRequest.class, (handler, message) -> {
+            handler.logger.debug("[{}] Received time sync request", handler.logPrefix);
+            GetTimeResponse getTimeResponse = GetTimeResponse.newBuilder()
+                    .setEpochSeconds((int) (System.currentTimeMillis() / 1000)).build();
+            handler.sendMessage(getTimeResponse);
+        });
+
+        // Logs, voice assistant and Home Assistant integration
+        register.accept(SubscribeLogsResponse.class, (handler, message) -> handler.deviceLogger.info("[{}] {}",
+                handler.logPrefix, ((SubscribeLogsResponse) message).getMessage().toStringUtf8()));
+        register.accept(VoiceAssistantRequest.class, (handler, message) -> {
+            ESPHomeVoiceAssistantAudioSource source = handler.audioSource;
             if (source != null) {
-                source.handleVoiceAssistantRequest(voiceAssistantRequest);
+                source.handleVoiceAssistantRequest((VoiceAssistantRequest) message);
             }
-        } else if (message instanceof VoiceAssistantAudio voiceAssistantAudio) {
-            ESPHomeVoiceAssistantAudioSource source = audioSource;
+        });
+        register.accept(VoiceAssistantAudio.class, (handler, message) -> {
+            ESPHomeVoiceAssistantAudioSource source = handler.audioSource;
             if (source != null) {
-                source.handleVoiceAssistantAudio(voiceAssistantAudio);
+                source.handleVoiceAssistantAudio((VoiceAssistantAudio) message);
             }
-        } else if (message instanceof HomeassistantActionRequest serviceResponse) {
-            Map<String, String> data = convertPbListToMap(serviceResponse.getDataList());
-            Map<String, String> dataTemplate = convertPbListToMap(serviceResponse.getDataTemplateList());
-            Map<String, String> variables = convertPbListToMap(serviceResponse.getVariablesList());
-            AbstractEvent event;
-            if (serviceResponse.getIsEvent()) {
-                String tagId;
-                if (serviceResponse.getService().equals(ACTION_TAG_SCANNED) && dataTemplate.isEmpty()
-                        && variables.isEmpty() && data.size() == 1 && (tagId = data.get("tag_id")) != null) {
-                    event = ESPHomeEventFactory.createTagScannedEvent(config.deviceId, tagId);
-                } else {
-                    event = ESPHomeEventFactory.createEventEvent(config.deviceId, serviceResponse.getService(), data,
-                            dataTemplate, variables);
-                }
-            } else {
-                event = ESPHomeEventFactory.createActionEvent(config.deviceId, serviceResponse.getService(), data,
-                        dataTemplate, variables);
+        });
+        register.accept(HomeassistantActionRequest.class,
+                (handler, message) -> handler.handleHomeassistantAction((HomeassistantActionRequest) message));
+        register.accept(SubscribeHomeAssistantStateResponse.class, (handler, message) -> handler
+                .initializeStateSubscription((SubscribeHomeAssistantStateResponse) message));
+
+        // Bluetooth proxy
+        MessageConsumer bluetooth = (handler, message) -> {
+            ESPHomeBluetoothProxyHandler bluetoothProxyHandler = handler.espHomeBluetoothProxyHandler;
+            if (bluetoothProxyHandler != null) {
+                bluetoothProxyHandler.handleBluetoothMessage(message, handler);
             }
-            eventPublisher.post(event);
-        } else if (message instanceof SubscribeHomeAssistantStateResponse subscribeHomeAssistantStateResponse) {
-            initializeStateSubscription(subscribeHomeAssistantStateResponse);
-        } else if (message instanceof GetTimeRequest) {
-            logger.debug("[{}] Received time sync request", logPrefix);
-            GetTimeResponse getTimeResponse = GetTimeResponse.newBuilder()
-                    .setEpochSeconds((int) (System.currentTimeMillis() / 1000)).build();
-            frameHelper.send(getTimeResponse);
-        } else if (message instanceof BluetoothLEAdvertisementResponse
-                || message instanceof BluetoothLERawAdvertisementsResponse
-                || message instanceof BluetoothDeviceConnectionResponse
-                || message instanceof BluetoothGATTGetServicesResponse
-                || message instanceof BluetoothGATTGetServicesDoneResponse
-                || message instanceof BluetoothGATTReadResponse || message instanceof BluetoothGATTNotifyDataResponse
-                || message instanceof BluetoothConnectionsFreeResponse || message instanceof BluetoothGATTErrorResponse
-                || message instanceof BluetoothGATTWriteResponse || message instanceof BluetoothGATTNotifyResponse
-                || message instanceof BluetoothDevicePairingResponse
-                || message instanceof BluetoothDeviceUnpairingResponse
-                || message instanceof BluetoothDeviceClearCacheResponse
-                || message instanceof BluetoothScannerStateResponse) {
-            if (espHomeBluetoothProxyHandler != null) {
-                espHomeBluetoothProxyHandler.handleBluetoothMessage(message, this);
-            }
-        } else if (message instanceof ListEntitiesServicesResponse listEntitiesServicesResponse) {
-            logger.debug("[{}] Received list entities services response {}", logPrefix, listEntitiesServicesResponse);
+        };
+        List.of(BluetoothLEAdvertisementResponse.class, BluetoothLERawAdvertisementsResponse.class,
+                BluetoothDeviceConnectionResponse.class, BluetoothGATTGetServicesResponse.class,
+                BluetoothGATTGetServicesDoneResponse.class, BluetoothGATTReadResponse.class,
+                BluetoothGATTNotifyDataResponse.class, BluetoothConnectionsFreeResponse.class,
+                BluetoothGATTErrorResponse.class, BluetoothGATTWriteResponse.class, BluetoothGATTNotifyResponse.class,
+                BluetoothDevicePairingResponse.class, BluetoothDeviceUnpairingResponse.class,
+                BluetoothDeviceClearCacheResponse.class, BluetoothScannerStateResponse.class)
+                .forEach(messageClass -> register.accept(messageClass, bluetooth));
+        return table;
+    }
 
-            try {
-                AbstractESPHomeThingAction thingAction = DynamicThingActionsGenerator
-                        .generateDynamicThingAction(listEntitiesServicesResponse, thingActionClassLoader);
-                thingAction.setListEntitiesServicesResponse(listEntitiesServicesResponse);
-                thingAction.setThingHandler(this);
-                thingActionServiceRegistrations
-                        .add(bundleContext.registerService(ThingActions.class, thingAction, new Hashtable<>()));
+    /**
+     * Process an entity state, on the packet queue of the entity when states are processed in parallel. Decryption
+     * and all other messages stay on the queue of the device.
+     */
+    private void dispatchState(MessageHandlerType type, GeneratedMessage message) {
+        AbstractMessageHandler<? extends GeneratedMessage, ? extends GeneratedMessage> messageHandler = requireMessageHandler(
+                type);
+        Optional<FieldDescriptor> keyField = ENTITY_KEY_FIELDS.get(message.getClass());
+        if (!config.parallelDispatch || keyField.isEmpty()) {
+            messageHandler.handleStateMessage(message);
+            return;
+        }
+        int key = (Integer) message.getField(keyField.get());
+        packetProcessor.execute(packetKey, key, () -> {
+            if (connectionState.get() == ConnectionState.CONNECTED && !disposed) {
+                messageHandler.handleStateMessage(message);
+            }
+            return PacketScheduler.PacketClass.STATE;
+        });
+    }
 
-            } catch (Exception e) {
-                logger.warn("[{}] Error generating dynamic actions from device: {}", logPrefix, e.getMessage(), e);
+    /**
+     * Run a task for an entity after a delay, in order with the states of the entity. Cancelled when the handler is
+     * disposed.
+     */
+    public void scheduleEntityTask(int key, Runnable task, long delay, TimeUnit unit) {
+        if (disposed) {
+            return;
+        }
+        PacketScheduler.PacketTask packetTask = () -> {
+            if (!disposed) {
+                task.run();
             }
+            return PacketScheduler.PacketClass.STATE;
+        };
+        boolean parallel = config.parallelDispatch;
+        try {
+            ScheduledFuture<?> future = executorService.schedule(() -> {
+                if (parallel) {
+                    packetProcessor.execute(packetKey, key, packetTask);
+                } else {
+                    packetProcessor.execute(packetKey, packetTask);
+                }
+            }, delay, unit, "Delayed task for entity " + key);
+            entityTaskFutures.removeIf(Future::isDone);
+            entityTaskFutures.add(future);
+        } catch (RejectedExecutionException e) {
+            logger.debug("[{}] Executor is shut down, not scheduling task for entity {}", logPrefix, key);
+        }
+    }
+
+    private AbstractMessageHandler<? extends GeneratedMessage, ? extends GeneratedMessage> requireMessageHandler(
+            MessageHandlerType type) {
+        return Objects.requireNonNull(getMessageHandler(type));
+    }
+
+    private void handleAuthenticationResponse(AuthenticationResponse connectResponse) {
+        if (connectResponse.getInvalidPassword()) {
+            logger.debug("[{}] Received login response {}", logPrefix, connectResponse);
+
+            handleDisconnection(ThingStatusDetail.CONFIGURATION_ERROR, "Invalid password", false);
+        }
+    }
 
+    private void handleDeviceInfo(DeviceInfoResponse rsp) {
+        Map<String, String> props = new HashMap<>(thing.getProperties());
+        props.put(Thing.PROPERTY_FIRMWARE_VERSION, rsp.getEsphomeVersion());
+        props.put(Thing.PROPERTY_MAC_ADDRESS, rsp.getMacAddress());
+        props.put(Thing.PROPERTY_MODEL_ID, rsp.getModel());
+        props.put("name", rsp.getName());
+        props.put(Thing.PROPERTY_VENDOR, rsp.getManufacturer());
+        props.put("compilationTime", rsp.getCompilationTime());
+        if (!rsp.getProjectName().isEmpty()) {
+            props.put("projectName", rsp.getProjectName());
         } else {
-            if (message instanceof MediaPlayerStateResponse mediaPlayerStateResponse) {
-                handleMediaPlayerState(mediaPlayerStateResponse);
-            }
-            // Regular messages handled by message handlers
-            AbstractMessageHandler<? extends GeneratedMessage, ? extends GeneratedMessage> abstractMessageHandler = classToHandlerMap
-                    .get(message.getClass());
-            if (abstractMessageHandler != null) {
-                abstractMessageHandler.handleMessage(message);
+            props.remove("projectName");
+        }
+        if (!rsp.getProjectVersion().isEmpty()) {
+            props.put("projectVersion", rsp.getProjectVersion());
+        } else {
+            props.remove("projectVersion");
+        }
+        voiceAssistantFeatureFlags = rsp.getVoiceAssistantFeatureFlags();
+        updateThing(editThing().withProperties(props).build());
+    }
+
+    private void handleListEntitiesDone() throws ProtocolAPIError {
+        // Store all channel types from the interrogation in one go, replacing the ones from the previous connection
+        dynamicChannelTypeProvider.putChannelTypesForThing(thing.getUID(), dynamicChannelTypes);
+        stateDescriptionProvider.setDescriptions(thing.getUID(), dynamicStateDescriptions, dynamicCommandDescriptions);
+        updateThing(editThing().withChannels(dynamicChannels).build());
+        channelIndex = newChannelIndex(thing.getChannels());
+        List<String> channelIds = dynamicChannels.stream().map(c -> c.getUID().getId()).toList();
+        unconfirmedStates.keySet().retainAll(channelIds);
+        StateSnapshot snapshot = stateSnapshot;
+        if (snapshot != null) {
+            snapshot.retain(channelIds);
+        }
+        logger.debug("[{}] Device interrogation complete, done updating thing channels", logPrefix);
+        if (!deferredEntities.isEmpty()) {
+            logger.debug("[{}] Not creating channels for {} unlinked diagnostic entities", logPrefix,
+                    deferredEntities.size());
+        }
+        deferredChannels.clear();
+        interrogated = true;
+        refreshAudioServices();
+        sendMessage(SubscribeStatesRequest.getDefaultInstance());
+    }
+
+    private void handleListEntitiesServices(ListEntitiesServicesResponse listEntitiesServicesResponse) {
+        logger.debug("[{}] Received list entities services response {}", logPrefix, listEntitiesServicesResponse);
+        // Class generation is comparatively slow, keep it off the packet thread
+        int generation = thingActionGeneration;
+        executorService.execute(() -> registerThingAction(listEntitiesServicesResponse, generation),
+                String.format("[%s] Generate thing action", logPrefix));
+    }
+
+    private void handleHomeassistantAction(HomeassistantActionRequest serviceResponse) {
+        Map<String, String> data = convertPbListToMap(serviceResponse.getDataList());
+        Map<String, String> dataTemplate = convertPbListToMap(serviceResponse.getDataTemplateList());
+        Map<String, String> variables = convertPbListToMap(serviceResponse.getVariablesList());
+        AbstractEvent event;
+        if (serviceResponse.getIsEvent()) {
+            String tagId;
+            if (serviceResponse.getService().equals(ACTION_TAG_SCANNED) && dataTemplate.isEmpty()
+                    && variables.isEmpty() && data.size() == 1 && (tagId = data.get("tag_id")) != null) {
+                event = ESPHomeEventFactory.createTagScannedEvent(config.deviceId, tagId);
             } else {
-                logger.warn("[{}] Unhandled message of type {}. This is lack of support in the binding. Content: '{}'.",
-                        logPrefix, message.getClass().getName(), message);
+                event = ESPHomeEventFactory.createEventEvent(config.deviceId, serviceResponse.getService(), data,
+                        dataTemplate, variables);
             }
+        } else {
+            event = ESPHomeEventFactory.createActionEvent(config.deviceId, serviceResponse.getService(), data,
+                    dataTemplate, variables);
         }
+        eventPublisher.post(event);
+    }
+
+    @FunctionalInterface
+    private interface MessageConsumer {
+        void accept(ESPHomeHandler handler, GeneratedMessage message) throws ProtocolAPIError;
     }
 
     public void sendBluetoothCommand(GeneratedMessage message) {
-        synchronized (connectionStateLock) {
-            try {
-                if (connectionState == ConnectionState.CONNECTED) {
-                    frameHelper.send(message);
-                } else {
-                    logger.warn("[{}] Not connected, ignoring bluetooth command {}", logPrefix, message);
-                }
-            } catch (ProtocolAPIError e) {
-                logger.error("[{}] Error sending bluetooth command", logPrefix, e);
+        try {
+            if (connectionState.get() == ConnectionState.CONNECTED) {
+                sendMessage(message);
+            } else {
+                logger.warn("[{}] Not connected, ignoring bluetooth command {}", logPrefix, message);
             }
+        } catch (ProtocolAPIError e) {
+            logger.error("[{}] Error sending bluetooth command", logPrefix, e);
         }
     }
 
@@ -832,104 +1238,146 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
                 .setEntityId(subscription.getEntityId()).setAttribute(subscription.getAttribute()).setState(state)
                 .build();
         try {
-            frameHelper.send(ohStateUpdate);
+            sendMessage(ohStateUpdate);
         } catch (ProtocolAPIError e) {
             logger.warn("[{}] Error sending OpenHAB state update to ESPHome", logPrefix, e);
         }
     }
 
     public void handleOpenHABEvent(EventSubscription subscription, String esphomeState) {
-        synchronized (connectionStateLock) {
-            if (disposed || connectionState != ConnectionState.CONNECTED) {
-                logger.debug("[{}] Not connected, skipping OpenHAB event for {}", logPrefix,
-                        subscription.getEntityId());
-                return;
-            }
-            HomeAssistantStateResponse ohStateUpdate = HomeAssistantStateResponse.newBuilder()
-                    .setEntityId(subscription.getEntityId()).setAttribute(subscription.getAttribute())
-                    .setState(esphomeState).build();
-            try {
-                frameHelper.send(ohStateUpdate);
-            } catch (ProtocolAPIError e) {
-                logger.warn("[{}] Error sending OpenHAB state update to ESPHome", logPrefix, e);
-            }
+        if (disposed || connectionState.get() != ConnectionState.CONNECTED) {
+            logger.debug("[{}] Not connected, skipping OpenHAB event for {}", logPrefix,
+                    subscription.getEntityId());
+            return;
+        }
+        HomeAssistantStateResponse ohStateUpdate = HomeAssistantStateResponse.newBuilder()
+                .setEntityId(subscription.getEntityId()).setAttribute(subscription.getAttribute())
+                .setState(esphomeState).build();
+        try {
+            sendMessage(ohStateUpdate);
+        } catch (ProtocolAPIError e) {
+            logger.warn("[{}] Error sending OpenHAB state update to ESPHome", logPrefix, e);
         }
     }
 
     @Override
     public void updateState(ChannelUID channelUID, State state) {
-        super.updateState(channelUID, state);
+        updateState(channelUID, state, false);
+    }
+
+    /**
+     * Post a state within the binding wide state update budget
+     *
+     * @param lowPriority whether the state may be shed rather than coalesced if the budget is exceeded
+     * @return false if the state was shed and will never be posted
+     */
+    public boolean updateState(ChannelUID channelUID, State state, boolean lowPriority) {
+        StateAdmissionController.Budget budget = admissionBudget;
+        if (budget == null) {
+            postState(channelUID, state);
+            return true;
+        }
+        return budget.post(channelUID, state, lowPriority);
+    }
+
+    private void postState(ChannelUID channelUID, State state) {
+        String channelId = channelUID.getId();
+        State restored = unconfirmedStates.remove(channelId);
+        if (restored == null || !restored.equals(state)) {
+            super.updateState(channelUID, state);
+        }
+        StateSnapshot snapshot = stateSnapshot;
+        if (snapshot != null) {
+            snapshot.record(channelId, state);
+        }
     }
 
     private void handleHelloResponse(GeneratedMessage message) throws ProtocolAPIError {
         if (message instanceof HelloResponse helloResponse) {
-            synchronized (connectionStateLock) {
+            synchronized (lifecycleLock) {
+                if (!connectionState.compareAndSet(ConnectionState.HELLO_SENT, ConnectionState.CONNECTED)) {
+                    // Disconnected while the response was being processed
+                    return;
+                }
                 logger.debug("[{}] Received hello response {}", logPrefix, helloResponse);
                 logger.info("[{}] Connected successfully. Device '{}' is running '{}' on protocol version '{}.{}'",
                         logPrefix, helloResponse.getName(), helloResponse.getServerInfo(),
                         helloResponse.getApiVersionMajor(), helloResponse.getApiVersionMinor());
-                connectionState = ConnectionState.CONNECTED;
                 persistLastKnownIpAddress();
 
                 if (config.allowActions) {
                     logger.debug("[{}] Requesting device to send actions and events", logPrefix);
-                    frameHelper.send(SubscribeHomeassistantServicesRequest.getDefaultInstance());
+                    sendMessage(SubscribeHomeassistantServicesRequest.getDefaultInstance());
                 }
                 if (config.deviceLogLevel != LogLevel.NONE) {
                     logger.info("[{}] Starting to stream logs to logger " + DEVICE_LOGGER_NAME, logPrefix);
 
-                    frameHelper.send(SubscribeLogsRequest.newBuilder()
+                    sendMessage(SubscribeLogsRequest.newBuilder()
                             .setLevel(io.esphome.api.LogLevel.valueOf("LOG_LEVEL_" + config.deviceLogLevel.name()))
                             .build());
                 }
 
                 updateStatus(ThingStatus.ONLINE);
                 logger.debug("[{}] Device login complete, starting device interrogation", logPrefix);
-                // Reset last pong
-                lastPong = Instant.now();
+                // Reset last received
+                lastReceived = Instant.now();
 
                 pingWatchdogFuture = executorService.scheduleAtFixedRate(() -> {
-                    synchronized (connectionStateLock) {
-                        if (lastPong.plusSeconds((long) config.maxPingTimeouts * config.pingInterval)
-                                .isBefore(Instant.now())) {
-                            logger.warn(
-                                    "[{}] Ping responses lacking. Waited {} times {}s, total of {}s. Last pong received at {}. Assuming connection lost and disconnecting",
-                                    logPrefix, config.maxPingTimeouts, config.pingInterval,
-                                    config.maxPingTimeouts * config.pingInterval, lastPong);
-
-                            String reason = String.format(
-                                    "ESPHome did not respond to ping requests. %d pings sent with %d s delay",
-                                    config.maxPingTimeouts, config.pingInterval);
-                            handleDisconnection(ThingStatusDetail.COMMUNICATION_ERROR, reason, true);
-                        } else {
-                            if (connectionState == ConnectionState.CONNECTED) {
-                                try {
-                                    logger.debug("[{}] Sending ping", logPrefix);
-                                    frameHelper.send(PingRequest.getDefaultInstance());
-                                } catch (ProtocolAPIError e) {
-                                    logger.warn("[{}] Error sending ping request", logPrefix, e);
-                                }
+                    if (lastReceived.plusSeconds((long) config.maxPingTimeouts * config.pingInterval)
+                            .isBefore(Instant.now())) {
+                        logger.warn(
+                                "[{}] Ping responses lacking. Waited {} times {}s, total of {}s. Last packet received at {}. Assuming connection lost and disconnecting",
+                                logPrefix, config.maxPingTimeouts, config.pingInterval,
+                                config.maxPingTimeouts * config.pingInterval, lastReceived);
+
+                        String reason = String.format(
+                                "ESPHome did not respond to ping requests. %d pings sent with %d s delay",
+                                config.maxPingTimeouts, config.pingInterval);
+                        handleDisconnection(ThingStatusDetail.COMMUNICATION_ERROR, reason, true);
+                    } else {
+                        if (connectionState.get() == ConnectionState.CONNECTED) {
+                            try {
+                                logger.debug("[{}] Sending ping", logPrefix);
+                                sendMessage(PingRequest.getDefaultInstance());
+                            } catch (ProtocolAPIError e) {
+                                logger.warn("[{}] Error sending ping request", logPrefix, e);
+                            }
+                            updateQueueWaitProperties();
+                            // Bound the states lost should openHAB stop without closing the snapshot
+                            StateSnapshot snapshot = stateSnapshot;
+                            if (snapshot != null) {
+                                snapshot.flush();
                             }
                         }
                     }
                 }, config.pingInterval, config.pingInterval, TimeUnit.SECONDS,
                         String.format("[%s] Ping watchdog", logPrefix));
 
-                // Clean up old channels and channel types
+                // Clean up old channels and channel types. The channel types and descriptions of the previous
+                // connection are replaced once interrogation completes
                 dynamicChannels.clear();
-                dynamicChannelTypeProvider.removeChannelTypesForThing(thing.getUID());
+                synchronized (messageHandlers) {
+                    for (AbstractMessageHandler<?, ?> messageHandler : messageHandlers) {
+                        if (messageHandler != null) {
+                            messageHandler.clearChannels();
+                        }
+                    }
+                }
+                dynamicChannelTypes.clear();
+                dynamicStateDescriptions.clear();
+                dynamicCommandDescriptions.clear();
+                deferredChannels.clear();
+                deferredEntities.clear();
+                deferredChannelIds.clear();
+                materializedAdvancedEntities.clear();
 
                 // Clean up old actions
                 clearThingActions();
-                // Create a new classloader for the ThingActions generated from this device, to allow for proper
-                // unloading of old classes when the device reappears with different actions after a reconnect
-                thingActionClassLoader = new ClassLoader(getClass().getClassLoader()) {
-                };
 
                 // Start interrogation
-                frameHelper.send(DeviceInfoRequest.getDefaultInstance());
-                frameHelper.send(ListEntitiesRequest.getDefaultInstance());
-                frameHelper.send(SubscribeHomeAssistantStatesRequest.getDefaultInstance());
+                sendMessage(DeviceInfoRequest.getDefaultInstance());
+                sendMessage(ListEntitiesRequest.getDefaultInstance());
+                sendMessage(SubscribeHomeAssistantStatesRequest.getDefaultInstance());
             }
         }
     }
@@ -993,32 +1441,233 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
     }
 
     public void addChannelType(ChannelType channelType) {
-        dynamicChannelTypeProvider.putChannelType(channelType);
+        dynamicChannelTypes.add(channelType);
     }
 
     public void addDescription(ChannelUID channelUID, StateDescription stateDescription) {
-        stateDescriptionProvider.setDescription(channelUID, stateDescription);
+        dynamicStateDescriptions.put(channelUID, stateDescription);
     }
 
     public void addDescription(ChannelUID channelUID, CommandDescription commandDescription) {
-        stateDescriptionProvider.setDescription(channelUID, commandDescription);
+        dynamicCommandDescriptions.put(channelUID, commandDescription);
     }
 
     public void addChannel(Channel channel) {
         dynamicChannels.add(channel);
     }
 
+    /**
+     * Decide whether a channel should be kept out of the thing. With {@code lazyDiagnosticChannels} enabled, channels
+     * of advanced (diagnostic, config or disabled by default) entities are only materialized if one of the channels
+     * of the entity is linked. Otherwise the channel is remembered by entity key, and states for the entity dropped.
+     *
+     * @return true if the channel was deferred and must not be registered
+     */
+    public boolean deferChannel(Channel channel, ChannelType channelType, @Nullable StateDescription stateDescription,
+            @Nullable CommandDescription commandDescription) {
+        if (config == null || !config.lazyDiagnosticChannels || !channelType.isAdvanced()) {
+            return false;
+        }
+        Object keyValue = channel.getConfiguration().get(BindingConstants.CHANNEL_CONFIGURATION_ENTITY_KEY);
+        if (!(keyValue instanceof Number number)) {
+            return false;
+        }
+        int key = number.intValue();
+        if (materializedAdvancedEntities.contains(key)) {
+            return false;
+        }
+        if (isLinked(channel.getUID())) {
+            // Materialize the channels of this entity deferred so far as well
+            materializedAdvancedEntities.add(key);
+            deferredEntities.remove(key);
+            List<DeferredChannel> deferred = deferredChannels.remove(key);
+            if (deferred != null) {
+                for (DeferredChannel d : deferred) {
+                    deferredChannelIds.remove(d.channel().getUID().getId());
+                    addChannelType(d.channelType());
+                    addChannel(d.channel());
+                    StateDescription deferredStateDescription = d.stateDescription();
+                    if (deferredStateDescription != null) {
+                        addDescription(d.channel().getUID(), deferredStateDescription);
+                    }
+                    CommandDescription deferredCommandDescription = d.commandDescription();
+                    if (deferredCommandDescription != null) {
+                        addDescription(d.channel().getUID(), deferredCommandDescription);
+                    }
+                }
+            }
+            return false;
+        }
+        deferredChannels.computeIfAbsent(key, k -> new ArrayList<>())
+                .add(new DeferredChannel(channel, channelType, stateDescription, commandDescription));
+        deferredEntities.add(key);
+        deferredChannelIds.add(channel.getUID().getId());
+        return true;
+    }
+
+    /**
+     * Find the first channel of an entity, regardless of field.
+     */
+    public @Nullable Channel findChannel(int key) {
+        return channelIndex.get(key);
+    }
+
+    public @Nullable Channel findChannel(int key, String field) {
+        return channelIndex.get(key, field);
+    }
+
+    /**
+     * @return the first channel of the entity, or null if it does not exist or is not linked to any item
+     */
+    public @Nullable Channel findLinkedChannel(int key) {
+        return channelIndex.getLinked(key);
+    }
+
+    public @Nullable Channel findLinkedChannel(int key, String field) {
+        return channelIndex.getLinked(key, field);
+    }
+
+    private @Nullable Channel findChannel(String channelId) {
+        return channelIndex.get(channelId);
+    }
+
+    /**
+     * The index is built from the channels of the thing, and must be rebuilt wherever they are replaced
+     */
+    private ChannelIndex newChannelIndex(List<Channel> channels) {
+        return new ChannelIndex(channels, this::isLinked);
+    }
+
+    private void updateChannelLink(ChannelUID channelUID, boolean linked) {
+        if (!channelIndex.setLinked(channelUID.getId(), linked)) {
+            // Not a channel of the current interrogation, take the channels of the thing as they are
+            channelIndex = newChannelIndex(thing.getChannels());
+        }
+    }
+
+    @Override
+    public void channelLinked(ChannelUID channelUID) {
+        // Start forwarding states before the refresh triggered by the link is answered
+        updateChannelLink(channelUID, true);
+        // The newly linked item must receive the next state even if it is unchanged
+        synchronized (messageHandlers) {
+            for (AbstractMessageHandler<?, ?> messageHandler : messageHandlers) {
+                if (messageHandler != null) {
+                    messageHandler.resetChannel(channelUID);
+                }
+            }
+        }
+        super.channelLinked(channelUID);
+    }
+
+    @Override
+    public void channelUnlinked(ChannelUID channelUID) {
+        updateChannelLink(channelUID, false);
+        StateAdmissionController.Budget budget = admissionBudget;
+        if (budget != null) {
+            budget.discard(channelUID);
+        }
+        super.channelUnlinked(channelUID);
+    }
+
+    public ChannelStateStore getStateStore() {
+        return stateStore;
+    }
+
+    public CommandAggregator getCommandAggregator() {
+        return commandAggregator;
+    }
+
+    public @Nullable CommandBatchService getCommandBatchService() {
+        return commandBatchService;
+    }
+
+    @Override
+    public Collection<Class<? extends ThingHandlerService>> getServices() {
+        return List.of(CommandBatchActions.class);
+    }
+
+    /**
+     * @return whether the channel type of the channel is advanced, i.e. it belongs to a diagnostic, config or disabled
+     *         by default entity
+     */
+    public boolean isAdvancedChannel(Channel channel) {
+        ChannelTypeUID channelTypeUID = channel.getChannelTypeUID();
+        ChannelType channelType = channelTypeUID == null ? null
+                : dynamicChannelTypeProvider.getChannelType(channelTypeUID, null);
+        return channelType != null && channelType.isAdvanced();
+    }
+
+    private void updateAdmissionProperties(StateAdmissionController.Budget budget) {
+        updateProperty(PROPERTY_STATE_UPDATES_SHED, String.valueOf(budget.getShed()));
+        updateProperty(PROPERTY_STATE_UPDATES_COALESCED, String.valueOf(budget.getCoalesced()));
+    }
+
+    private void updateQueueWaitProperties() {
+        long now = System.nanoTime();
+        if (now - queueWaitReportedNanos < QUEUE_WAIT_REPORT_INTERVAL_NANOS) {
+            return;
+        }
+        queueWaitReportedNanos = now;
+        PacketScheduler.QueueWait queueWait = packetProcessor.getQueueWait(packetKey);
+        if (queueWait != null) {
+            updateProperty(PROPERTY_PACKET_QUEUE_WAIT_AVERAGE,
+                    TimeUnit.NANOSECONDS.toMillis(queueWait.averageNanos()) + " ms");
+            updateProperty(PROPERTY_PACKET_QUEUE_WAIT_MAX, TimeUnit.NANOSECONDS.toMillis(queueWait.maxNanos()) + " ms");
+        }
+        EncryptedFrameHelper helper = frameHelper;
+        ESPHomeConfiguration configuration = config;
+        if (helper != null && configuration != null && configuration.maxMessagesPerSecond > 0) {
+            updateProperty(PROPERTY_OUTBOUND_COMMANDS_REPLACED,
+                    String.valueOf(helper.getOutboundScheduler().getReplaced()));
+        }
+    }
+
+    public boolean isDeferredEntity(int key) {
+        return !deferredEntities.isEmpty() && deferredEntities.contains(key);
+    }
+
+    public boolean isDeferredChannel(String channelId) {
+        return deferredChannelIds.contains(channelId);
+    }
+
+    private record DeferredChannel(Channel channel, ChannelType channelType,
+            @Nullable StateDescription stateDescription, @Nullable CommandDescription commandDescription) {
+    }
+
+    public boolean isPublishChangesOnly() {
+        ESPHomeConfiguration configuration = config;
+        return configuration != null && configuration.publishChangesOnly;
+    }
+
+    /**
+     * @return seconds after which an unchanged state is published anyway, 0 for never
+     */
+    public int getHeartbeatInterval() {
+        ESPHomeConfiguration configuration = config;
+        return configuration == null ? 0 : configuration.heartbeatInterval;
+    }
+
+    /**
+     * @return length in seconds of the window numeric sensors are aggregated over, 0 for no aggregate channels
+     */
+    public int getAggregationWindow() {
+        ESPHomeConfiguration configuration = config;
+        return configuration == null ? 0 : configuration.aggregationWindow;
+    }
+
     public boolean isDisposed() {
         return disposed;
     }
 
     public void listenForBLEAdvertisements(ESPHomeBluetoothProxyHandler espHomeBluetoothProxyHandler) {
-        synchronized (connectionStateLock) {
+        synchronized (lifecycleLock) {
             this.espHomeBluetoothProxyHandler = espHomeBluetoothProxyHandler;
-            if (config.enableBluetoothProxy && !bluetoothProxyStarted && connectionState == ConnectionState.CONNECTED) {
+            if (config.enableBluetoothProxy && !bluetoothProxyStarted
+                    && connectionState.get() == ConnectionState.CONNECTED) {
                 try {
                     logger.info("[{}] Starting BLE proxy", logPrefix);
-                    frameHelper.send(SubscribeBluetoothLEAdvertisementsRequest.getDefaultInstance());
+                    sendMessage(SubscribeBluetoothLEAdvertisementsRequest.getDefaultInstance());
                     bluetoothProxyStarted = true;
                 } catch (Exception e) {
                     logger.error("[{}] Error starting BLE proxy", logPrefix, e);
@@ -1028,11 +1677,11 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
     }
 
     public void stopListeningForBLEAdvertisements() {
-        synchronized (connectionStateLock) {
-            if (connectionState == ConnectionState.CONNECTED) {
+        synchronized (lifecycleLock) {
+            if (connectionState.get() == ConnectionState.CONNECTED) {
                 try {
                     logger.info("[{}] Stopping BLE proxy", logPrefix);
-                    frameHelper.send(UnsubscribeBluetoothLEAdvertisementsRequest.getDefaultInstance());
+                    sendMessage(UnsubscribeBluetoothLEAdvertisementsRequest.getDefaultInstance());
                 } catch (Exception e) {
                     logger.warn("[{}] Error stopping BLE proxy", logPrefix, e);
                 }
@@ -1044,19 +1693,69 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
     }
 
     public void executeAPIAction(ExecuteServiceRequest cmd) {
-        synchronized (connectionStateLock) {
-            if (disposed || connectionState != ConnectionState.CONNECTED) {
-                logger.warn("[{}] Not connected, cannot execute API action {}", logPrefix, cmd.getKey());
-            } else {
-                try {
-                    frameHelper.send(cmd);
-                } catch (ProtocolAPIError e) {
-                    logger.warn("[{}] Error sending API action {}", logPrefix, e);
-                }
+        if (disposed || connectionState.get() != ConnectionState.CONNECTED) {
+            logger.warn("[{}] Not connected, cannot execute API action {}", logPrefix, cmd.getKey());
+        } else {
+            try {
+                sendMessage(cmd);
+            } catch (ProtocolAPIError e) {
+                logger.warn("[{}] Error sending API action {}", logPrefix, e);
             }
         }
     }
 
+    private boolean isRedundantCommand(
+            AbstractMessageHandler<? extends GeneratedMessage, ? extends GeneratedMessage> messageHandler,
+            Channel channel, Command command) {
+        ESPHomeConfiguration configuration = config;
+        return configuration != null && configuration.commandDedupeWindow > 0 && messageHandler
+                .isRedundantCommand(channel, command, TimeUnit.SECONDS.toNanos(configuration.commandDedupeWindow));
+    }
+
+    /**
+     * Answer a REFRESH with the last state received from the device
+     *
+     * @return false if no state has been received for the channel, and the device has to send it
+     */
+    private boolean refreshFromStateStore(ChannelUID channelUID) {
+        Channel channel = findChannel(channelUID.getId());
+        if (channel == null || !(channel.getConfiguration()
+                .get(BindingConstants.CHANNEL_CONFIGURATION_ENTITY_TYPE) instanceof String entityType)) {
+            return false;
+        }
+        AbstractMessageHandler<? extends GeneratedMessage, ? extends GeneratedMessage> messageHandler = getMessageHandler(
+                MESSAGE_HANDLER_TYPES_BY_ENTITY_TYPE.get(entityType));
+        return messageHandler != null && messageHandler.refresh(channel);
+    }
+
+    /**
+     * Ask the device to send all its states again. Requests made while one is pending are served by that one, so that a
+     * UI refreshing all channels of the thing results in a single request.
+     */
+    private void scheduleResync() {
+        ScheduledFuture<?> future = resyncFuture;
+        if (future != null && !future.isDone()) {
+            return;
+        }
+        resyncFuture = executorService.schedule(() -> {
+            if (connectionState.get() != ConnectionState.CONNECTED) {
+                return;
+            }
+            try {
+                sendMessage(SubscribeStatesRequest.getDefaultInstance());
+            } catch (ProtocolAPIError e) {
+                logger.warn("[{}] Error requesting states from device: {}", logPrefix, e.getMessage());
+            }
+        }, RESYNC_DELAY_MS, TimeUnit.MILLISECONDS, String.format("[%s] State resync", logPrefix));
+    }
+
+    private void cancelResync() {
+        if (resyncFuture != null) {
+            resyncFuture.cancel(false);
+            resyncFuture = null;
+        }
+    }
+
     private void cancelPingWatchdog() {
         if (pingWatchdogFuture != null) {
             pingWatchdogFuture.cancel(true);
@@ -1079,7 +1778,7 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
     }
 
     private void scheduleConnect(int delaySeconds) {
-        synchronized (connectionStateLock) {
+        synchronized (lifecycleLock) {
             cancelConnectFuture();
             connectFuture = executorService.schedule(this::connect, delaySeconds, TimeUnit.SECONDS,
                     String.format("[%s] Connect", logPrefix), 7000);
@@ -1108,9 +1807,10 @@ public class ESPHomeHandler extends BaseThingHandler implements CommunicationLis
 
     public void onDeviceReappeared() {
         logger.debug("[{}] Device reappeared via mDNS, connection state {}", logPrefix, connectionState);
-        synchronized (connectionStateLock) {
+        synchronized (lifecycleLock) {
             ScheduledFuture<?> cF = connectFuture;
-            if (connectionState == ConnectionState.UNINITIALIZED && (cF == null || cF.getDelay(TimeUnit.SECONDS) > 0)) {
+            if (connectionState.get() == ConnectionState.UNINITIALIZED
+                    && (cF == null || cF.getDelay(TimeUnit.SECONDS) > 0)) {
                 logger.info("[{}] Device reappeared via mDNS, triggering immediate reconnect", logPrefix);
                 exponentialBackoff.reset();
                 scheduleConnect(0);
@@ -13,14 +13,20 @@
 package no.seime.openhab.binding.esphome.internal.handler;
 
 import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.lang3.StringUtils;
 import org.eclipse.jdt.annotation.NonNullByDefault;
 import org.eclipse.jdt.annotation.Nullable;
 import org.openhab.binding.bluetooth.BluetoothAdapter;
+import org.openhab.core.OpenHAB;
 import org.openhab.core.audio.AudioHTTPServer;
 import org.openhab.core.events.EventPublisher;
 import org.openhab.core.net.NetworkAddressService;
@@ -36,11 +42,11 @@ import org.osgi.service.component.annotations.Reference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.jano7.executor.KeySequentialExecutor;
-
 import no.seime.openhab.binding.esphome.internal.BindingConstants;
 import no.seime.openhab.binding.esphome.internal.bluetooth.ESPHomeBluetoothProxyHandler;
 import no.seime.openhab.binding.esphome.internal.comm.ConnectionSelector;
+import no.seime.openhab.binding.esphome.internal.comm.GracefulDisconnector;
+import no.seime.openhab.binding.esphome.internal.comm.PacketScheduler;
 import no.seime.openhab.binding.esphome.internal.message.statesubscription.ESPHomeEventSubscriber;
 
 /**
@@ -58,6 +64,15 @@ public class ESPHomeHandlerFactory extends BaseThingHandlerFactory {
     private static final Set<ThingTypeUID> SUPPORTED_THING_TYPES_UIDS = Set.of(BindingConstants.THING_TYPE_DEVICE,
             BindingConstants.THING_TYPE_BLE_PROXY);
 
+    private static final long SHUTDOWN_DISCONNECT_TIMEOUT_MS = 2000;
+    private static final int SCHEDULER_THREADS = 4;
+    private static final int DEFAULT_CONTROL_PACKET_WEIGHT = 8;
+    private static final int DEFAULT_STATE_PACKET_WEIGHT = 4;
+    private static final int DEFAULT_BULK_PACKET_WEIGHT = 1;
+
+    static final String PACKET_EXECUTION_SHARED = "shared";
+    static final String PACKET_EXECUTION_VIRTUAL_THREADS = "virtualThreads";
+
     private @Nullable String defaultEncryptionKey;
 
     private final AtomicLong threadCounter = new AtomicLong(0);
@@ -76,8 +91,15 @@ public class ESPHomeHandlerFactory extends BaseThingHandlerFactory {
     private final AudioHTTPServer audioHTTPServer;
     private final NetworkAddressService networkAddressService;
     private final MonitoredScheduledThreadPoolExecutor scheduler;
-    private final KeySequentialExecutor packetExecutor;
+    // Replaced in activate when packets are to be processed on virtual threads, before any handler is created
+    private PacketScheduler packetExecutor;
+    private @Nullable ExecutorService virtualThreadExecutor;
     private final ConnectionSelector connectionSelector;
+    private final StateSnapshotStore stateSnapshotStore;
+    private final GracefulDisconnector disconnector;
+    private final StateAdmissionController admissionController;
+    private final CommandBatchService commandBatchService;
+    private @Nullable ServiceRegistration<?> commandBatchServiceRegistration;
 
     private final Map<ThingUID, ESPHomeHandler> esphomeHandlers = new ConcurrentHashMap<>();
 
@@ -87,7 +109,7 @@ public class ESPHomeHandlerFactory extends BaseThingHandlerFactory {
             @Reference ESPHomeEventSubscriber eventSubscriber, @Reference ThingRegistry thingRegistry,
             @Reference EventPublisher eventPublisher, @Reference AudioHTTPServer audioHTTPServer,
             @Reference NetworkAddressService networkAddressService) throws IOException {
-        scheduler = new MonitoredScheduledThreadPoolExecutor(4, r -> {
+        scheduler = new MonitoredScheduledThreadPoolExecutor(SCHEDULER_THREADS, r -> {
             long currentCount = threadCounter.incrementAndGet();
             logger.debug("Creating new worker thread {} for scheduler", currentCount);
             Thread t = new Thread(r);
@@ -96,7 +118,7 @@ public class ESPHomeHandlerFactory extends BaseThingHandlerFactory {
             return t;
         }, 300);
 
-        packetExecutor = new KeySequentialExecutor(scheduler);
+        packetExecutor = new PacketScheduler(scheduler, SCHEDULER_THREADS);
 
         this.dynamicChannelTypeProvider = dynamicChannelTypeProvider;
         this.stateDescriptionProvider = stateDescriptionProvider;
@@ -107,6 +129,11 @@ public class ESPHomeHandlerFactory extends BaseThingHandlerFactory {
         this.networkAddressService = networkAddressService;
 
         connectionSelector = new ConnectionSelector();
+        disconnector = new GracefulDisconnector(scheduler);
+        admissionController = new StateAdmissionController(scheduler);
+        commandBatchService = new CommandBatchService(esphomeHandlers::get, scheduler);
+        stateSnapshotStore = new StateSnapshotStore(
+                Path.of(OpenHAB.getUserDataFolder(), BindingConstants.BINDING_ID, "state"));
     }
 
     @Override
@@ -116,7 +143,8 @@ public class ESPHomeHandlerFactory extends BaseThingHandlerFactory {
         if (BindingConstants.THING_TYPE_DEVICE.equals(thingTypeUID)) {
             ESPHomeHandler handler = new ESPHomeHandler(thing, connectionSelector, dynamicChannelTypeProvider,
                     stateDescriptionProvider, eventSubscriber, scheduler, packetExecutor, eventPublisher,
-                    defaultEncryptionKey, getBundleContext(), audioHTTPServer, networkAddressService);
+                    defaultEncryptionKey, getBundleContext(), audioHTTPServer, networkAddressService,
+                    stateSnapshotStore, disconnector, admissionController, commandBatchService);
             esphomeHandlers.put(thing.getUID(), handler);
             return handler;
         } else if (BindingConstants.THING_TYPE_BLE_PROXY.equals(thingTypeUID)) {
@@ -139,14 +167,81 @@ public class ESPHomeHandlerFactory extends BaseThingHandlerFactory {
             logger.info(
                     "Found binding default encryption key for ESPHome devices, will use if not configured on thing");
         }
+        Object maxStateUpdatesPerSecond = properties.get("maxStateUpdatesPerSecond");
+        if (maxStateUpdatesPerSecond != null) {
+            try {
+                admissionController.setRate(new BigDecimal(maxStateUpdatesPerSecond.toString()).intValue());
+            } catch (NumberFormatException e) {
+                logger.warn(
+                        "Invalid maxStateUpdatesPerSecond '{}' in binding configuration, not limiting state updates",
+                        maxStateUpdatesPerSecond);
+            }
+        }
+        if (admissionController.getRate() > 0) {
+            logger.info("Limiting state updates of all ESPHome devices to {} per second",
+                    admissionController.getRate());
+        }
+        Object packetExecution = properties.get("packetExecution");
+        if (PACKET_EXECUTION_VIRTUAL_THREADS.equals(packetExecution)) {
+            ExecutorService executor = createVirtualThreadExecutor();
+            virtualThreadExecutor = executor;
+            packetExecutor = new PacketScheduler(executor, Integer.MAX_VALUE);
+            logger.info("Processing packets of ESPHome devices on virtual threads");
+        } else if (packetExecution != null && !PACKET_EXECUTION_SHARED.equals(packetExecution)) {
+            logger.warn("Invalid packetExecution '{}' in binding configuration, using the shared scheduler",
+                    packetExecution);
+        }
+        packetExecutor.setWeights(getInteger(properties, "controlPacketWeight", DEFAULT_CONTROL_PACKET_WEIGHT),
+                getInteger(properties, "statePacketWeight", DEFAULT_STATE_PACKET_WEIGHT),
+                getInteger(properties, "bulkPacketWeight", DEFAULT_BULK_PACKET_WEIGHT));
+        commandBatchServiceRegistration = componentContext.getBundleContext()
+                .registerService(CommandBatchService.class, commandBatchService, new Hashtable<>());
+    }
+
+    private int getInteger(Dictionary<String, Object> properties, String name, int defaultValue) {
+        Object value = properties.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return new BigDecimal(value.toString()).intValue();
+        } catch (NumberFormatException e) {
+            logger.warn("Invalid {} '{}' in binding configuration, using {}", name, value, defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Each device keeps its own queue of packets in the {@link PacketScheduler}, drained by a virtual thread
+     * while it has packets. Blocking while processing a packet, such as posting to the event bus, then parks a virtual
+     * thread instead of occupying one of the few threads of the shared scheduler.
+     */
+    static ExecutorService createVirtualThreadExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ESPHome packet processor ", 0).factory());
     }
 
     @Override
     protected void deactivate(ComponentContext componentContext) {
+        ServiceRegistration<?> registration = commandBatchServiceRegistration;
+        if (registration != null) {
+            registration.unregister();
+            commandBatchServiceRegistration = null;
+        }
+        // Handlers have been disposed at this point, each leaving a disconnect request in flight. Wait for all
+        // devices to acknowledge with one shared deadline before tearing down the selector
+        disconnector.awaitAll(SHUTDOWN_DISCONNECT_TIMEOUT_MS);
+        admissionController.dispose();
         connectionSelector.stop();
         scheduler.shutdown();
+        ExecutorService executor = virtualThreadExecutor;
+        if (executor != null) {
+            executor.shutdown();
+        }
         try {
-            scheduler.awaitTermination(10, java.util.concurrent.TimeUnit.SECONDS);
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+            if (executor != null) {
+                executor.awaitTermination(10, TimeUnit.SECONDS);
+            }
         } catch (InterruptedException e) {
             logger.warn("Scheduler did not terminate in time. This may indicate ESPs with hanging connections");
         }
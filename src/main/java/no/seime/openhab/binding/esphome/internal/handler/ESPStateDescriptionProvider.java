@@ -12,6 +12,7 @@
  */
 package no.seime.openhab.binding.esphome.internal.handler;
 
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -24,14 +25,23 @@ import org.openhab.core.thing.ThingUID;
 import org.openhab.core.thing.type.DynamicCommandDescriptionProvider;
 import org.openhab.core.thing.type.DynamicStateDescriptionProvider;
 import org.openhab.core.types.CommandDescription;
+import org.openhab.core.types.CommandOption;
 import org.openhab.core.types.StateDescription;
 import org.osgi.service.component.annotations.Activate;
 import org.osgi.service.component.annotations.Component;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
 /**
  * Provides state and command descriptions for individual channels.
+ * <p>
+ * Descriptions are kept per thing, so that all descriptions of a thing can be replaced or removed in one operation.
+ * Equal descriptions are shared between channels and things, as most devices expose many channels with identical
+ * patterns and options.
  *
  * @author Cody Cutrer- Initial contribution
  */
@@ -40,8 +50,11 @@ import org.slf4j.LoggerFactory;
 @NonNullByDefault
 public class ESPStateDescriptionProvider implements DynamicStateDescriptionProvider, DynamicCommandDescriptionProvider {
 
-    private final Map<ChannelUID, StateDescription> stateDescriptions = new ConcurrentHashMap<>();
-    private final Map<ChannelUID, CommandDescription> commandDescriptions = new ConcurrentHashMap<>();
+    private final Map<ThingUID, ThingDescriptions> descriptionsByThing = new ConcurrentHashMap<>();
+    private final Interner<StateDescription> stateDescriptionInterner = Interners.newWeakInterner();
+    // CommandDescription implementations do not implement equals, so they are interned by their options instead
+    private final Map<List<CommandOption>, CommandDescription> commandDescriptionInterner = CacheBuilder.newBuilder()
+            .weakValues().<List<CommandOption>, CommandDescription> build().asMap();
     private final Logger logger = LoggerFactory.getLogger(ESPStateDescriptionProvider.class);
 
     @Activate
@@ -49,41 +62,55 @@ public class ESPStateDescriptionProvider implements DynamicStateDescriptionProvi
     }
 
     /**
-     * Set a state description for a channel. This description will be used when preparing the channel state by
-     * the framework for presentation. A previous description, if existed, will be replaced.
-     *
-     * @param channelUID channel UID
-     * @param description state description for the channel
-     */
-    public void setDescription(ChannelUID channelUID, StateDescription description) {
-        stateDescriptions.put(channelUID, description);
-    }
-
-    /**
-     * Set a command description for a channel.
-     * A previous description, if existed, will be replaced.
+     * Replace all state and command descriptions of a thing. Lookups see either the complete previous set or the
+     * complete new set, never a mix.
      *
-     * @param channelUID channel UID
-     * @param description command description for the channel
+     * @param thingUID thing the descriptions belong to
+     * @param stateDescriptions state descriptions by channel
+     * @param commandDescriptions command descriptions by channel
      */
-    public void setDescription(ChannelUID channelUID, CommandDescription description) {
-        commandDescriptions.put(channelUID, description);
+    public void setDescriptions(ThingUID thingUID, Map<ChannelUID, StateDescription> stateDescriptions,
+            Map<ChannelUID, CommandDescription> commandDescriptions) {
+        ThingDescriptions descriptions = new ThingDescriptions();
+        stateDescriptions.forEach((channelUID, description) -> descriptions.stateDescriptions.put(channelUID,
+                intern(description)));
+        commandDescriptions.forEach((channelUID, description) -> descriptions.commandDescriptions.put(channelUID,
+                intern(description)));
+        descriptionsByThing.put(thingUID, descriptions);
+        logger.debug("[{}] Stored {} state and {} command descriptions", thingUID.getId(), stateDescriptions.size(),
+                commandDescriptions.size());
     }
 
     public void removeDescriptionsForThing(ThingUID thingUID) {
-        stateDescriptions.keySet().removeIf(channelUID -> channelUID.getThingUID().equals(thingUID));
-        commandDescriptions.keySet().removeIf(channelUID -> channelUID.getThingUID().equals(thingUID));
+        descriptionsByThing.remove(thingUID);
     }
 
     @Override
     public @Nullable StateDescription getStateDescription(Channel channel,
             @Nullable StateDescription originalStateDescription, @Nullable Locale locale) {
-        return stateDescriptions.get(channel.getUID());
+        ThingDescriptions descriptions = descriptionsByThing.get(channel.getUID().getThingUID());
+        return descriptions == null ? null : descriptions.stateDescriptions.get(channel.getUID());
     }
 
     @Override
     public @Nullable CommandDescription getCommandDescription(Channel channel,
             @Nullable CommandDescription originalCommandDescription, @Nullable Locale locale) {
-        return commandDescriptions.get(channel.getUID());
+        ThingDescriptions descriptions = descriptionsByThing.get(channel.getUID().getThingUID());
+        return descriptions == null ? null : descriptions.commandDescriptions.get(channel.getUID());
+    }
+
+    private StateDescription intern(StateDescription description) {
+        return stateDescriptionInterner.intern(description);
+    }
+
+    private CommandDescription intern(CommandDescription description) {
+        CommandDescription existing = commandDescriptionInterner.putIfAbsent(description.getCommandOptions(),
+                description);
+        return existing != null ? existing : description;
+    }
+
+    private static class ThingDescriptions {
+        private final Map<ChannelUID, StateDescription> stateDescriptions = new ConcurrentHashMap<>();
+        private final Map<ChannelUID, CommandDescription> commandDescriptions = new ConcurrentHashMap<>();
     }
 }
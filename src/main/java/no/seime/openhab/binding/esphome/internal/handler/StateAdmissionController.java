@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2010-2025 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.esphome.internal.handler;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.types.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Binding wide budget for state updates posted to the event bus, shared fairly between devices.
+ * <p>
+ * Posts are admitted through a token bucket refilled at the configured rate. Each device has its own bucket holding its
+ * fair share of the rate, and may borrow from the global bucket while that is at least half full. When the budget is
+ * exhausted, states of low priority channels (diagnostic and disabled by default entities) are shed, while states of
+ * other channels are coalesced to the latest value per channel and posted as soon as the budget allows. Low priority
+ * channels are also shed once the global bucket is half empty, so that they give way first.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public class StateAdmissionController {
+
+    private static final long FLUSH_INTERVAL_MS = 100;
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Logger logger = LoggerFactory.getLogger(StateAdmissionController.class);
+
+    private final ScheduledExecutorService scheduler;
+    private final Set<Budget> budgets = ConcurrentHashMap.newKeySet();
+
+    private volatile int rate;
+    // Global bucket, guarded by this
+    private double tokens;
+    private long refilledNanos = System.nanoTime();
+    private long reportedNanos = System.nanoTime();
+    private @Nullable ScheduledFuture<?> flushFuture;
+
+    public StateAdmissionController(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @param rate maximum number of state updates per second for all devices, 0 for no limit
+     */
+    public void setRate(int rate) {
+        synchronized (this) {
+            this.rate = Math.max(0, rate);
+            tokens = this.rate;
+            refilledNanos = System.nanoTime();
+            ScheduledFuture<?> future = flushFuture;
+            if (this.rate > 0 && future == null) {
+                flushFuture = scheduler.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS,
+                        TimeUnit.MILLISECONDS);
+                return;
+            } else if (this.rate > 0 || future == null) {
+                return;
+            }
+            future.cancel(false);
+            flushFuture = null;
+        }
+        // Outside the lock of the controller, budgets acquire it while holding their own
+        budgets.forEach(Budget::flushAll);
+    }
+
+    public int getRate() {
+        return rate;
+    }
+
+    /**
+     * @param poster posts an admitted state to the event bus
+     * @param statisticsListener notified at most once per minute when states of the device have been shed or coalesced
+     */
+    public Budget register(String logPrefix, BiConsumer<ChannelUID, State> poster,
+            Consumer<Budget> statisticsListener) {
+        Budget budget = new Budget(logPrefix, poster, statisticsListener);
+        budgets.add(budget);
+        return budget;
+    }
+
+    public void unregister(Budget budget) {
+        budgets.remove(budget);
+        budget.clear();
+    }
+
+    public synchronized void dispose() {
+        ScheduledFuture<?> future = flushFuture;
+        if (future != null) {
+            future.cancel(false);
+            flushFuture = null;
+        }
+    }
+
+    private synchronized boolean tryAcquire(Budget budget, boolean lowPriority) {
+        int currentRate = rate;
+        if (currentRate == 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        double elapsedSeconds = (now - refilledNanos) / 1e9;
+        refilledNanos = now;
+        tokens = Math.min(currentRate, tokens + elapsedSeconds * currentRate);
+        double share = (double) currentRate / Math.max(1, budgets.size());
+        budget.tokens = Math.min(share, budget.tokens + (now - budget.refilledNanos) / 1e9 * share);
+        budget.refilledNanos = now;
+
+        if (tokens < 1) {
+            return false;
+        }
+        boolean spare = tokens >= currentRate / 2.0;
+        if (budget.tokens >= 1) {
+            if (lowPriority && !spare) {
+                return false;
+            }
+            budget.tokens--;
+        } else if (lowPriority || !spare) {
+            return false;
+        }
+        tokens--;
+        return true;
+    }
+
+    private void flush() {
+        try {
+            boolean progress = true;
+            while (progress) {
+                // One state per device and pass, so that a device with many pending states does not starve the others
+                progress = false;
+                for (Budget budget : budgets) {
+                    progress |= budget.flushOne();
+                }
+            }
+            long now = System.nanoTime();
+            if (now - reportedNanos >= REPORT_INTERVAL_NANOS) {
+                reportedNanos = now;
+                budgets.forEach(Budget::report);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Error posting coalesced state updates", e);
+        }
+    }
+
+    /**
+     * Share of the budget for one device. Admitted and coalesced states are posted while holding the lock of the
+     * budget, so that a coalesced state is never posted after a later state of the same channel.
+     */
+    public final class Budget {
+
+        private final String logPrefix;
+        private final BiConsumer<ChannelUID, State> poster;
+        private final Consumer<Budget> statisticsListener;
+        private final Map<ChannelUID, State> pending = new LinkedHashMap<>();
+
+        // Guarded by the controller
+        private double tokens;
+        private long refilledNanos = System.nanoTime();
+
+        // Guarded by this
+        private long shed;
+        private long coalesced;
+        private long reportedShed;
+        private long reportedCoalesced;
+
+        private Budget(String logPrefix, BiConsumer<ChannelUID, State> poster, Consumer<Budget> statisticsListener) {
+            this.logPrefix = logPrefix;
+            this.poster = poster;
+            this.statisticsListener = statisticsListener;
+        }
+
+        /**
+         * Post a state if the budget allows, otherwise shed or coalesce it depending on the priority of the channel
+         *
+         * @return false if the state was shed and will never be posted
+         */
+        public boolean post(ChannelUID channelUID, State state, boolean lowPriority) {
+            if (rate == 0) {
+                poster.accept(channelUID, state);
+                return true;
+            }
+            synchronized (this) {
+                if (!pending.isEmpty() && pending.containsKey(channelUID)) {
+                    // Keep the order of states of the channel, the latest one is posted once there is budget
+                    pending.put(channelUID, state);
+                    coalesced++;
+                } else if (tryAcquire(this, lowPriority)) {
+                    poster.accept(channelUID, state);
+                } else if (lowPriority) {
+                    shed++;
+                    return false;
+                } else {
+                    pending.put(channelUID, state);
+                }
+                return true;
+            }
+        }
+
+        /**
+         * Drop the pending state of a channel, for instance when it is unlinked
+         */
+        public synchronized void discard(ChannelUID channelUID) {
+            pending.remove(channelUID);
+        }
+
+        public synchronized long getShed() {
+            return shed;
+        }
+
+        public synchronized long getCoalesced() {
+            return coalesced;
+        }
+
+        private synchronized boolean flushOne() {
+            if (pending.isEmpty() || !tryAcquire(this, false)) {
+                return false;
+            }
+            Iterator<Map.Entry<ChannelUID, State>> iterator = pending.entrySet().iterator();
+            Map.Entry<ChannelUID, State> entry = iterator.next();
+            iterator.remove();
+            poster.accept(entry.getKey(), entry.getValue());
+            return true;
+        }
+
+        private synchronized void flushAll() {
+            pending.forEach(poster);
+            pending.clear();
+        }
+
+        private synchronized void clear() {
+            pending.clear();
+        }
+
+        private void report() {
+            long shedSinceReport;
+            long coalescedSinceReport;
+            synchronized (this) {
+                shedSinceReport = shed - reportedShed;
+                coalescedSinceReport = coalesced - reportedCoalesced;
+                reportedShed = shed;
+                reportedCoalesced = coalesced;
+            }
+            if (shedSinceReport > 0 || coalescedSinceReport > 0) {
+                logger.warn(
+                        "[{}] State update budget of {}/s exceeded, shed {} and coalesced {} state updates in the last minute",
+                        logPrefix, rate, shedSinceReport, coalescedSinceReport);
+                statisticsListener.accept(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright (c) 2010-2025 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.esphome.internal.handler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.library.types.DateTimeType;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.HSBType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.OpenClosedType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.PlayPauseType;
+import org.openhab.core.library.types.QuantityType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.types.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Last known channel states of a single device, persisted to an append-only binary file.
+ * <p>
+ * Every state change is appended as a record of {@code channelId, type tag, value}. When the file is opened, records
+ * are replayed with the last record for a channel winning. The file is rewritten with only the live records once it
+ * has grown well beyond the number of channels, and whenever a torn record is found at the end of the file.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public class StateSnapshot implements AutoCloseable {
+
+    private static final int MAGIC = 0x45535053; // "ESPS"
+    private static final byte VERSION = 1;
+
+    private static final byte TAG_REMOVED = 0;
+    private static final byte TAG_DECIMAL = 1;
+    private static final byte TAG_QUANTITY = 2;
+    private static final byte TAG_ON_OFF = 3;
+    private static final byte TAG_OPEN_CLOSED = 4;
+    private static final byte TAG_STRING = 5;
+    private static final byte TAG_PERCENT = 6;
+    private static final byte TAG_HSB = 7;
+    private static final byte TAG_DATE_TIME = 8;
+    private static final byte TAG_PLAY_PAUSE = 9;
+
+    // Rewrite the file when it contains this many times more records than live channels
+    private static final int COMPACTION_FACTOR = 4;
+    private static final int MIN_RECORDS_BEFORE_COMPACTION = 256;
+    // DataOutput.writeUTF is limited to 65535 bytes, and encodes a char in at most 3 bytes
+    private static final int MAX_VALUE_LENGTH = 65535 / 3;
+
+    private final Logger logger = LoggerFactory.getLogger(StateSnapshot.class);
+
+    private final Path file;
+    private final Map<String, State> states = new HashMap<>();
+    private int recordCount;
+    private @Nullable DataOutputStream out;
+    // A state recorded by a packet still being processed when the handler is disposed must not reopen the file
+    private boolean closed;
+    // Set when the thing is removed, so that closing the snapshot does not write the file again
+    private boolean deleted;
+
+    StateSnapshot(Path file) {
+        this.file = file;
+        boolean compact = load();
+        if (compact || needsCompaction()) {
+            compact();
+        }
+    }
+
+    /**
+     * @return the last known state of every channel in the snapshot
+     */
+    public synchronized Map<String, State> getStates() {
+        return Map.copyOf(states);
+    }
+
+    /**
+     * Record a new state for a channel. Nothing is written if the state is unchanged or cannot be persisted.
+     */
+    public synchronized void record(String channelId, State state) {
+        if (closed) {
+            return;
+        }
+        byte tag = tagOf(state);
+        String value = state.toFullString();
+        if (tag == TAG_REMOVED || value.length() > MAX_VALUE_LENGTH || channelId.length() > MAX_VALUE_LENGTH) {
+            if (states.remove(channelId) != null) {
+                append(channelId, TAG_REMOVED, "");
+            }
+            return;
+        }
+        if (state.equals(states.put(channelId, state))) {
+            return;
+        }
+        append(channelId, tag, value);
+    }
+
+    /**
+     * Drop all channels not in the given set, typically after the device has been interrogated.
+     */
+    public synchronized void retain(Collection<String> channelIds) {
+        if (!closed && states.keySet().retainAll(channelIds)) {
+            compact();
+        }
+    }
+
+    public synchronized void flush() {
+        DataOutputStream stream = out;
+        if (stream != null) {
+            try {
+                stream.flush();
+            } catch (IOException e) {
+                logger.debug("Error flushing state snapshot {}", file, e);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!deleted && needsCompaction()) {
+            compact();
+        }
+        closeStream();
+    }
+
+    /**
+     * Close the snapshot and delete its file, when the thing is removed
+     */
+    public synchronized void delete() {
+        deleted = true;
+        closed = true;
+        closeStream();
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logger.debug("Error deleting state snapshot {}", file, e);
+        }
+    }
+
+    private boolean needsCompaction() {
+        return recordCount > MIN_RECORDS_BEFORE_COMPACTION && recordCount > states.size() * COMPACTION_FACTOR;
+    }
+
+    /**
+     * @return true if the file is damaged and should be rewritten
+     */
+    private boolean load() {
+        try (InputStream fileStream = Files.newInputStream(file);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(fileStream))) {
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                logger.debug("Ignoring state snapshot {} with unknown format", file);
+                return true;
+            }
+            while (true) {
+                in.mark(1);
+                if (in.read() < 0) {
+                    return false;
+                }
+                in.reset();
+                String channelId = in.readUTF();
+                byte tag = in.readByte();
+                String value = in.readUTF();
+                recordCount++;
+                State state = parse(tag, value);
+                if (state == null) {
+                    states.remove(channelId);
+                } else {
+                    states.put(channelId, state);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            return true;
+        } catch (EOFException e) {
+            logger.debug("State snapshot {} ends with an incomplete record, dropping it", file);
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            logger.debug("Error reading state snapshot {}, discarding it", file, e);
+            states.clear();
+            return true;
+        }
+    }
+
+    private void append(String channelId, byte tag, String value) {
+        if (closed) {
+            return;
+        }
+        try {
+            DataOutputStream stream = out;
+            if (stream == null) {
+                stream = new DataOutputStream(new BufferedOutputStream(
+                        Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND)));
+                out = stream;
+            }
+            writeRecord(stream, channelId, tag, value);
+            recordCount++;
+        } catch (IOException e) {
+            logger.debug("Error writing state snapshot {}", file, e);
+            closeStream();
+        }
+        if (needsCompaction()) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        closeStream();
+        if (deleted) {
+            return;
+        }
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                stream.writeInt(MAGIC);
+                stream.writeByte(VERSION);
+                for (Map.Entry<String, State> entry : states.entrySet()) {
+                    State state = entry.getValue();
+                    writeRecord(stream, entry.getKey(), tagOf(state), state.toFullString());
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            recordCount = states.size();
+        } catch (IOException e) {
+            logger.debug("Error compacting state snapshot {}", file, e);
+        }
+    }
+
+    private void closeStream() {
+        DataOutputStream stream = out;
+        out = null;
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                logger.debug("Error closing state snapshot {}", file, e);
+            }
+        }
+    }
+
+    private static void writeRecord(DataOutputStream stream, String channelId, byte tag, String value)
+            throws IOException {
+        stream.writeUTF(channelId);
+        stream.writeByte(tag);
+        stream.writeUTF(value);
+    }
+
+    private static byte tagOf(State state) {
+        // Subclasses first; PercentType is a DecimalType and HSBType is a PercentType
+        if (state instanceof HSBType) {
+            return TAG_HSB;
+        } else if (state instanceof PercentType) {
+            return TAG_PERCENT;
+        } else if (state instanceof DecimalType) {
+            return TAG_DECIMAL;
+        } else if (state instanceof QuantityType<?>) {
+            return TAG_QUANTITY;
+        } else if (state instanceof OnOffType) {
+            return TAG_ON_OFF;
+        } else if (state instanceof OpenClosedType) {
+            return TAG_OPEN_CLOSED;
+        } else if (state instanceof StringType) {
+            return TAG_STRING;
+        } else if (state instanceof DateTimeType) {
+            return TAG_DATE_TIME;
+        } else if (state instanceof PlayPauseType) {
+            return TAG_PLAY_PAUSE;
+        }
+        // UnDefType and types without a stable string form are not persisted
+        return TAG_REMOVED;
+    }
+
+    private static @Nullable State parse(byte tag, String value) {
+        return switch (tag) {
+            case TAG_REMOVED -> null;
+            case TAG_DECIMAL -> new DecimalType(value);
+            case TAG_QUANTITY -> new QuantityType<>(value);
+            case TAG_ON_OFF -> OnOffType.valueOf(value);
+            case TAG_OPEN_CLOSED -> OpenClosedType.valueOf(value);
+            case TAG_STRING -> new StringType(value);
+            case TAG_PERCENT -> new PercentType(value);
+            case TAG_HSB -> new HSBType(value);
+            case TAG_DATE_TIME -> new DateTimeType(value);
+            case TAG_PLAY_PAUSE -> PlayPauseType.valueOf(value);
+            default -> throw new IllegalArgumentException("Unknown state tag " + tag);
+        };
+    }
+
+}
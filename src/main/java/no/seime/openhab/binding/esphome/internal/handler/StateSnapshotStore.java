@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2010-2025 Contributors to the openHAB project
+ *
+ * See the NOTICE file(s) distributed with this work for additional
+ * information.
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * http://www.eclipse.org/legal/epl-2.0
+ *
+ * SPDX-License-Identifier: EPL-2.0
+ */
+package no.seime.openhab.binding.esphome.internal.handler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.openhab.core.thing.ThingUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Directory holding one {@link StateSnapshot} file per device thing.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public class StateSnapshotStore {
+
+    private final Logger logger = LoggerFactory.getLogger(StateSnapshotStore.class);
+
+    private final Path directory;
+
+    public StateSnapshotStore(Path directory) {
+        this.directory = directory;
+    }
+
+    public StateSnapshot open(ThingUID thingUID) {
+        return new StateSnapshot(fileOf(thingUID));
+    }
+
+    public void delete(ThingUID thingUID) {
+        try {
+            Files.deleteIfExists(fileOf(thingUID));
+        } catch (IOException e) {
+            logger.debug("Error deleting state snapshot for {}", thingUID, e);
+        }
+    }
+
+    private Path fileOf(ThingUID thingUID) {
+        return directory.resolve(thingUID.getAsString().replace(':', '_') + ".bin");
+    }
+}
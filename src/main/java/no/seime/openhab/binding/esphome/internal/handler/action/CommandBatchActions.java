@@ -0,0 +1,84 @@
+package no.seime.openhab.binding.esphome.internal.handler.action;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.automation.annotation.ActionInput;
+import org.openhab.core.automation.annotation.RuleAction;
+import org.openhab.core.thing.Channel;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.binding.ThingActions;
+import org.openhab.core.thing.binding.ThingActionsScope;
+import org.openhab.core.thing.binding.ThingHandler;
+import org.openhab.core.types.Command;
+import org.osgi.service.component.annotations.Component;
+import org.osgi.service.component.annotations.ServiceScope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import no.seime.openhab.binding.esphome.internal.handler.CommandBatchService;
+import no.seime.openhab.binding.esphome.internal.handler.ESPHomeHandler;
+
+/**
+ * Rule action sending commands to channels of several ESPHome devices at once, see {@link CommandBatchService}
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@Component(scope = ServiceScope.PROTOTYPE, service = CommandBatchActions.class)
+@ThingActionsScope(name = "esphome-batch")
+@NonNullByDefault
+public class CommandBatchActions implements ThingActions {
+
+    private final Logger logger = LoggerFactory.getLogger(CommandBatchActions.class);
+
+    private @Nullable ESPHomeHandler handler;
+
+    @Override
+    public void setThingHandler(@Nullable ThingHandler handler) {
+        if (handler instanceof ESPHomeHandler espHomeHandler) {
+            this.handler = espHomeHandler;
+        }
+    }
+
+    @Override
+    public @Nullable ThingHandler getThingHandler() {
+        return handler;
+    }
+
+    @RuleAction(label = "send commands", description = "Sends commands to channels of ESPHome devices at once")
+    public void sendCommands(@ActionInput(name = "commands", label = "Commands", description = "Command by channel UID")
+    @Nullable Map<String, String> commands) {
+        ESPHomeHandler handler = this.handler;
+        CommandBatchService service = handler == null ? null : handler.getCommandBatchService();
+        if (service == null || commands == null) {
+            return;
+        }
+
+        List<CommandBatchService.ChannelCommand> channelCommands = new ArrayList<>();
+        commands.forEach((channelUIDString, value) -> {
+            ChannelUID channelUID;
+            try {
+                channelUID = new ChannelUID(channelUIDString);
+            } catch (IllegalArgumentException e) {
+                logger.warn("Not sending '{}' to '{}', not a channel UID", value, channelUIDString);
+                return;
+            }
+            Channel channel = service.getChannel(channelUID);
+            Command command = channel == null ? null
+                    : CommandBatchService.parseCommand(channel.getAcceptedItemType(), value);
+            if (command == null) {
+                logger.warn("Not sending '{}' to {}, not a valid command for an ESPHome channel", value, channelUID);
+            } else {
+                channelCommands.add(new CommandBatchService.ChannelCommand(channelUID, command));
+            }
+        });
+        service.sendCommands(channelCommands);
+    }
+
+    public static void sendCommands(ThingActions actions, @Nullable Map<String, String> commands) {
+        ((CommandBatchActions) actions).sendCommands(commands);
+    }
+}
@@ -3,6 +3,7 @@ package no.seime.openhab.binding.esphome.internal.handler.action;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Modifier;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import org.openhab.core.automation.annotation.ActionInput;
 import org.openhab.core.automation.annotation.RuleAction;
@@ -12,6 +13,8 @@ import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.ServiceScope;
 
 import com.google.common.base.CaseFormat;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 import io.esphome.api.ListEntitiesServicesArgument;
 import io.esphome.api.ListEntitiesServicesResponse;
@@ -30,13 +33,39 @@ import net.bytebuddy.jar.asm.Opcodes;
 
 /**
  * Generates dynamic ThingActions for ESPHome devices based on provided ListEntitiesServicesResponse.
+ * <p>
+ * Generated classes are cached by service signature (name, argument names and types), so reconnects and devices
+ * exposing identical services share one class. Each class lives in its own class loader and is only weakly
+ * referenced by the cache, allowing it to be unloaded once no device uses it anymore.
  */
 public class DynamicThingActionsGenerator {
 
-    public static AbstractESPHomeThingAction generateDynamicThingAction(ListEntitiesServicesResponse rsp,
-            ClassLoader thingActionClassLoader)
+    private static final Cache<String, Class<? extends AbstractESPHomeThingAction>> CLASS_CACHE = CacheBuilder
+            .newBuilder().weakValues().build();
+
+    public static AbstractESPHomeThingAction generateDynamicThingAction(ListEntitiesServicesResponse rsp)
             throws NoSuchMethodException, InvocationTargetException, IllegalAccessException, InstantiationException {
+        String signature = signatureOf(rsp);
+        Class<? extends AbstractESPHomeThingAction> dynamicClass;
+        try {
+            dynamicClass = CLASS_CACHE.get(signature, () -> generateClass(rsp, signature));
+        } catch (ExecutionException e) {
+            throw new InstantiationException("Error generating action class for " + signature + ": " + e.getCause());
+        }
+
+        return dynamicClass.getDeclaredConstructor().newInstance();
+    }
+
+    static String signatureOf(ListEntitiesServicesResponse rsp) {
+        StringBuilder signature = new StringBuilder(rsp.getName()).append('(');
+        for (ListEntitiesServicesArgument arg : rsp.getArgsList()) {
+            signature.append(arg.getName()).append(':').append(arg.getType().getNumber()).append(',');
+        }
+        return signature.append(')').toString();
+    }
 
+    private static Class<? extends AbstractESPHomeThingAction> generateClass(ListEntitiesServicesResponse rsp,
+            String signature) {
         String methodName = CaseFormat.LOWER_UNDERSCORE.to(CaseFormat.LOWER_CAMEL, rsp.getName());
         String classNameAsString = CaseFormat.LOWER_UNDERSCORE.to(CaseFormat.UPPER_CAMEL, rsp.getName());
         String label = rsp.getName();
@@ -50,8 +79,8 @@ public class DynamicThingActionsGenerator {
         AnnotationDescription thingScopeAction = AnnotationDescription.Builder.ofType(ThingActionsScope.class)
                 .define("name", "esphome").build();
 
-        String className = String.format("no.seime.openhab.binding.esphome.internal.handler.action.%s",
-                classNameAsString);
+        String className = String.format("no.seime.openhab.binding.esphome.internal.handler.action.%s_%08x",
+                classNameAsString, signature.hashCode());
 
         DynamicType.Builder<AbstractESPHomeThingAction> thingActionType = new ByteBuddy()
                 .subclass(AbstractESPHomeThingAction.class).name(className).annotateType(componentAnnotation)
@@ -80,12 +109,9 @@ public class DynamicThingActionsGenerator {
         thingActionType = methodBuilder.intercept(new ParameterMapImplementation(rsp.getArgsList()))
                 .annotateMethod(ruleAction);
 
-        Class<? extends AbstractESPHomeThingAction> dynamicClass = thingActionType.make()
-                .load(thingActionClassLoader, ClassLoadingStrategy.Default.INJECTION).getLoaded();
-
-        Object instance = dynamicClass.getDeclaredConstructor().newInstance();
-
-        return (AbstractESPHomeThingAction) instance;
+        ClassLoader classLoader = new ClassLoader(DynamicThingActionsGenerator.class.getClassLoader()) {
+        };
+        return thingActionType.make().load(classLoader, ClassLoadingStrategy.Default.INJECTION).getLoaded();
     }
 
     private static boolean isArrayType(ServiceArgType type) {
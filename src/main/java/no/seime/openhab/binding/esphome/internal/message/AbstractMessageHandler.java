@@ -1,13 +1,15 @@
 package no.seime.openhab.binding.esphome.internal.message;
 
-import static org.openhab.core.library.CoreItemFactory.DATETIME;
 import static org.openhab.core.library.CoreItemFactory.NUMBER;
 
 import java.math.BigDecimal;
+import java.net.URI;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import javax.measure.Unit;
@@ -22,6 +24,7 @@ import org.openhab.core.library.types.DecimalType;
 import org.openhab.core.library.types.QuantityType;
 import org.openhab.core.thing.Channel;
 import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.binding.builder.ChannelBuilder;
 import org.openhab.core.thing.type.*;
 import org.openhab.core.types.*;
 import org.openhab.core.types.util.UnitUtils;
@@ -35,14 +38,23 @@ import no.seime.openhab.binding.esphome.internal.BindingConstants;
 import no.seime.openhab.binding.esphome.internal.comm.ProtocolAPIError;
 import no.seime.openhab.binding.esphome.internal.handler.ESPHomeHandler;
 import no.seime.openhab.binding.esphome.internal.message.deviceclass.DeviceClass;
-import no.seime.openhab.binding.esphome.internal.message.deviceclass.SensorNumberDeviceClass;
 import no.seime.openhab.binding.esphome.internal.util.Debug;
 
 public abstract class AbstractMessageHandler<S extends GeneratedMessage, T extends GeneratedMessage> {
 
+    private static final URI CHANNEL_CONFIG_DESCRIPTION_URI = URI
+            .create(BindingConstants.CHANNEL_CONFIG_DESCRIPTION_URI);
+    protected static final URI CHANNEL_SENSOR_CONFIG_DESCRIPTION_URI = URI
+            .create(BindingConstants.CHANNEL_SENSOR_CONFIG_DESCRIPTION_URI);
+
     private final Logger logger = LoggerFactory.getLogger(AbstractMessageHandler.class);
     protected final ESPHomeHandler handler;
 
+    /**
+     * State converters by channel id, compiled when the channel is built
+     */
+    private final Map<String, ChannelStateConverter> converters = new ConcurrentHashMap<>();
+
     protected AbstractMessageHandler(ESPHomeHandler handler) {
         this.handler = handler;
     }
@@ -50,6 +62,13 @@ public abstract class AbstractMessageHandler<S extends GeneratedMessage, T exten
     protected ChannelType addChannelType(final String entityName, final String itemType,
             @Nullable final Set<String> tags, String category, EntityCategory entityCategory,
             boolean disabledByDefault) {
+        return addChannelType(entityName, itemType, tags, category, entityCategory, disabledByDefault,
+                CHANNEL_CONFIG_DESCRIPTION_URI);
+    }
+
+    protected ChannelType addChannelType(final String entityName, final String itemType,
+            @Nullable final Set<String> tags, String category, EntityCategory entityCategory,
+            boolean disabledByDefault, URI configDescriptionURI) {
 
         final ChannelTypeUID channelTypeUID = new ChannelTypeUID(BindingConstants.BINDING_ID,
                 handler.getThing().getUID().getId() + "_" + UUID.randomUUID());
@@ -65,6 +84,7 @@ public abstract class AbstractMessageHandler<S extends GeneratedMessage, T exten
         }
 
         channelTypeBuilder.withAutoUpdatePolicy(AutoUpdatePolicy.VETO);
+        channelTypeBuilder.withConfigDescriptionURI(configDescriptionURI);
         channelTypeBuilder.isAdvanced(disabledByDefault || entityCategory != EntityCategory.ENTITY_CATEGORY_NONE);
 
         ChannelType channelType = channelTypeBuilder.build();
@@ -157,6 +177,15 @@ public abstract class AbstractMessageHandler<S extends GeneratedMessage, T exten
 
     public abstract void handleCommand(Channel channel, Command command, int key) throws ProtocolAPIError;
 
+    /**
+     * Send a command to the device. Until the device reports the state of the channel again, a later command is never
+     * taken as redundant.
+     */
+    public void sendCommand(Channel channel, Command command, int key) throws ProtocolAPIError {
+        handler.getStateStore().recordCommand(channel.getUID().getId());
+        handleCommand(channel, command, key);
+    }
+
     public abstract void buildChannels(S rsp);
 
     protected String resolveNumericItemType(String unit, String name, @NonNull DeviceClass deviceClass,
@@ -220,10 +249,7 @@ public abstract class AbstractMessageHandler<S extends GeneratedMessage, T exten
     }
 
     protected String transformUnit(String unitOfMeasurement) {
-        return switch (unitOfMeasurement) {
-            case "seconds" -> "s";
-            default -> unitOfMeasurement;
-        };
+        return ChannelStateConverter.transformUnit(unitOfMeasurement);
     }
 
     public abstract void handleState(T rsp);
@@ -248,6 +274,11 @@ public abstract class AbstractMessageHandler<S extends GeneratedMessage, T exten
             logger.trace("[{}] Channel type:        {}", handler.getLogPrefix(),
                     Debug.channelTypeToString(channelType));
         }
+        channel = withUserConfiguration(channel);
+        converters.put(channel.getUID().getId(), compileConverter(channel, channelType.isAdvanced()));
+        if (handler.deferChannel(channel, channelType, stateDescription, commandDescription)) {
+            return;
+        }
         handler.addChannelType(channelType);
         handler.addChannel(channel);
         if (stateDescription != null) {
@@ -258,83 +289,205 @@ public abstract class AbstractMessageHandler<S extends GeneratedMessage, T exten
         }
     }
 
-    protected State toNumericState(Channel channel, float state, boolean missingState) {
-        if (missingState) {
-            return UnDefType.NULL;
-        } else if (Float.isNaN(state)) {
-            return UnDefType.UNDEF;
-        } else {
-            Configuration configuration = channel.getConfiguration();
-            String deviceClass = (String) configuration.get("deviceClass");
-            if (deviceClass != null) {
-                SensorNumberDeviceClass sensorDeviceClass = SensorNumberDeviceClass.fromDeviceClass(deviceClass);
-                if (sensorDeviceClass != null) {
-                    if (sensorDeviceClass.getItemType().startsWith(NUMBER)) {
-                        return toNumericState(channel, state);
-                    } else if (sensorDeviceClass.getItemType().startsWith(DATETIME)) {
-                        return toDateTimeState((int) state, missingState);
-                    } else {
-                        logger.warn(
-                                "[{}] Expected SensorNumberDeviceClass '{}' to be of item type Number[:Dimension]. Returning undef",
-                                handler.getLogPrefix(), deviceClass);
-                        return UnDefType.UNDEF;
-                    }
-                } else {
-                    return toNumericState(channel, state);
+    /**
+     * Channels are rebuilt on every interrogation. Keep the configuration the user has set on the existing channel.
+     */
+    private Channel withUserConfiguration(Channel channel) {
+        Channel existing = handler.getThing().getChannel(channel.getUID());
+        if (existing == null) {
+            return channel;
+        }
+        Configuration configuration = null;
+        for (String parameter : BindingConstants.CHANNEL_USER_CONFIGURATION) {
+            Object value = existing.getConfiguration().get(parameter);
+            if (value != null) {
+                if (configuration == null) {
+                    configuration = new Configuration(channel.getConfiguration().getProperties());
                 }
-            } else {
-                return toNumericState(channel, state);
+                configuration.put(parameter, value);
             }
         }
+        return configuration == null ? channel
+                : ChannelBuilder.create(channel).withConfiguration(configuration).build();
     }
 
-    private State toNumericState(Channel channel, float state) {
+    private ChannelStateConverter compileConverter(Channel channel, boolean lowPriority) {
+        return ChannelStateConverter.compile(channel.getConfiguration(), handler.isPublishChangesOnly(),
+                handler.getHeartbeatInterval(), lowPriority);
+    }
 
-        Configuration configuration = channel.getConfiguration();
-        String unitString = (String) configuration.get("unit");
-        if (unitString != null) {
-            /*
-             * if ("%".equals(unitString)) {
-             * // TODO PercentType does not seem to work well
-             * return new DecimalType(state);
-             * }
-             */
-            unitString = transformUnit(unitString);
-            Unit<?> unit = UnitUtils.parseUnit(unitString);
-            if (unit != null) {
-                return new QuantityType<>(state, unit);
-            } else {
-                return new DecimalType(state);
+    /**
+     * @return the converter compiled for the channel. Channels restored from a persisted thing are compiled on first
+     *         use.
+     */
+    protected ChannelStateConverter converter(Channel channel) {
+        String channelId = channel.getUID().getId();
+        ChannelStateConverter converter = converters.get(channelId);
+        if (converter == null) {
+            converter = compileConverter(channel, handler.isAdvancedChannel(channel));
+            converters.put(channelId, converter);
+        }
+        return converter;
+    }
+
+    /**
+     * Forget the compiled converter and last published state of a channel, so that the next state is published
+     */
+    public void resetChannel(ChannelUID channelUID) {
+        converters.remove(channelUID.getId());
+    }
+
+    /**
+     * Forget state kept per channel, when the channels are rebuilt on reconnect
+     */
+    public void clearChannels() {
+    }
+
+    /**
+     * Publish a state, unless the channel publishes changes only and the state is unchanged
+     */
+    protected void updateState(Channel channel, State state) {
+        handler.getStateStore().recordState(channel.getUID().getId(), state);
+        ChannelStateConverter converter = converter(channel);
+        if (converter.shouldPublish(state)
+                && !handler.updateState(channel.getUID(), state, converter.isLowPriority())) {
+            // Never posted, the next state must not be suppressed as unchanged
+            converter.shed();
+        }
+    }
+
+    /**
+     * Publish a numeric state. Unchanged values are detected before a State is created.
+     */
+    protected void updateNumericState(Channel channel, float state, boolean missingState) {
+        if (missingState || Float.isNaN(state)) {
+            updateState(channel, toNumericState(channel, state, missingState));
+        } else {
+            handler.getStateStore().recordNumber(channel.getUID().getId(), state);
+            ChannelStateConverter converter = converter(channel);
+            if (!converter.shouldPublish(state)) {
+                scheduleTrailingState(channel, converter);
+            } else if (!handler.updateState(channel.getUID(), toNumericState(channel, state, false),
+                    converter.isLowPriority())) {
+                converter.shed();
             }
+        }
+    }
+
+    /**
+     * Publish the state suppressed by the minimum interval of the channel once the interval has passed, unless a later
+     * state is published first
+     */
+    private void scheduleTrailingState(Channel channel, ChannelStateConverter converter) {
+        long delayNanos = converter.scheduleTrailing();
+        if (delayNanos >= 0 && channel.getConfiguration()
+                .get(BindingConstants.CHANNEL_CONFIGURATION_ENTITY_KEY) instanceof Number key) {
+            handler.scheduleEntityTask(key.intValue(), () -> publishTrailingState(channel, converter), delayNanos,
+                    TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void publishTrailingState(Channel channel, ChannelStateConverter converter) {
+        if (converters.get(channel.getUID().getId()) != converter) {
+            // Channel reset or rebuilt since
+            return;
+        }
+        float value = converter.takeTrailing();
+        if (!Float.isNaN(value) && !handler.updateState(channel.getUID(), toNumericState(channel, value, false),
+                converter.isLowPriority())) {
+            converter.shed();
+        }
+        scheduleTrailingState(channel, converter);
+    }
+
+    /**
+     * Post the last state received for the channel again, without asking the device
+     *
+     * @return false if no state has been received for the channel
+     */
+    public boolean refresh(Channel channel) {
+        State state = handler.getStateStore().get(channel.getUID().getId(),
+                value -> toNumericState(channel, (float) value, false));
+        if (state == null) {
+            return false;
+        }
+        handler.updateState(channel.getUID(), state, converter(channel).isLowPriority());
+        return true;
+    }
+
+    /**
+     * @param maxAgeNanos how recently the device must have reported the state
+     * @return whether the command would set the state the device recently reported for the channel, with no command
+     *         sent to the channel since
+     */
+    public boolean isRedundantCommand(Channel channel, Command command, long maxAgeNanos) {
+        if (!(command instanceof State)) {
+            return false;
+        }
+        State last = handler.getStateStore().getConfirmed(channel.getUID().getId(), maxAgeNanos,
+                value -> toNumericState(channel, (float) value, false));
+        if (last instanceof QuantityType<?> lastQuantity && command instanceof QuantityType<?> quantity) {
+            // Compare with the precision of the device, in the unit of the channel
+            QuantityType<?> converted = quantity.toUnit(lastQuantity.getUnit());
+            return converted != null && converted.floatValue() == lastQuantity.floatValue();
+        } else if (last instanceof DecimalType lastDecimal && command instanceof DecimalType decimal) {
+            return decimal.floatValue() == lastDecimal.floatValue();
+        }
+        return command.equals(last);
+    }
+
+    protected State toNumericState(Channel channel, float state, boolean missingState) {
+        if (missingState) {
+            return UnDefType.NULL;
+        } else if (Float.isNaN(state)) {
+            return UnDefType.UNDEF;
         } else {
-            return new DecimalType(state);
+            ChannelStateConverter converter = converter(channel);
+            switch (converter.getNumericKind()) {
+                case DATETIME:
+                    return toDateTimeState((int) state, missingState);
+                case UNSUPPORTED:
+                    logger.warn(
+                            "[{}] Expected SensorNumberDeviceClass '{}' to be of item type Number[:Dimension]. Returning undef",
+                            handler.getLogPrefix(), converter.getDeviceClass());
+                    return UnDefType.UNDEF;
+                default:
+                    Unit<?> unit = converter.getUnit();
+                    return unit != null ? new QuantityType<>(state, unit) : new DecimalType(state);
+            }
         }
     }
 
+    /**
+     * Find the channel a state update is to be posted to. Channels not linked to any item are not returned, so that
+     * their states are dropped before doing any conversion.
+     */
     public Optional<Channel> findChannelByKey(int key) {
-        return handler.getThing().getChannels().stream()
-                .filter(e -> BigDecimal.valueOf(key)
-                        .equals(e.getConfiguration().get(BindingConstants.CHANNEL_CONFIGURATION_ENTITY_KEY)))
-                .findFirst();
+        if (handler.isDeferredEntity(key)) {
+            // Drop states of entities without channel before doing any conversion
+            return Optional.empty();
+        }
+        return Optional.ofNullable(handler.findLinkedChannel(key));
     }
 
     public Optional<Channel> findChannelByKeyAndField(int key, String field) {
-        return handler.getThing().getChannels().stream().filter(channel -> BigDecimal.valueOf(key)
-                .equals(channel.getConfiguration().get(BindingConstants.CHANNEL_CONFIGURATION_ENTITY_KEY))
-                && field.equals(channel.getConfiguration().get(BindingConstants.CHANNEL_CONFIGURATION_ENTITY_FIELD)))
-                .findFirst();
+        if (handler.isDeferredEntity(key)) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(handler.findLinkedChannel(key, field));
     }
 
-    public void handleMessage(GeneratedMessage message) {
-        if (message.getClass().getSimpleName().startsWith("ListEntities")) {
-            buildChannels((S) message);
-        } else {
+    @SuppressWarnings("unchecked")
+    public void handleListEntities(GeneratedMessage message) {
+        buildChannels((S) message);
+    }
 
-            try {
-                handleState((T) message);
-            } catch (Exception e) {
-                logger.warn("[{}] Error updating OH state", handler.getLogPrefix(), e);
-            }
+    @SuppressWarnings("unchecked")
+    public void handleStateMessage(GeneratedMessage message) {
+        try {
+            handleState((T) message);
+        } catch (Exception e) {
+            logger.warn("[{}] Error updating OH state", handler.getLogPrefix(), e);
         }
     }
 
@@ -377,8 +530,8 @@ public abstract class AbstractMessageHandler<S extends GeneratedMessage, T exten
             // Happens if entity has no name, and then provides the objectId as the name. Then we need to ensure unique
             // id based on entity type as only 1 entity of each type can have no name.
             uid = String.format("%s_%s", objectId, entityType.toLowerCase());
-        } else if (handler.getDynamicChannels().stream()
-                .anyMatch(channel -> channel.getUID().getId().equals(objectId))) {
+        } else if (handler.getDynamicChannels().stream().anyMatch(channel -> channel.getUID().getId().equals(objectId))
+                || handler.isDeferredChannel(objectId)) {
             // Happens if multiple entities have same name. Then we need to ensure unique id based on entity type.
             uid = String.format("%s_%s", objectId, entityType.toLowerCase());
         }
@@ -1,7 +1,5 @@
 package no.seime.openhab.binding.esphome.internal.message;
 
-import static org.openhab.core.library.CoreItemFactory.CONTACT;
-
 import java.util.HashSet;
 import java.util.Set;
 
@@ -69,27 +67,16 @@ public class BinarySensorMessageHandler
     }
 
     public void handleState(BinarySensorStateResponse rsp) {
-        findChannelByKey(rsp.getKey()).ifPresent(channel -> handler.updateState(channel.getUID(),
-                toBinaryState(channel, rsp.getState(), rsp.getMissingState())));
+        findChannelByKey(rsp.getKey())
+                .ifPresent(channel -> updateState(channel,
+                        toBinaryState(channel, rsp.getState(), rsp.getMissingState())));
     }
 
     protected State toBinaryState(Channel channel, boolean state, boolean missingState) {
         if (missingState) {
             return UnDefType.NULL;
         }
-        return convertStateBasedOnDeviceClass((String) channel.getConfiguration().get("deviceClass"), state);
-    }
-
-    private State convertStateBasedOnDeviceClass(String deviceClass, boolean state) {
-        return isDeviceClassContact(deviceClass) ? toOpenClosedType(state) : toOnOffType(state);
-    }
-
-    private static boolean isDeviceClassContact(String deviceClass) {
-        if (deviceClass != null) {
-            BinarySensorDeviceClass binarySensorDeviceClass = BinarySensorDeviceClass.fromDeviceClass(deviceClass);
-            return binarySensorDeviceClass != null && CONTACT.equals(binarySensorDeviceClass.getItemType());
-        }
-        return false;
+        return converter(channel).isContact() ? toOpenClosedType(state) : toOnOffType(state);
     }
 
     private static State toOpenClosedType(boolean state) {
@@ -0,0 +1,294 @@
+package no.seime.openhab.binding.esphome.internal.message;
+
+import static org.openhab.core.library.CoreItemFactory.CONTACT;
+import static org.openhab.core.library.CoreItemFactory.DATETIME;
+import static org.openhab.core.library.CoreItemFactory.NUMBER;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.measure.Unit;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.openhab.core.config.core.Configuration;
+import org.openhab.core.types.State;
+import org.openhab.core.types.util.UnitUtils;
+
+import no.seime.openhab.binding.esphome.internal.BindingConstants;
+import no.seime.openhab.binding.esphome.internal.message.LightMessageHandler.LightColorCapability;
+import no.seime.openhab.binding.esphome.internal.message.deviceclass.BinarySensorDeviceClass;
+import no.seime.openhab.binding.esphome.internal.message.deviceclass.SensorNumberDeviceClass;
+
+/**
+ * Everything needed to turn a raw entity state into an openHAB state, resolved once from the channel configuration.
+ * Converting a state update then neither reads the configuration nor parses device classes or units.
+ * <p>
+ * The converter also tracks the last state published to the channel, so that identical updates can be suppressed
+ * when the channel publishes changes only, and the latest state suppressed by the minimum interval, so that it can be
+ * published once the interval has passed. This is the only mutable part, and is only accessed from the packet
+ * processing of the device.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public final class ChannelStateConverter {
+
+    public enum NumericKind {
+        NUMBER,
+        DATETIME,
+        UNSUPPORTED
+    }
+
+    private final NumericKind numericKind;
+    private final @Nullable Unit<?> unit;
+    private final boolean contact;
+    private final int capabilities;
+    private final @Nullable String deviceClass;
+    private final boolean changesOnly;
+    private final long heartbeatNanos;
+    private final NumericFilter filter;
+    private final boolean lowPriority;
+
+    // Last published state. Numbers are kept as raw bits to compare without creating a State
+    private boolean published;
+    private int lastNumberBits;
+    private @Nullable State lastState;
+    private long lastPublishedNanos;
+    // Latest number suppressed by the minimum interval
+    private boolean trailing;
+    private float trailingValue;
+    private boolean trailingScheduled;
+
+    private ChannelStateConverter(NumericKind numericKind, @Nullable Unit<?> unit, boolean contact, int capabilities,
+            @Nullable String deviceClass, boolean changesOnly, long heartbeatNanos, NumericFilter filter,
+            boolean lowPriority) {
+        this.numericKind = numericKind;
+        this.unit = unit;
+        this.contact = contact;
+        this.capabilities = capabilities;
+        this.deviceClass = deviceClass;
+        this.changesOnly = changesOnly;
+        this.heartbeatNanos = heartbeatNanos;
+        this.filter = filter;
+        this.lowPriority = lowPriority;
+    }
+
+    public static ChannelStateConverter compile(Configuration configuration) {
+        return compile(configuration, false, 0, false);
+    }
+
+    /**
+     * @param changesOnlyByDefault whether to publish changes only if the channel does not say otherwise
+     * @param heartbeatSeconds interval after which an unchanged state is published anyway, 0 to never publish it
+     * @param lowPriority whether states of the channel are the first to be shed when the event bus budget is exceeded
+     */
+    public static ChannelStateConverter compile(Configuration configuration, boolean changesOnlyByDefault,
+            long heartbeatSeconds, boolean lowPriority) {
+        String deviceClass = configuration.get("deviceClass") instanceof String s ? s : null;
+        NumericKind numericKind = NumericKind.NUMBER;
+        boolean contact = false;
+        if (deviceClass != null) {
+            SensorNumberDeviceClass sensorDeviceClass = SensorNumberDeviceClass.fromDeviceClass(deviceClass);
+            if (sensorDeviceClass != null) {
+                if (sensorDeviceClass.getItemType().startsWith(DATETIME)) {
+                    numericKind = NumericKind.DATETIME;
+                } else if (!sensorDeviceClass.getItemType().startsWith(NUMBER)) {
+                    numericKind = NumericKind.UNSUPPORTED;
+                }
+            }
+            BinarySensorDeviceClass binarySensorDeviceClass = BinarySensorDeviceClass.fromDeviceClass(deviceClass);
+            contact = binarySensorDeviceClass != null && CONTACT.equals(binarySensorDeviceClass.getItemType());
+        }
+
+        Unit<?> unit = null;
+        if (configuration.get("unit") instanceof String unitString) {
+            unit = UnitUtils.parseUnit(transformUnit(unitString));
+        }
+
+        int capabilities = 0;
+        if (configuration.get("capabilities") instanceof String capabilityString) {
+            for (LightColorCapability capability : LightMessageHandler.deserialize(capabilityString)) {
+                capabilities |= 1 << capability.ordinal();
+            }
+        }
+
+        boolean changesOnly = switch (String
+                .valueOf(configuration.get(BindingConstants.CHANNEL_CONFIGURATION_PUBLISH_MODE))) {
+            case BindingConstants.PUBLISH_MODE_CHANGES -> true;
+            case BindingConstants.PUBLISH_MODE_ALL -> false;
+            default -> changesOnlyByDefault;
+        };
+
+        NumericFilter filter = new NumericFilter(
+                decimal(configuration, BindingConstants.CHANNEL_CONFIGURATION_DEADBAND),
+                decimal(configuration, BindingConstants.CHANNEL_CONFIGURATION_DEADBAND_PERCENT) / 100,
+                secondsAsNanos(configuration, BindingConstants.CHANNEL_CONFIGURATION_MIN_INTERVAL),
+                secondsAsNanos(configuration, BindingConstants.CHANNEL_CONFIGURATION_MAX_INTERVAL));
+
+        return new ChannelStateConverter(numericKind, unit, contact, capabilities, deviceClass, changesOnly,
+                TimeUnit.SECONDS.toNanos(heartbeatSeconds), filter.isEnabled() ? filter : NumericFilter.NONE,
+                lowPriority);
+    }
+
+    private static float decimal(Configuration configuration, String parameter) {
+        return configuration.get(parameter) instanceof Number number ? Math.max(0, number.floatValue()) : 0;
+    }
+
+    /**
+     * @return a parameter given in seconds, in nanoseconds
+     */
+    private static long secondsAsNanos(Configuration configuration, String parameter) {
+        return (long) (decimal(configuration, parameter) * 1_000_000_000d);
+    }
+
+    static String transformUnit(String unitOfMeasurement) {
+        return switch (unitOfMeasurement) {
+            case "seconds" -> "s";
+            default -> unitOfMeasurement;
+        };
+    }
+
+    public NumericKind getNumericKind() {
+        return numericKind;
+    }
+
+    /**
+     * @return the parsed unit of the channel, or null for plain numbers
+     */
+    public @Nullable Unit<?> getUnit() {
+        return unit;
+    }
+
+    /**
+     * @return whether a binary state should be reported as OPEN/CLOSED rather than ON/OFF
+     */
+    public boolean isContact() {
+        return contact;
+    }
+
+    public boolean hasCapability(LightColorCapability capability) {
+        return (capabilities & (1 << capability.ordinal())) != 0;
+    }
+
+    public @Nullable String getDeviceClass() {
+        return deviceClass;
+    }
+
+    /**
+     * @return whether the channel belongs to a diagnostic, config or disabled by default entity
+     */
+    public boolean isLowPriority() {
+        return lowPriority;
+    }
+
+    /**
+     * Decide whether a numeric state is to be published, and if so record it as the last published state. Deadband and
+     * interval filters are evaluated against the last published value. A state suppressed by the minimum interval is
+     * kept, see {@link #scheduleTrailing()}.
+     */
+    public boolean shouldPublish(float value) {
+        int bits = Float.floatToIntBits(value);
+        long now = System.nanoTime();
+        trailing = false;
+        if (published && lastState == null) {
+            long sinceLastPublished = now - lastPublishedNanos;
+            if (sinceLastPublished < filter.minIntervalNanos()) {
+                trailing = true;
+                trailingValue = value;
+                return false;
+            }
+            if (filter.maxIntervalNanos() == 0 || sinceLastPublished < filter.maxIntervalNanos()) {
+                float delta = Math.abs(value - Float.intBitsToFloat(lastNumberBits));
+                if (filter.deadband() > 0 && delta <= filter.deadband()) {
+                    return false;
+                }
+                if (filter.deadbandFraction() > 0
+                        && delta <= Math.abs(Float.intBitsToFloat(lastNumberBits)) * filter.deadbandFraction()) {
+                    return false;
+                }
+                if (changesOnly && lastNumberBits == bits && !heartbeatDue(sinceLastPublished)) {
+                    return false;
+                }
+            }
+        }
+        published = true;
+        lastNumberBits = bits;
+        lastState = null;
+        lastPublishedNanos = now;
+        return true;
+    }
+
+    /**
+     * Decide whether a state is to be published, and if so record it as the last published state
+     */
+    public boolean shouldPublish(State state) {
+        if (changesOnly && published && state.equals(lastState)
+                && !heartbeatDue(System.nanoTime() - lastPublishedNanos)) {
+            return false;
+        }
+        published = true;
+        lastState = state;
+        lastPublishedNanos = System.nanoTime();
+        trailing = false;
+        return true;
+    }
+
+    /**
+     * Ask for the state suppressed by the minimum interval to be published once the interval has passed
+     *
+     * @return nanoseconds until the interval has passed, or -1 if no state is suppressed or it is already scheduled
+     */
+    public long scheduleTrailing() {
+        if (!trailing || trailingScheduled) {
+            return -1;
+        }
+        trailingScheduled = true;
+        return Math.max(0, lastPublishedNanos + filter.minIntervalNanos() - System.nanoTime());
+    }
+
+    /**
+     * Take the state suppressed by the minimum interval, unless a later state has been published or suppressed by the
+     * other filters since
+     *
+     * @return the state, recorded as the last published state, or NaN if there is nothing to publish
+     */
+    public float takeTrailing() {
+        trailingScheduled = false;
+        if (!trailing) {
+            return Float.NaN;
+        }
+        float value = trailingValue;
+        return shouldPublish(value) ? value : Float.NaN;
+    }
+
+    /**
+     * The state last recorded by {@link #shouldPublish} was shed by the event bus budget and never posted. Forget it,
+     * so that the next state is published regardless of the filters.
+     */
+    public void shed() {
+        published = false;
+        lastState = null;
+    }
+
+    private boolean heartbeatDue(long sinceLastPublished) {
+        return heartbeatNanos > 0 && sinceLastPublished >= heartbeatNanos;
+    }
+
+    /**
+     * Deadband and publish interval limits of a sensor channel
+     *
+     * @param deadband changes of at most this absolute value are not published
+     * @param deadbandFraction changes of at most this fraction of the last published value are not published
+     * @param minIntervalNanos states are not published more often than this
+     * @param maxIntervalNanos a state is published regardless of the deadbands if the last one is this old, 0 for never
+     */
+    private record NumericFilter(float deadband, float deadbandFraction, long minIntervalNanos,
+            long maxIntervalNanos) {
+
+        static final NumericFilter NONE = new NumericFilter(0, 0, 0, 0);
+
+        boolean isEnabled() {
+            return deadband > 0 || deadbandFraction > 0 || minIntervalNanos > 0 || maxIntervalNanos > 0;
+        }
+    }
+}
@@ -4,9 +4,6 @@ import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
 
 import org.openhab.core.config.core.Configuration;
 import org.openhab.core.library.types.DecimalType;
@@ -22,15 +19,9 @@ import org.openhab.core.types.StateDescription;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-import com.google.common.cache.RemovalListener;
-
 import io.esphome.api.*;
 import no.seime.openhab.binding.esphome.internal.BindingConstants;
 import no.seime.openhab.binding.esphome.internal.EntityTypes;
-import no.seime.openhab.binding.esphome.internal.comm.ProtocolAPIError;
 import no.seime.openhab.binding.esphome.internal.handler.ESPHomeHandler;
 
 public class ClimateMessageHandler extends AbstractMessageHandler<ListEntitiesClimateResponse, ClimateStateResponse> {
@@ -87,127 +78,72 @@ public class ClimateMessageHandler extends AbstractMessageHandler<ListEntitiesCl
 
     private final Logger logger = LoggerFactory.getLogger(ClimateMessageHandler.class);
 
-    private final ReentrantLock lock = new ReentrantLock();
-
-    private final LoadingCache<Integer, ClimateCommandRequest.Builder> commandAggregatingCache;
-
-    private Thread expiryThread = null;
-
     public ClimateMessageHandler(ESPHomeHandler handler) {
         super(handler);
-
-        commandAggregatingCache = CacheBuilder.newBuilder().maximumSize(10)
-                .expireAfterAccess(400, TimeUnit.MILLISECONDS)
-                .removalListener((RemovalListener<Integer, ClimateCommandRequest.Builder>) notification -> {
-                    if (notification.getValue() != null) {
-                        try {
-                            logger.debug("[{}] Sending climate command for key {}", handler.getLogPrefix(),
-                                    notification.getValue().getKey());
-                            handler.sendMessage(notification.getValue().build());
-                        } catch (ProtocolAPIError e) {
-                            logger.error("[{}] Failed to send climate command for key {}", handler.getLogPrefix(),
-                                    notification.getValue().getKey(), e);
-                        }
-                    }
-                }).build(new CacheLoader<>() {
-                    public ClimateCommandRequest.Builder load(Integer key) {
-                        return ClimateCommandRequest.newBuilder().setKey(key);
-                    }
-                });
     }
 
     @Override
     public void handleCommand(Channel channel, Command command, int key) {
-        try {
-            lock.lock();
-            ClimateCommandRequest.Builder builder = commandAggregatingCache.get(key);
-            String subCommand = (String) channel.getConfiguration()
-                    .get(BindingConstants.CHANNEL_CONFIGURATION_ENTITY_FIELD);
-            switch (subCommand) {
-                case CHANNEL_MODE ->
-                    builder.setMode(ClimateEnumHelper.toClimateMode(command.toString())).setHasMode(true);
-                case CHANNEL_TARGET_TEMPERATURE -> {
-                    if (command instanceof QuantityType<?> qt) {
-                        QuantityType<?> celsius = qt.toUnit(SIUnits.CELSIUS);
-                        if (celsius != null) {
-                            builder.setTargetTemperature(celsius.floatValue());
-                        }
-                    } else if (command instanceof DecimalType dc) {
-                        builder.setTargetTemperature(dc.floatValue());
-                    }
-                    builder.setHasTargetTemperature(true);
-                }
-                case CHANNEL_TARGET_TEMPERATURE_LOW -> {
-                    if (command instanceof QuantityType<?> qt) {
-                        QuantityType<?> celsius = qt.toUnit(SIUnits.CELSIUS);
-                        if (celsius != null) {
-                            builder.setTargetTemperatureLow(celsius.floatValue());
-                        }
-                    } else if (command instanceof DecimalType dc) {
-                        builder.setTargetTemperatureLow(dc.floatValue());
+        // Commands to several channels of the climate sent at about the same time go out as one request
+        handler.getCommandAggregator().merge(key, ClimateCommandRequest.Builder.class,
+                k -> ClimateCommandRequest.newBuilder().setKey(k), builder -> mergeCommand(builder, channel, command));
+    }
+
+    private void mergeCommand(ClimateCommandRequest.Builder builder, Channel channel, Command command) {
+        String subCommand = (String) channel.getConfiguration()
+                .get(BindingConstants.CHANNEL_CONFIGURATION_ENTITY_FIELD);
+        switch (subCommand) {
+            case CHANNEL_MODE -> builder.setMode(ClimateEnumHelper.toClimateMode(command.toString())).setHasMode(true);
+            case CHANNEL_TARGET_TEMPERATURE -> {
+                if (command instanceof QuantityType<?> qt) {
+                    QuantityType<?> celsius = qt.toUnit(SIUnits.CELSIUS);
+                    if (celsius != null) {
+                        builder.setTargetTemperature(celsius.floatValue());
                     }
-                    builder.setHasTargetTemperatureLow(true);
+                } else if (command instanceof DecimalType dc) {
+                    builder.setTargetTemperature(dc.floatValue());
                 }
-                case CHANNEL_TARGET_TEMPERATURE_HIGH -> {
-                    if (command instanceof QuantityType<?> qt) {
-                        QuantityType<?> celsius = qt.toUnit(SIUnits.CELSIUS);
-                        if (celsius != null) {
-                            builder.setTargetTemperatureHigh(celsius.floatValue());
-                        }
-                    } else if (command instanceof DecimalType dc) {
-                        builder.setTargetTemperatureHigh(dc.floatValue());
+                builder.setHasTargetTemperature(true);
+            }
+            case CHANNEL_TARGET_TEMPERATURE_LOW -> {
+                if (command instanceof QuantityType<?> qt) {
+                    QuantityType<?> celsius = qt.toUnit(SIUnits.CELSIUS);
+                    if (celsius != null) {
+                        builder.setTargetTemperatureLow(celsius.floatValue());
                     }
-                    builder.setHasTargetTemperatureHigh(true);
+                } else if (command instanceof DecimalType dc) {
+                    builder.setTargetTemperatureLow(dc.floatValue());
                 }
-                case CHANNEL_TARGET_HUMIDITY -> {
-                    if (command instanceof QuantityType<?> qt) {
-                        builder.setTargetHumidity(qt.floatValue());
-                    } else if (command instanceof DecimalType dc) {
-                        builder.setTargetHumidity(dc.floatValue());
+                builder.setHasTargetTemperatureLow(true);
+            }
+            case CHANNEL_TARGET_TEMPERATURE_HIGH -> {
+                if (command instanceof QuantityType<?> qt) {
+                    QuantityType<?> celsius = qt.toUnit(SIUnits.CELSIUS);
+                    if (celsius != null) {
+                        builder.setTargetTemperatureHigh(celsius.floatValue());
                     }
-                    builder.setHasTargetHumidity(true);
+                } else if (command instanceof DecimalType dc) {
+                    builder.setTargetTemperatureHigh(dc.floatValue());
                 }
-                case CHANNEL_FAN_MODE ->
-                    builder.setFanMode(ClimateEnumHelper.toFanMode(command.toString())).setHasFanMode(true);
-                case CHANNEL_CUSTOM_FAN_MODE -> builder.setCustomFanMode(command.toString()).setHasCustomFanMode(true);
-                case CHANNEL_PRESET ->
-                    builder.setPreset(ClimateEnumHelper.toClimatePreset(command.toString())).setHasPreset(true);
-                case CHANNEL_CUSTOM_PRESET -> builder.setCustomPreset(command.toString()).setHasCustomPreset(true);
-                case CHANNEL_SWING_MODE -> builder
-                        .setSwingMode(ClimateEnumHelper.toClimateSwingMode(command.toString())).setHasSwingMode(true);
-                default -> logger.warn("Unknown climate subcommand {}", subCommand);
+                builder.setHasTargetTemperatureHigh(true);
             }
-            // Start a thread that will clean up the cache (send the pending messages)
-            flushCommandBuffer();
-
-        } catch (ExecutionException e) {
-            logger.error("Error buffering climate command", e);
-        } finally {
-            lock.unlock();
-        }
-    }
-
-    private void flushCommandBuffer() {
-        if (expiryThread == null || !expiryThread.isAlive()) {
-            expiryThread = new Thread(() -> {
-                while (commandAggregatingCache.size() > 0) {
-                    try {
-                        lock.lock();
-                        logger.debug("Calling cleanup");
-                        commandAggregatingCache.cleanUp();
-                    } finally {
-                        lock.unlock();
-                    }
-                    try {
-                        Thread.sleep(200);
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt(); // Restore interrupted status
-                        logger.error("Error sleeping", e);
-                    }
-
+            case CHANNEL_TARGET_HUMIDITY -> {
+                if (command instanceof QuantityType<?> qt) {
+                    builder.setTargetHumidity(qt.floatValue());
+                } else if (command instanceof DecimalType dc) {
+                    builder.setTargetHumidity(dc.floatValue());
                 }
-            });
-            expiryThread.start();
+                builder.setHasTargetHumidity(true);
+            }
+            case CHANNEL_FAN_MODE ->
+                builder.setFanMode(ClimateEnumHelper.toFanMode(command.toString())).setHasFanMode(true);
+            case CHANNEL_CUSTOM_FAN_MODE -> builder.setCustomFanMode(command.toString()).setHasCustomFanMode(true);
+            case CHANNEL_PRESET ->
+                builder.setPreset(ClimateEnumHelper.toClimatePreset(command.toString())).setHasPreset(true);
+            case CHANNEL_CUSTOM_PRESET -> builder.setCustomPreset(command.toString()).setHasCustomPreset(true);
+            case CHANNEL_SWING_MODE -> builder
+                    .setSwingMode(ClimateEnumHelper.toClimateSwingMode(command.toString())).setHasSwingMode(true);
+            default -> logger.warn("Unknown climate subcommand {}", subCommand);
         }
     }
 
@@ -394,32 +330,37 @@ public class ClimateMessageHandler extends AbstractMessageHandler<ListEntitiesCl
     }
 
     public void handleState(ClimateStateResponse rsp) {
-        findChannelByKeyAndField(rsp.getKey(), CHANNEL_TARGET_TEMPERATURE).ifPresent(channel -> handler
-                .updateState(channel.getUID(), toNumericState(channel, rsp.getTargetTemperature(), false)));
-        findChannelByKeyAndField(rsp.getKey(), CHANNEL_TARGET_TEMPERATURE_LOW).ifPresent(channel -> handler
-                .updateState(channel.getUID(), toNumericState(channel, rsp.getTargetTemperatureLow(), false)));
-        findChannelByKeyAndField(rsp.getKey(), CHANNEL_TARGET_TEMPERATURE_HIGH).ifPresent(channel -> handler
-                .updateState(channel.getUID(), toNumericState(channel, rsp.getTargetTemperatureHigh(), false)));
-        findChannelByKeyAndField(rsp.getKey(), CHANNEL_CURRENT_TEMPERATURE).ifPresent(channel -> handler
-                .updateState(channel.getUID(), toNumericState(channel, rsp.getCurrentTemperature(), false)));
-        findChannelByKeyAndField(rsp.getKey(), CHANNEL_MODE).ifPresent(channel -> handler.updateState(channel.getUID(),
-                new StringType(ClimateEnumHelper.stripEnumPrefix(rsp.getMode()))));
-        findChannelByKeyAndField(rsp.getKey(), CHANNEL_ACTION).ifPresent(channel -> handler
-                .updateState(channel.getUID(), new StringType(ClimateEnumHelper.stripEnumPrefix(rsp.getAction()))));
-        findChannelByKeyAndField(rsp.getKey(), CHANNEL_FAN_MODE).ifPresent(channel -> handler
-                .updateState(channel.getUID(), new StringType(ClimateEnumHelper.stripEnumPrefix(rsp.getFanMode()))));
+        findChannelByKeyAndField(rsp.getKey(), CHANNEL_TARGET_TEMPERATURE)
+                .ifPresent(channel -> updateNumericState(channel, rsp.getTargetTemperature(), false));
+        findChannelByKeyAndField(rsp.getKey(), CHANNEL_TARGET_TEMPERATURE_LOW)
+                .ifPresent(channel -> updateNumericState(channel, rsp.getTargetTemperatureLow(), false));
+        findChannelByKeyAndField(rsp.getKey(), CHANNEL_TARGET_TEMPERATURE_HIGH)
+                .ifPresent(channel -> updateNumericState(channel, rsp.getTargetTemperatureHigh(), false));
+        findChannelByKeyAndField(rsp.getKey(), CHANNEL_CURRENT_TEMPERATURE)
+                .ifPresent(channel -> updateNumericState(channel, rsp.getCurrentTemperature(), false));
+        findChannelByKeyAndField(rsp.getKey(), CHANNEL_MODE)
+                .ifPresent(channel -> updateState(channel,
+                        new StringType(ClimateEnumHelper.stripEnumPrefix(rsp.getMode()))));
+        findChannelByKeyAndField(rsp.getKey(), CHANNEL_ACTION)
+                .ifPresent(channel -> updateState(channel,
+                        new StringType(ClimateEnumHelper.stripEnumPrefix(rsp.getAction()))));
+        findChannelByKeyAndField(rsp.getKey(), CHANNEL_FAN_MODE)
+                .ifPresent(channel -> updateState(channel,
+                        new StringType(ClimateEnumHelper.stripEnumPrefix(rsp.getFanMode()))));
         findChannelByKeyAndField(rsp.getKey(), CHANNEL_CUSTOM_FAN_MODE)
-                .ifPresent(channel -> handler.updateState(channel.getUID(), new StringType(rsp.getCustomFanMode())));
-        findChannelByKeyAndField(rsp.getKey(), CHANNEL_PRESET).ifPresent(channel -> handler
-                .updateState(channel.getUID(), new StringType(ClimateEnumHelper.stripEnumPrefix(rsp.getPreset()))));
+                .ifPresent(channel -> updateState(channel, new StringType(rsp.getCustomFanMode())));
+        findChannelByKeyAndField(rsp.getKey(), CHANNEL_PRESET)
+                .ifPresent(channel -> updateState(channel,
+                        new StringType(ClimateEnumHelper.stripEnumPrefix(rsp.getPreset()))));
         findChannelByKeyAndField(rsp.getKey(), CHANNEL_CUSTOM_PRESET)
-                .ifPresent(channel -> handler.updateState(channel.getUID(), new StringType(rsp.getCustomPreset())));
-        findChannelByKeyAndField(rsp.getKey(), CHANNEL_SWING_MODE).ifPresent(channel -> handler
-                .updateState(channel.getUID(), new StringType(ClimateEnumHelper.stripEnumPrefix(rsp.getSwingMode()))));
-        findChannelByKeyAndField(rsp.getKey(), CHANNEL_CURRENT_HUMIDITY).ifPresent(channel -> handler
-                .updateState(channel.getUID(), toNumericState(channel, rsp.getCurrentHumidity(), false)));
-        findChannelByKeyAndField(rsp.getKey(), CHANNEL_TARGET_HUMIDITY).ifPresent(channel -> handler
-                .updateState(channel.getUID(), toNumericState(channel, rsp.getTargetHumidity(), false)));
+                .ifPresent(channel -> updateState(channel, new StringType(rsp.getCustomPreset())));
+        findChannelByKeyAndField(rsp.getKey(), CHANNEL_SWING_MODE)
+                .ifPresent(channel -> updateState(channel,
+                        new StringType(ClimateEnumHelper.stripEnumPrefix(rsp.getSwingMode()))));
+        findChannelByKeyAndField(rsp.getKey(), CHANNEL_CURRENT_HUMIDITY)
+                .ifPresent(channel -> updateNumericState(channel, rsp.getCurrentHumidity(), false));
+        findChannelByKeyAndField(rsp.getKey(), CHANNEL_TARGET_HUMIDITY)
+                .ifPresent(channel -> updateNumericState(channel, rsp.getTargetHumidity(), false));
     }
 
     public static class ClimateEnumHelper {
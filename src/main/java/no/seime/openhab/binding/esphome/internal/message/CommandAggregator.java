@@ -0,0 +1,211 @@
+package no.seime.openhab.binding.esphome.internal.message;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+import org.eclipse.jdt.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.protobuf.GeneratedMessage;
+
+import no.seime.openhab.binding.esphome.internal.comm.ProtocolAPIError;
+
+/**
+ * Merges commands for the same entity of a device into one request, so that commands to several channels of an
+ * entity sent at about the same time, like the mode and target temperature of a climate or the color and effect of a
+ * light, reach the device as one request.
+ * <p>
+ * With {@link #merge}, the first command for an entity creates a request builder and schedules sending it once the
+ * merge window has passed. Commands arriving within the window are merged into the same builder by their merge
+ * function, later values of a field replacing earlier ones. With {@link #mergeBurst}, the first command is sent right
+ * away instead, and only commands following it within the window are merged, so that a single command is not delayed.
+ * With a merge window of 0, every command is sent right away.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+public class CommandAggregator {
+
+    private final Logger logger = LoggerFactory.getLogger(CommandAggregator.class);
+
+    private final ScheduledExecutorService scheduler;
+    private final MessageSender sender;
+    private final String logPrefix;
+
+    private final long mergeWindowMillis;
+    // Guarded by this
+    private final Map<PendingKey, Pending> pending = new HashMap<>();
+
+    public CommandAggregator(ScheduledExecutorService scheduler, MessageSender sender, String logPrefix,
+            long mergeWindowMillis) {
+        this.scheduler = scheduler;
+        this.sender = sender;
+        this.logPrefix = logPrefix;
+        this.mergeWindowMillis = mergeWindowMillis;
+    }
+
+    /**
+     * Merge a command into the pending request for the entity, creating one if there is none
+     *
+     * @param type class of the request builder, requests of different types are never merged
+     * @param newBuilder creates a builder for the entity key
+     * @param merge sets the fields of the command on the builder
+     */
+    public <B extends GeneratedMessage.Builder<B>> void merge(int key, Class<B> type, IntFunction<B> newBuilder,
+            Consumer<B> merge) {
+        if (mergeWindowMillis <= 0) {
+            B builder = newBuilder.apply(key);
+            merge.accept(builder);
+            send(builder);
+            return;
+        }
+        PendingKey pendingKey = new PendingKey(type, key);
+        synchronized (this) {
+            Pending existing = pending.get(pendingKey);
+            if (existing != null) {
+                mergeInto(existing, key, type, newBuilder, merge);
+                return;
+            }
+            B builder = newBuilder.apply(key);
+            merge.accept(builder);
+            openWindow(pendingKey, builder);
+        }
+    }
+
+    /**
+     * Send the command right away if no command was sent for the entity within the merge window, otherwise merge it
+     * into the request sent once the window has passed. Meant for entities like lights and covers, where most commands
+     * come alone and should not wait.
+     *
+     * @param type class of the request builder, requests of different types are never merged
+     * @param newBuilder creates a builder for the entity key
+     * @param merge sets the fields of the command on the builder
+     */
+    public <B extends GeneratedMessage.Builder<B>> void mergeBurst(int key, Class<B> type, IntFunction<B> newBuilder,
+            Consumer<B> merge) {
+        if (mergeWindowMillis > 0) {
+            PendingKey pendingKey = new PendingKey(type, key);
+            synchronized (this) {
+                Pending existing = pending.get(pendingKey);
+                if (existing != null) {
+                    mergeInto(existing, key, type, newBuilder, merge);
+                    return;
+                }
+                // Hold back the commands following this one
+                openWindow(pendingKey, null);
+            }
+        }
+        B builder = newBuilder.apply(key);
+        merge.accept(builder);
+        send(builder);
+    }
+
+    /**
+     * Drop the pending request for the entity, for instance before sending a stop command that supersedes it
+     */
+    public void discard(int key, Class<? extends GeneratedMessage.Builder<?>> type) {
+        Pending removed;
+        synchronized (this) {
+            removed = pending.remove(new PendingKey(type, key));
+        }
+        if (removed != null) {
+            cancel(removed);
+        }
+    }
+
+    /**
+     * Send all pending requests right away, from the calling thread
+     */
+    public void flush() {
+        List<Pending> flushed;
+        synchronized (this) {
+            flushed = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        for (Pending removed : flushed) {
+            cancel(removed);
+            send(removed.builder);
+        }
+    }
+
+    /**
+     * Drop all pending requests, when the connection is closed
+     */
+    public void clear() {
+        synchronized (this) {
+            pending.values().forEach(this::cancel);
+            pending.clear();
+        }
+    }
+
+    private <B extends GeneratedMessage.Builder<B>> void mergeInto(Pending existing, int key, Class<B> type,
+            IntFunction<B> newBuilder, Consumer<B> merge) {
+        GeneratedMessage.Builder<?> builder = existing.builder;
+        B typed = builder == null ? newBuilder.apply(key) : type.cast(builder);
+        merge.accept(typed);
+        existing.builder = typed;
+    }
+
+    private void openWindow(PendingKey pendingKey, GeneratedMessage.@Nullable Builder<?> builder) {
+        Pending created = new Pending(builder);
+        pending.put(pendingKey, created);
+        created.future = scheduler.schedule(() -> flush(pendingKey), mergeWindowMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void flush(PendingKey pendingKey) {
+        Pending removed;
+        synchronized (this) {
+            removed = pending.remove(pendingKey);
+        }
+        if (removed != null) {
+            send(removed.builder);
+        }
+    }
+
+    private void cancel(Pending removed) {
+        ScheduledFuture<?> future = removed.future;
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    private void send(GeneratedMessage.@Nullable Builder<?> builder) {
+        if (builder == null) {
+            // Nothing followed the command sent when the window opened
+            return;
+        }
+        GeneratedMessage message = (GeneratedMessage) builder.build();
+        try {
+            logger.debug("[{}] Sending {}", logPrefix, message.getClass().getSimpleName());
+            sender.send(message);
+        } catch (ProtocolAPIError e) {
+            logger.error("[{}] Failed to send {}", logPrefix, message.getClass().getSimpleName(), e);
+        }
+    }
+
+    @FunctionalInterface
+    public interface MessageSender {
+        void send(GeneratedMessage message) throws ProtocolAPIError;
+    }
+
+    private record PendingKey(Class<?> type, int key) {
+    }
+
+    private static final class Pending {
+        private GeneratedMessage.@Nullable Builder<?> builder;
+        private @Nullable ScheduledFuture<?> future;
+
+        private Pending(GeneratedMessage.@Nullable Builder<?> builder) {
+            this.builder = builder;
+        }
+    }
+}
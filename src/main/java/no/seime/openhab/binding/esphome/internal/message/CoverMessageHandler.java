@@ -4,6 +4,7 @@ import static org.openhab.core.library.CoreItemFactory.STRING;
 
 import java.math.BigDecimal;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import org.openhab.core.library.types.*;
 import org.openhab.core.thing.Channel;
@@ -44,54 +45,58 @@ public class CoverMessageHandler extends AbstractMessageHandler<ListEntitiesCove
 
     @Override
     public void handleCommand(Channel channel, Command command, int key) throws ProtocolAPIError {
-        CoverCommandRequest.Builder builder = CoverCommandRequest.newBuilder().setKey(key);
-
         if (command == StopMoveType.STOP) {
-            builder.setStop(true);
-            builder.setLegacyCommand(LegacyCoverCommand.LEGACY_COVER_COMMAND_STOP);
-        } else {
+            // Stop supersedes any movement not yet sent
+            handler.getCommandAggregator().discard(key, CoverCommandRequest.Builder.class);
+            handler.sendMessage(CoverCommandRequest.newBuilder().setKey(key).setStop(true)
+                    .setLegacyCommand(LegacyCoverCommand.LEGACY_COVER_COMMAND_STOP).build());
+            return;
+        }
 
-            String subCommand = (String) channel.getConfiguration()
-                    .get(BindingConstants.CHANNEL_CONFIGURATION_ENTITY_FIELD);
-            switch (subCommand) {
-                case CHANNEL_POSITION -> {
-                    if (command instanceof QuantityType<?> number) {
-                        builder.setPosition(invert(number.floatValue() / 100));
-                    } else if (command instanceof PercentType number) {
-                        builder.setPosition(invert(number.floatValue() / 100));
-                    } else if (command instanceof DecimalType number) {
-                        builder.setPosition(invert(number.floatValue() / 100));
-                    } else if (command == UpDownType.UP) {
-                        builder.setHasLegacyCommand(true);
-                        builder.setLegacyCommand(LegacyCoverCommand.LEGACY_COVER_COMMAND_OPEN);
-                        builder.setPosition(1);
-                    } else if (command == UpDownType.DOWN) {
-                        builder.setHasLegacyCommand(true);
-                        builder.setLegacyCommand(LegacyCoverCommand.LEGACY_COVER_COMMAND_CLOSE);
-                        builder.setPosition(0);
-                    }
-                    builder.setHasPosition(true);
+        String subCommand = (String) channel.getConfiguration()
+                .get(BindingConstants.CHANNEL_CONFIGURATION_ENTITY_FIELD);
+        switch (subCommand) {
+            case CHANNEL_POSITION -> merge(key, builder -> {
+                if (command instanceof QuantityType<?> number) {
+                    builder.setPosition(invert(number.floatValue() / 100));
+                } else if (command instanceof PercentType number) {
+                    builder.setPosition(invert(number.floatValue() / 100));
+                } else if (command instanceof DecimalType number) {
+                    builder.setPosition(invert(number.floatValue() / 100));
+                } else if (command == UpDownType.UP) {
+                    builder.setHasLegacyCommand(true);
+                    builder.setLegacyCommand(LegacyCoverCommand.LEGACY_COVER_COMMAND_OPEN);
+                    builder.setPosition(1);
+                } else if (command == UpDownType.DOWN) {
+                    builder.setHasLegacyCommand(true);
+                    builder.setLegacyCommand(LegacyCoverCommand.LEGACY_COVER_COMMAND_CLOSE);
+                    builder.setPosition(0);
                 }
-                case CHANNEL_TILT -> {
-                    if (command instanceof QuantityType<?> number) {
-                        builder.setTilt(invert(number.floatValue() / 100));
-                    } else if (command instanceof PercentType number) {
-                        builder.setTilt(invert(number.floatValue() / 100));
-                    } else if (command instanceof DecimalType number) {
-                        builder.setTilt(invert(number.floatValue() / 100));
-                    } else if (command == UpDownType.UP) {
-                        builder.setTilt(1);
-                    } else if (command == UpDownType.DOWN) {
-                        builder.setTilt(0);
-                    }
-                    builder.setHasTilt(true);
+                builder.setHasPosition(true);
+            });
+            case CHANNEL_TILT -> merge(key, builder -> {
+                if (command instanceof QuantityType<?> number) {
+                    builder.setTilt(invert(number.floatValue() / 100));
+                } else if (command instanceof PercentType number) {
+                    builder.setTilt(invert(number.floatValue() / 100));
+                } else if (command instanceof DecimalType number) {
+                    builder.setTilt(invert(number.floatValue() / 100));
+                } else if (command == UpDownType.UP) {
+                    builder.setTilt(1);
+                } else if (command == UpDownType.DOWN) {
+                    builder.setTilt(0);
                 }
+                builder.setHasTilt(true);
+            });
 
-                case CHANNEL_CURRENT_OPERATION -> logger.warn("current_operation channel is read-only");
-                default -> logger.warn("[{}] Unknown Cover subcommand {}", handler.getLogPrefix(), subCommand);
-            }
+            case CHANNEL_CURRENT_OPERATION -> logger.warn("current_operation channel is read-only");
+            default -> logger.warn("[{}] Unknown Cover subcommand {}", handler.getLogPrefix(), subCommand);
         }
-        handler.sendMessage(builder.build());
+    }
+
+    private void merge(int key, Consumer<CoverCommandRequest.Builder> merge) {
+        handler.getCommandAggregator().mergeBurst(key, CoverCommandRequest.Builder.class,
+                k -> CoverCommandRequest.newBuilder().setKey(k), merge);
     }
 
     public void buildChannels(ListEntitiesCoverResponse rsp) {
@@ -146,11 +151,11 @@ public class CoverMessageHandler extends AbstractMessageHandler<ListEntitiesCove
 
     public void handleState(CoverStateResponse rsp) {
         findChannelByKeyAndField(rsp.getKey(), CHANNEL_POSITION).ifPresent(
-                channel -> handler.updateState(channel.getUID(), toPercentState(invert(rsp.getPosition()), false)));
+                channel -> updateState(channel, toPercentState(invert(rsp.getPosition()), false)));
         findChannelByKeyAndField(rsp.getKey(), CHANNEL_TILT).ifPresent(
-                channel -> handler.updateState(channel.getUID(), toPercentState(invert(rsp.getTilt()), false)));
-        findChannelByKeyAndField(rsp.getKey(), CHANNEL_CURRENT_OPERATION).ifPresent(channel -> handler
-                .updateState(channel.getUID(), new StringType(stripEnumPrefix(rsp.getCurrentOperation()))));
+                channel -> updateState(channel, toPercentState(invert(rsp.getTilt()), false)));
+        findChannelByKeyAndField(rsp.getKey(), CHANNEL_CURRENT_OPERATION)
+                .ifPresent(channel -> updateState(channel, new StringType(stripEnumPrefix(rsp.getCurrentOperation()))));
     }
 
     protected State toPercentState(float state, boolean missingState) {
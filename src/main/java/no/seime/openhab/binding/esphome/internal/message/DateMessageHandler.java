@@ -64,8 +64,9 @@ public class DateMessageHandler extends AbstractMessageHandler<ListEntitiesDateR
 
     @Override
     public void handleState(DateStateResponse rsp) {
-        findChannelByKey(rsp.getKey()).ifPresent(channel -> handler.updateState(channel.getUID(),
-                toDateState(rsp.getYear(), rsp.getMonth(), rsp.getDay(), rsp.getMissingState())));
+        findChannelByKey(rsp.getKey())
+                .ifPresent(channel -> updateState(channel,
+                        toDateState(rsp.getYear(), rsp.getMonth(), rsp.getDay(), rsp.getMissingState())));
     }
 
     protected State toDateState(int year, int month, int date, boolean missingState) {
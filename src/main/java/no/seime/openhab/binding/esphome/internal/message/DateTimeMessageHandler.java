@@ -63,7 +63,8 @@ public class DateTimeMessageHandler
 
     @Override
     public void handleState(DateTimeStateResponse rsp) {
-        findChannelByKey(rsp.getKey()).ifPresent(channel -> handler.updateState(channel.getUID(),
-                toDateTimeState(rsp.getEpochSeconds(), rsp.getMissingState())));
+        findChannelByKey(rsp.getKey())
+                .ifPresent(channel -> updateState(channel,
+                        toDateTimeState(rsp.getEpochSeconds(), rsp.getMissingState())));
     }
 }
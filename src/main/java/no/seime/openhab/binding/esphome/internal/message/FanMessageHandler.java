@@ -5,9 +5,6 @@ import static org.openhab.core.library.CoreItemFactory.*;
 import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 import org.openhab.core.library.types.*;
@@ -21,18 +18,12 @@ import org.openhab.core.types.UnDefType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-import com.google.common.cache.RemovalListener;
-
 import io.esphome.api.FanCommandRequest;
 import io.esphome.api.FanDirection;
 import io.esphome.api.FanStateResponse;
 import io.esphome.api.ListEntitiesFanResponse;
 import no.seime.openhab.binding.esphome.internal.BindingConstants;
 import no.seime.openhab.binding.esphome.internal.EntityTypes;
-import no.seime.openhab.binding.esphome.internal.comm.ProtocolAPIError;
 import no.seime.openhab.binding.esphome.internal.handler.ESPHomeHandler;
 
 public class FanMessageHandler extends AbstractMessageHandler<ListEntitiesFanResponse, FanStateResponse> {
@@ -45,138 +36,86 @@ public class FanMessageHandler extends AbstractMessageHandler<ListEntitiesFanRes
 
     private final Logger logger = LoggerFactory.getLogger(FanMessageHandler.class);
 
-    private final ReentrantLock lock = new ReentrantLock();
-
-    private final LoadingCache<Integer, FanCommandRequest.Builder> commandAggregatingCache;
-
-    private Thread expiryThread = null;
-
     public FanMessageHandler(ESPHomeHandler handler) {
         super(handler);
-
-        // Cache the commands for a short time to allow for multiple OH channel commands to be sent as 1 request to
-        // ESPHome
-        commandAggregatingCache = CacheBuilder.newBuilder().maximumSize(10)
-                .expireAfterAccess(400, TimeUnit.MILLISECONDS)
-                .removalListener((RemovalListener<Integer, FanCommandRequest.Builder>) notification -> {
-                    if (notification.getValue() != null) {
-                        try {
-                            logger.debug("[{}] Sending Fan command for key {}", handler.getLogPrefix(),
-                                    notification.getValue().getKey());
-                            handler.sendMessage(notification.getValue().build());
-                        } catch (ProtocolAPIError e) {
-                            logger.error("[{}] Failed to send Fan command for key {}", handler.getLogPrefix(),
-                                    notification.getValue().getKey(), e);
-                        }
-                    }
-                }).build(new CacheLoader<>() {
-                    public FanCommandRequest.Builder load(Integer key) {
-                        return FanCommandRequest.newBuilder().setKey(key);
-                    }
-                });
     }
 
     @Override
     public void handleCommand(Channel channel, Command command, int key) {
-        try {
-            lock.lock();
-            FanCommandRequest.Builder builder = commandAggregatingCache.get(key);
-
-            if (command == StopMoveType.STOP) {
-                builder.setSpeedLevel(0);
-            } else {
-
-                String subCommand = (String) channel.getConfiguration()
-                        .get(BindingConstants.CHANNEL_CONFIGURATION_ENTITY_FIELD);
-                switch (subCommand) {
-                    case CHANNEL_STATE -> {
-                        if (command instanceof OnOffType) {
-                            builder.setState(command == OnOffType.ON);
-                            builder.setHasState(true);
-                        } else {
-                            logger.warn("[{}] Unsupported command type for Fan state: {}", handler.getLogPrefix(),
-                                    command.getClass().getSimpleName());
-                        }
+        // Commands to several channels of the fan sent at about the same time go out as one request
+        handler.getCommandAggregator().merge(key, FanCommandRequest.Builder.class,
+                k -> FanCommandRequest.newBuilder().setKey(k), builder -> mergeCommand(builder, channel, command));
+    }
+
+    private void mergeCommand(FanCommandRequest.Builder builder, Channel channel, Command command) {
+        if (command == StopMoveType.STOP) {
+            builder.setSpeedLevel(0);
+        } else {
+
+            String subCommand = (String) channel.getConfiguration()
+                    .get(BindingConstants.CHANNEL_CONFIGURATION_ENTITY_FIELD);
+            switch (subCommand) {
+                case CHANNEL_STATE -> {
+                    if (command instanceof OnOffType) {
+                        builder.setState(command == OnOffType.ON);
+                        builder.setHasState(true);
+                    } else {
+                        logger.warn("[{}] Unsupported command type for Fan state: {}", handler.getLogPrefix(),
+                                command.getClass().getSimpleName());
                     }
+                }
 
-                    case CHANNEL_OSCILLATION -> {
-                        if (command instanceof OnOffType) {
-                            builder.setOscillating(command == OnOffType.ON);
-                            builder.setHasOscillating(true);
-                        } else {
-                            logger.warn("[{}] Unsupported command type for Fan oscillation: {}", handler.getLogPrefix(),
-                                    command.getClass().getSimpleName());
-                        }
+                case CHANNEL_OSCILLATION -> {
+                    if (command instanceof OnOffType) {
+                        builder.setOscillating(command == OnOffType.ON);
+                        builder.setHasOscillating(true);
+                    } else {
+                        logger.warn("[{}] Unsupported command type for Fan oscillation: {}", handler.getLogPrefix(),
+                                command.getClass().getSimpleName());
                     }
-                    case CHANNEL_DIRECTION -> {
-                        if (command instanceof StringType) {
-                            try {
-                                builder.setDirection(
-                                        FanDirection.valueOf("FAN_DIRECTION_" + command.toString().toUpperCase()));
-                                builder.setHasDirection(true);
-                            } catch (IllegalArgumentException e) {
-                                logger.warn("[{}] Unsupported command value for Fan direction: {}",
-                                        handler.getLogPrefix(), command);
-                            }
-                        } else {
-                            logger.warn("[{}] Unsupported command type for Fan direction: {}", handler.getLogPrefix(),
-                                    command.getClass().getSimpleName());
+                }
+                case CHANNEL_DIRECTION -> {
+                    if (command instanceof StringType) {
+                        try {
+                            builder.setDirection(
+                                    FanDirection.valueOf("FAN_DIRECTION_" + command.toString().toUpperCase()));
+                            builder.setHasDirection(true);
+                        } catch (IllegalArgumentException e) {
+                            logger.warn("[{}] Unsupported command value for Fan direction: {}",
+                                    handler.getLogPrefix(), command);
                         }
+                    } else {
+                        logger.warn("[{}] Unsupported command type for Fan direction: {}", handler.getLogPrefix(),
+                                command.getClass().getSimpleName());
                     }
-                    case CHANNEL_SPEED_LEVEL -> {
-                        if (command instanceof PercentType) {
-                            builder.setSpeedLevel(((PercentType) command).intValue());
-                            builder.setHasSpeedLevel(true);
-                        } else if (command instanceof DecimalType) {
-                            builder.setSpeedLevel(((DecimalType) command).intValue());
-                            builder.setHasSpeedLevel(true);
-                        } else if (command instanceof QuantityType<?>) {
-                            builder.setSpeedLevel(((QuantityType) command).intValue());
-                            builder.setHasSpeedLevel(true);
-                        } else {
-                            logger.warn("[{}] Unsupported command type for Fan speed level: {}", handler.getLogPrefix(),
-                                    command.getClass().getSimpleName());
-                        }
+                }
+                case CHANNEL_SPEED_LEVEL -> {
+                    if (command instanceof PercentType) {
+                        builder.setSpeedLevel(((PercentType) command).intValue());
+                        builder.setHasSpeedLevel(true);
+                    } else if (command instanceof DecimalType) {
+                        builder.setSpeedLevel(((DecimalType) command).intValue());
+                        builder.setHasSpeedLevel(true);
+                    } else if (command instanceof QuantityType<?>) {
+                        builder.setSpeedLevel(((QuantityType) command).intValue());
+                        builder.setHasSpeedLevel(true);
+                    } else {
+                        logger.warn("[{}] Unsupported command type for Fan speed level: {}", handler.getLogPrefix(),
+                                command.getClass().getSimpleName());
                     }
-                    case CHANNEL_PRESET -> {
-                        if (command instanceof StringType) {
-                            builder.setPresetMode(command.toString());
-                            builder.setHasPresetMode(true);
-                        } else {
-                            logger.warn("[{}] Unsupported command type for Fan preset: {}", handler.getLogPrefix(),
-                                    command.getClass().getSimpleName());
-                        }
+                }
+                case CHANNEL_PRESET -> {
+                    if (command instanceof StringType) {
+                        builder.setPresetMode(command.toString());
+                        builder.setHasPresetMode(true);
+                    } else {
+                        logger.warn("[{}] Unsupported command type for Fan preset: {}", handler.getLogPrefix(),
+                                command.getClass().getSimpleName());
                     }
-
-                    default -> logger.warn("[{}] Unknown Fan subcommand {}", handler.getLogPrefix(), subCommand);
                 }
-            }
-            // Start a thread that will clean up the cache (send the pending messages)
-            if (expiryThread == null || !expiryThread.isAlive()) {
-                expiryThread = new Thread(() -> {
-                    while (commandAggregatingCache.size() > 0) {
-                        try {
-                            lock.lock();
-                            logger.debug("[{}] Calling cleanup", handler.getLogPrefix());
-                            commandAggregatingCache.cleanUp();
-                        } finally {
-                            lock.unlock();
-                        }
-                        try {
-                            Thread.sleep(200);
-                        } catch (InterruptedException e) {
-                            logger.error("[{}] Error sleeping", handler.getLogPrefix(), e);
-                        }
 
-                    }
-                });
-                expiryThread.start();
+                default -> logger.warn("[{}] Unknown Fan subcommand {}", handler.getLogPrefix(), subCommand);
             }
-
-        } catch (ExecutionException e) {
-            logger.error("[{}] Error buffering Fan command", handler.getLogPrefix(), e);
-        } finally {
-            lock.unlock();
         }
     }
 
@@ -262,15 +201,15 @@ public class FanMessageHandler extends AbstractMessageHandler<ListEntitiesFanRes
     @Override
     public void handleState(FanStateResponse rsp) {
         findChannelByKeyAndField(rsp.getKey(), CHANNEL_STATE).ifPresent(
-                channel -> handler.updateState(channel.getUID(), rsp.getState() ? OnOffType.ON : OnOffType.OFF));
+                channel -> updateState(channel, rsp.getState() ? OnOffType.ON : OnOffType.OFF));
         findChannelByKeyAndField(rsp.getKey(), CHANNEL_OSCILLATION).ifPresent(
-                channel -> handler.updateState(channel.getUID(), rsp.getOscillating() ? OnOffType.ON : OnOffType.OFF));
+                channel -> updateState(channel, rsp.getOscillating() ? OnOffType.ON : OnOffType.OFF));
         findChannelByKeyAndField(rsp.getKey(), CHANNEL_DIRECTION).ifPresent(
-                channel -> handler.updateState(channel.getUID(), new StringType(stripEnumPrefix(rsp.getDirection()))));
+                channel -> updateState(channel, new StringType(stripEnumPrefix(rsp.getDirection()))));
         findChannelByKeyAndField(rsp.getKey(), CHANNEL_SPEED_LEVEL)
-                .ifPresent(channel -> handler.updateState(channel.getUID(), new PercentType(rsp.getSpeedLevel())));
+                .ifPresent(channel -> updateState(channel, new PercentType(rsp.getSpeedLevel())));
         findChannelByKeyAndField(rsp.getKey(), CHANNEL_PRESET)
-                .ifPresent(channel -> handler.updateState(channel.getUID(),
+                .ifPresent(channel -> updateState(channel,
                         "".equals(rsp.getPresetMode()) ? UnDefType.NULL : new StringType(rsp.getPresetMode())));
     }
 }
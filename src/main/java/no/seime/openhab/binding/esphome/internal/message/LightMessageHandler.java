@@ -6,6 +6,7 @@ import java.util.Arrays;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import org.openhab.core.config.core.Configuration;
@@ -50,40 +51,35 @@ public class LightMessageHandler extends AbstractMessageHandler<ListEntitiesLigh
         switch (subCommand) {
             case CHANNEL_LIGHT -> {
 
-                Set<LightColorCapability> capabilities = deserialize(
-                        (String) channel.getConfiguration().get("capabilities"));
+                ChannelStateConverter capabilities = converter(channel);
 
-                if (command instanceof HSBType hsb && capabilities.contains(LightColorCapability.RGB)) {
+                if (command instanceof HSBType hsb && capabilities.hasCapability(LightColorCapability.RGB)) {
                     PercentType[] percentTypes = ColorUtil.hsbToRgbPercent(hsb);
 
-                    LightCommandRequest.Builder builder = LightCommandRequest.newBuilder().setKey(key)
-                            .setRed(percentTypes[0].floatValue() / 100).setGreen(percentTypes[1].floatValue() / 100)
-                            .setBlue(percentTypes[2].floatValue() / 100).setHasRgb(true);
+                    merge(key, builder -> {
+                        builder.setRed(percentTypes[0].floatValue() / 100).setGreen(percentTypes[1].floatValue() / 100)
+                                .setBlue(percentTypes[2].floatValue() / 100).setHasRgb(true);
 
-                    // Turn on/off light if necessary
-                    builder.setState(hsb.getBrightness().floatValue() > 0).setHasState(true);
+                        // Turn on/off light if necessary
+                        builder.setState(hsb.getBrightness().floatValue() > 0).setHasState(true);
 
-                    // Adjust brightness
-                    builder.setBrightness(hsb.getBrightness().floatValue() / 100).setHasBrightness(true);
-
-                    handler.sendMessage(builder.build());
+                        // Adjust brightness
+                        builder.setBrightness(hsb.getBrightness().floatValue() / 100).setHasBrightness(true);
+                    });
                 } else if (command instanceof PercentType percentType
-                        && capabilities.contains(LightColorCapability.BRIGHTNESS)) {
-                    LightCommandRequest.Builder builder = LightCommandRequest.newBuilder().setKey(key);
-
-                    // Only set brightness if it's greater than 0, otherwise turn off the light
-                    if (percentType.floatValue() > 0) {
-                        builder.setBrightness(percentType.floatValue() / 100).setHasBrightness(true).setState(true)
-                                .setHasState(true);
-                    } else {
-                        builder.setState(false).setHasState(true);
-                    }
-
-                    handler.sendMessage(builder.build());
+                        && capabilities.hasCapability(LightColorCapability.BRIGHTNESS)) {
+                    merge(key, builder -> {
+                        // Only set brightness if it's greater than 0, otherwise turn off the light
+                        if (percentType.floatValue() > 0) {
+                            builder.setBrightness(percentType.floatValue() / 100).setHasBrightness(true).setState(true)
+                                    .setHasState(true);
+                        } else {
+                            builder.setState(false).setHasState(true);
+                        }
+                    });
                 } else if (command instanceof OnOffType onOffType
-                        && capabilities.contains(LightColorCapability.ON_OFF)) {
-                    handler.sendMessage(LightCommandRequest.newBuilder().setKey(key).setState(onOffType == OnOffType.ON)
-                            .setHasState(true).build());
+                        && capabilities.hasCapability(LightColorCapability.ON_OFF)) {
+                    merge(key, builder -> builder.setState(onOffType == OnOffType.ON).setHasState(true));
                 } else {
                     logger.warn("[{}] Unsupported command {} for channel {}", handler.getLogPrefix(), command,
                             channel.getUID());
@@ -91,8 +87,8 @@ public class LightMessageHandler extends AbstractMessageHandler<ListEntitiesLigh
             }
             case CHANNEL_EFFECTS -> {
                 if (command instanceof StringType stringType) {
-                    handler.sendMessage(LightCommandRequest.newBuilder().setKey(key).setEffect(stringType.toString())
-                            .setHasEffect(true).setState(true).setHasState(true).build());
+                    merge(key, builder -> builder.setEffect(stringType.toString()).setHasEffect(true).setState(true)
+                            .setHasState(true));
                 } else {
                     logger.warn("[{}] Unsupported command {} for channel {}", handler.getLogPrefix(), command,
                             channel.getUID());
@@ -101,6 +97,11 @@ public class LightMessageHandler extends AbstractMessageHandler<ListEntitiesLigh
         }
     }
 
+    private void merge(int key, Consumer<LightCommandRequest.Builder> merge) {
+        handler.getCommandAggregator().mergeBurst(key, LightCommandRequest.Builder.class,
+                k -> LightCommandRequest.newBuilder().setKey(k), merge);
+    }
+
     public void buildChannels(ListEntitiesLightResponse rsp) {
         Configuration configuration = configuration(EntityTypes.LIGHT, rsp.getKey(), CHANNEL_LIGHT);
         SortedSet<LightColorCapability> capabilities = decodeCapabilities(rsp);
@@ -172,9 +173,8 @@ public class LightMessageHandler extends AbstractMessageHandler<ListEntitiesLigh
 
     public void handleState(LightStateResponse rsp) {
         findChannelByKeyAndField(rsp.getKey(), CHANNEL_LIGHT).ifPresent(channel -> {
-            Configuration configuration = channel.getConfiguration();
-            SortedSet<LightColorCapability> capabilities = deserialize((String) configuration.get("capabilities"));
-            if (capabilities.contains(LightColorCapability.RGB)) {
+            ChannelStateConverter capabilities = converter(channel);
+            if (capabilities.hasCapability(LightColorCapability.RGB)) {
                 // Convert to color
                 HSBType hsbType = ColorUtil.rgbToHsb(
                         new int[] { (int) rsp.getRed() * 255, (int) rsp.getGreen() * 255, (int) rsp.getBlue() * 255 });
@@ -188,18 +188,18 @@ public class LightMessageHandler extends AbstractMessageHandler<ListEntitiesLigh
                             new PercentType((int) (rsp.getBrightness() * 100)));
                 }
 
-                handler.updateState(channel.getUID(), hsbType);
-            } else if (capabilities.contains(LightColorCapability.BRIGHTNESS)) {
+                updateState(channel, hsbType);
+            } else if (capabilities.hasCapability(LightColorCapability.BRIGHTNESS)) {
                 PercentType percentType = new PercentType((int) (rsp.getState() ? rsp.getBrightness() * 100 : 0));
-                handler.updateState(channel.getUID(), percentType);
-            } else if (capabilities.contains(LightColorCapability.ON_OFF)) {
+                updateState(channel, percentType);
+            } else if (capabilities.hasCapability(LightColorCapability.ON_OFF)) {
                 OnOffType onOffType = rsp.getState() ? OnOffType.ON : OnOffType.OFF;
-                handler.updateState(channel.getUID(), onOffType);
+                updateState(channel, onOffType);
             }
         });
 
         findChannelByKeyAndField(rsp.getKey(), CHANNEL_EFFECTS).ifPresent(channel -> {
-            handler.updateState(channel.getUID(), new StringType(rsp.getEffect()));
+            updateState(channel, new StringType(rsp.getEffect()));
         });
     }
 
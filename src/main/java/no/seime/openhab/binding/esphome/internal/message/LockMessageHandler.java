@@ -86,7 +86,7 @@ public class LockMessageHandler extends AbstractMessageHandler<ListEntitiesLockR
             default:
                 state = new StringType(stripEnumPrefix(lockState));
         }
-        findChannelByKey(rsp.getKey()).ifPresent(channel -> handler.updateState(channel.getUID(), state));
+        findChannelByKey(rsp.getKey()).ifPresent(channel -> updateState(channel, state));
     }
 
     public static String stripEnumPrefix(LockState lockState) {
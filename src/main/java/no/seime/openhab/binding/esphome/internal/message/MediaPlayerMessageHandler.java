@@ -305,22 +305,23 @@ public class MediaPlayerMessageHandler
         findChannelByKeyAndField(rsp.getKey(), CHANNEL_PLAYER).ifPresent(channel -> {
             if (rsp.getState() == MediaPlayerState.MEDIA_PLAYER_STATE_PLAYING
                     || rsp.getState() == MediaPlayerState.MEDIA_PLAYER_STATE_ANNOUNCING) {
-                handler.updateState(channel.getUID(), PlayPauseType.PLAY);
+                updateState(channel, PlayPauseType.PLAY);
             } else {
-                handler.updateState(channel.getUID(), PlayPauseType.PAUSE);
+                updateState(channel, PlayPauseType.PAUSE);
             }
         });
 
         findChannelByKeyAndField(rsp.getKey(), CHANNEL_STATE).ifPresent(
-                channel -> handler.updateState(channel.getUID(), new StringType(stripEnumPrefix(rsp.getState()))));
+                channel -> updateState(channel, new StringType(stripEnumPrefix(rsp.getState()))));
         findChannelByKeyAndField(rsp.getKey(), CHANNEL_VOLUME).ifPresent(
-                channel -> handler.updateState(channel.getUID(), new PercentType(Math.round(rsp.getVolume() * 100f))));
-        findChannelByKeyAndField(rsp.getKey(), CHANNEL_POWER).ifPresent(channel -> handler.updateState(channel.getUID(),
-                rsp.getState() == MediaPlayerState.MEDIA_PLAYER_STATE_OFF ? OnOffType.OFF : OnOffType.ON));
+                channel -> updateState(channel, new PercentType(Math.round(rsp.getVolume() * 100f))));
+        findChannelByKeyAndField(rsp.getKey(), CHANNEL_POWER)
+                .ifPresent(channel -> updateState(channel,
+                        rsp.getState() == MediaPlayerState.MEDIA_PLAYER_STATE_OFF ? OnOffType.OFF : OnOffType.ON));
         findChannelByKeyAndField(rsp.getKey(), CHANNEL_MUTE).ifPresent(
-                channel -> handler.updateState(channel.getUID(), rsp.getMuted() ? OnOffType.ON : OnOffType.OFF));
+                channel -> updateState(channel, rsp.getMuted() ? OnOffType.ON : OnOffType.OFF));
         findChannelByKeyAndField(rsp.getKey(), CHANNEL_REPEAT)
-                .ifPresent(channel -> handler.updateState(channel.getUID(),
+                .ifPresent(channel -> updateState(channel,
                         new StringType(repeatStates.computeIfAbsent(rsp.getKey(), key -> REPEAT_OFF))));
     }
 
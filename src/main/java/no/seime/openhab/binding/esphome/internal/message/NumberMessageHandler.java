@@ -14,7 +14,6 @@ import org.openhab.core.thing.type.ChannelKind;
 import org.openhab.core.thing.type.ChannelType;
 import org.openhab.core.types.Command;
 import org.openhab.core.types.StateDescription;
-import org.openhab.core.types.util.UnitUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,20 +40,15 @@ public class NumberMessageHandler extends AbstractMessageHandler<ListEntitiesNum
         if (command instanceof DecimalType decimalType) {
             value = decimalType.floatValue();
         } else if (command instanceof QuantityType<?> qt) {
-            Configuration configuration = channel.getConfiguration();
-            String unitString = (String) configuration.get("unit");
-            if (unitString != null) {
-                unitString = transformUnit(unitString);
-                Unit<?> unit = UnitUtils.parseUnit(unitString);
-                if (unit != null) {
-                    QuantityType<?> newQt = qt.toUnit(unit);
-                    if (newQt == null) {
-                        logger.warn("[{}] Quantity {} incompatible with unit {} on channel '{}'",
-                                handler.getLogPrefix(), qt, unit, channel.getUID());
-                        return;
-                    }
-                    qt = newQt;
+            Unit<?> unit = converter(channel).getUnit();
+            if (unit != null) {
+                QuantityType<?> newQt = qt.toUnit(unit);
+                if (newQt == null) {
+                    logger.warn("[{}] Quantity {} incompatible with unit {} on channel '{}'", handler.getLogPrefix(),
+                            qt, unit, channel.getUID());
+                    return;
                 }
+                qt = newQt;
             }
             value = qt.floatValue();
         }
@@ -98,7 +92,7 @@ public class NumberMessageHandler extends AbstractMessageHandler<ListEntitiesNum
 
     @Override
     public void handleState(NumberStateResponse rsp) {
-        findChannelByKey(rsp.getKey()).ifPresent(channel -> handler.updateState(channel.getUID(),
-                toNumericState(channel, rsp.getState(), rsp.getMissingState())));
+        findChannelByKey(rsp.getKey())
+                .ifPresent(channel -> updateNumericState(channel, rsp.getState(), rsp.getMissingState()));
     }
 }
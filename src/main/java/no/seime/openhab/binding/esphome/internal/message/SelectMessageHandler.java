@@ -49,7 +49,8 @@ public class SelectMessageHandler extends AbstractMessageHandler<ListEntitiesSel
 
     @Override
     public void handleState(SelectStateResponse rsp) {
-        findChannelByKey(rsp.getKey()).ifPresent(channel -> handler.updateState(channel.getUID(),
-                rsp.getMissingState() ? UnDefType.NULL : new StringType(rsp.getState())));
+        findChannelByKey(rsp.getKey())
+                .ifPresent(channel -> updateState(channel,
+                        rsp.getMissingState() ? UnDefType.NULL : new StringType(rsp.getState())));
     }
 }
@@ -3,9 +3,13 @@ package no.seime.openhab.binding.esphome.internal.message;
 import static org.openhab.core.library.CoreItemFactory.DATETIME;
 import static org.openhab.core.library.CoreItemFactory.STRING;
 
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.openhab.core.config.core.Configuration;
+import org.openhab.core.library.CoreItemFactory;
 import org.openhab.core.thing.Channel;
 import org.openhab.core.thing.binding.builder.ChannelBuilder;
 import org.openhab.core.thing.type.ChannelKind;
@@ -17,6 +21,7 @@ import org.slf4j.LoggerFactory;
 
 import io.esphome.api.ListEntitiesSensorResponse;
 import io.esphome.api.SensorStateResponse;
+import no.seime.openhab.binding.esphome.internal.BindingConstants;
 import no.seime.openhab.binding.esphome.internal.EntityTypes;
 import no.seime.openhab.binding.esphome.internal.comm.ProtocolAPIError;
 import no.seime.openhab.binding.esphome.internal.handler.ESPHomeHandler;
@@ -25,8 +30,16 @@ import no.seime.openhab.binding.esphome.internal.message.deviceclass.SensorNumbe
 
 public class SensorMessageHandler extends AbstractMessageHandler<ListEntitiesSensorResponse, SensorStateResponse> {
 
+    public static final String CHANNEL_AVERAGE = "average";
+    public static final String CHANNEL_MIN = "min";
+    public static final String CHANNEL_MAX = "max";
+    public static final String CHANNEL_COUNT = "count";
+
     private final Logger logger = LoggerFactory.getLogger(SensorMessageHandler.class);
 
+    // Window aggregation per sensor, by entity key
+    private final Map<Integer, WindowAggregator> aggregators = new ConcurrentHashMap<>();
+
     public SensorMessageHandler(ESPHomeHandler handler) {
         super(handler);
     }
@@ -64,7 +77,7 @@ public class SensorMessageHandler extends AbstractMessageHandler<ListEntitiesSen
             itemType = resolveNumericItemType(unitOfMeasurement, rsp.getName(), deviceClass, configuration);
 
             channelType = addChannelType(rsp.getName(), itemType, semanticTags, icon, rsp.getEntityCategory(),
-                    rsp.getDisabledByDefault());
+                    rsp.getDisabledByDefault(), CHANNEL_SENSOR_CONFIG_DESCRIPTION_URI);
             stateDescription = patternStateDescription("%." + rsp.getAccuracyDecimals() + "f "
                     + (unitOfMeasurement.equals("%") ? "%unit%" : unitOfMeasurement), true);
         }
@@ -72,11 +85,86 @@ public class SensorMessageHandler extends AbstractMessageHandler<ListEntitiesSen
                 .withLabel(createChannelLabel(rsp.getName())).withKind(ChannelKind.STATE).withType(channelType.getUID())
                 .withAcceptedItemType(itemType).withConfiguration(configuration).build();
         super.registerChannel(channel, channelType, stateDescription);
+
+        int aggregationWindow = handler.getAggregationWindow();
+        if (aggregationWindow > 0 && !itemType.equals(DATETIME) && !itemType.equals(STRING)) {
+            // Registered after the raw channel, which stays the first channel of the entity
+            registerAggregateChannel(rsp, CHANNEL_AVERAGE, "Average", itemType, semanticTags, icon, configuration,
+                    stateDescription);
+            registerAggregateChannel(rsp, CHANNEL_MIN, "Min", itemType, semanticTags, icon, configuration,
+                    stateDescription);
+            registerAggregateChannel(rsp, CHANNEL_MAX, "Max", itemType, semanticTags, icon, configuration,
+                    stateDescription);
+            registerAggregateChannel(rsp, CHANNEL_COUNT, "Count", CoreItemFactory.NUMBER, null, icon,
+                    configuration(EntityTypes.SENSOR, rsp.getKey(), CHANNEL_COUNT),
+                    patternStateDescription("%d", true));
+            if (!handler.isDeferredEntity(rsp.getKey())) {
+                aggregators.put(rsp.getKey(), new WindowAggregator(TimeUnit.SECONDS.toNanos(aggregationWindow)));
+            }
+        }
+    }
+
+    private void registerAggregateChannel(ListEntitiesSensorResponse rsp, String field, String label, String itemType,
+            Set<String> semanticTags, String icon, Configuration sensorConfiguration,
+            StateDescription stateDescription) {
+        Configuration configuration = new Configuration(sensorConfiguration.getProperties());
+        configuration.put(BindingConstants.CHANNEL_CONFIGURATION_ENTITY_FIELD, field);
+
+        ChannelType channelType = addChannelType(rsp.getName() + " " + label, itemType, semanticTags, icon,
+                rsp.getEntityCategory(), rsp.getDisabledByDefault());
+        Channel channel = ChannelBuilder.create(createChannelUID(rsp.getName(), EntityTypes.SENSOR, field))
+                .withLabel(createChannelLabel(rsp.getName(), label)).withKind(ChannelKind.STATE)
+                .withType(channelType.getUID()).withAcceptedItemType(itemType).withConfiguration(configuration)
+                .build();
+        super.registerChannel(channel, channelType, stateDescription);
+    }
+
+    @Override
+    public void clearChannels() {
+        aggregators.clear();
     }
 
     @Override
     public void handleState(SensorStateResponse rsp) {
-        findChannelByKey(rsp.getKey()).ifPresent(channel -> handler.updateState(channel.getUID(),
-                toNumericState(channel, rsp.getState(), rsp.getMissingState())));
+        findChannelByKey(rsp.getKey())
+                .ifPresent(channel -> updateNumericState(channel, rsp.getState(), rsp.getMissingState()));
+        if (!aggregators.isEmpty() && !rsp.getMissingState() && !Float.isNaN(rsp.getState())) {
+            aggregate(rsp.getKey(), rsp.getState());
+        }
+    }
+
+    private void aggregate(int key, float value) {
+        WindowAggregator aggregator = aggregators.get(key);
+        if (aggregator == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (aggregator.isComplete(now)) {
+            closeWindow(key, aggregator);
+        }
+        if (aggregator.add(value, now)) {
+            // Close the window on time even if the sensor falls silent
+            handler.scheduleEntityTask(key, () -> closeWindowIfComplete(key, aggregator), aggregator.getWindowNanos(),
+                    TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void closeWindowIfComplete(int key, WindowAggregator aggregator) {
+        // Skip aggregators replaced when the channels were rebuilt, and windows already closed by a sample
+        if (aggregators.get(key) == aggregator && aggregator.isComplete(System.nanoTime())) {
+            closeWindow(key, aggregator);
+        }
+    }
+
+    private void closeWindow(int key, WindowAggregator aggregator) {
+        publishAggregate(key, CHANNEL_AVERAGE, aggregator.getAverage());
+        publishAggregate(key, CHANNEL_MIN, aggregator.getMin());
+        publishAggregate(key, CHANNEL_MAX, aggregator.getMax());
+        publishAggregate(key, CHANNEL_COUNT, aggregator.getCount());
+        aggregator.reset();
+    }
+
+    private void publishAggregate(int key, String field, float value) {
+        findChannelByKeyAndField(key, field).ifPresent(channel -> updateNumericState(channel, value, false));
     }
 }
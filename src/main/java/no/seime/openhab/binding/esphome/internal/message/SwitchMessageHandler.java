@@ -47,6 +47,6 @@ public class SwitchMessageHandler extends AbstractMessageHandler<ListEntitiesSwi
 
     public void handleState(SwitchStateResponse rsp) {
         findChannelByKey(rsp.getKey()).ifPresent(
-                channel -> handler.updateState(channel.getUID(), rsp.getState() ? OnOffType.ON : OnOffType.OFF));
+                channel -> updateState(channel, rsp.getState() ? OnOffType.ON : OnOffType.OFF));
     }
 }
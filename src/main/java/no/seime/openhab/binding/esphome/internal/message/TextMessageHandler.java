@@ -51,7 +51,7 @@ public class TextMessageHandler extends AbstractMessageHandler<ListEntitiesTextR
     @Override
     public void handleState(TextStateResponse rsp) {
         findChannelByKey(rsp.getKey()).ifPresent(
-                channel -> handler.updateState(channel.getUID(), toTextState(rsp.getState(), rsp.getMissingState())));
+                channel -> updateState(channel, toTextState(rsp.getState(), rsp.getMissingState())));
     }
 
     protected State toTextState(String state, boolean missingState) {
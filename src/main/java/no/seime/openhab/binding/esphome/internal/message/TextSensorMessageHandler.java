@@ -58,7 +58,7 @@ public class TextSensorMessageHandler
     @Override
     public void handleState(TextSensorStateResponse rsp) {
         findChannelByKey(rsp.getKey()).ifPresent(
-                channel -> handler.updateState(channel.getUID(), toTextState(rsp.getState(), rsp.getMissingState())));
+                channel -> updateState(channel, toTextState(rsp.getState(), rsp.getMissingState())));
     }
 
     protected State toTextState(String state, boolean missingState) {
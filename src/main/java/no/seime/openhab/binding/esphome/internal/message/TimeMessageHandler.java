@@ -61,8 +61,9 @@ public class TimeMessageHandler extends AbstractMessageHandler<ListEntitiesTimeR
 
     @Override
     public void handleState(TimeStateResponse rsp) {
-        findChannelByKey(rsp.getKey()).ifPresent(channel -> handler.updateState(channel.getUID(),
-                toTimeState(rsp.getHour(), rsp.getMinute(), rsp.getSecond(), rsp.getMissingState())));
+        findChannelByKey(rsp.getKey())
+                .ifPresent(channel -> updateState(channel,
+                        toTimeState(rsp.getHour(), rsp.getMinute(), rsp.getSecond(), rsp.getMissingState())));
     }
 
     protected State toTimeState(int hour, int minute, int second, boolean missingState) {
@@ -42,26 +42,28 @@ public class ValveMessageHandler extends AbstractMessageHandler<ListEntitiesValv
 
     @Override
     public void handleCommand(Channel channel, Command command, int key) throws ProtocolAPIError {
-        ValveCommandRequest.Builder builder = ValveCommandRequest.newBuilder().setKey(key);
-
         if (command == StopMoveType.STOP) {
-            builder.setStop(true);
-        } else {
-            if (command instanceof QuantityType<?> number) {
-                builder.setPosition(invert(number.floatValue() / 100));
-            } else if (command instanceof PercentType number) {
-                builder.setPosition(invert(number.floatValue() / 100));
-            } else if (command instanceof DecimalType number) {
-                builder.setPosition(invert(number.floatValue() / 100));
-            } else if (command == UpDownType.UP) {
-                builder.setPosition(1);
-            } else if (command == UpDownType.DOWN) {
-                builder.setPosition(0);
-            }
-            builder.setHasPosition(true);
-
+            // Stop supersedes any movement not yet sent
+            handler.getCommandAggregator().discard(key, ValveCommandRequest.Builder.class);
+            handler.sendMessage(ValveCommandRequest.newBuilder().setKey(key).setStop(true).build());
+            return;
         }
-        handler.sendMessage(builder.build());
+
+        handler.getCommandAggregator().mergeBurst(key, ValveCommandRequest.Builder.class,
+                k -> ValveCommandRequest.newBuilder().setKey(k), builder -> {
+                    if (command instanceof QuantityType<?> number) {
+                        builder.setPosition(invert(number.floatValue() / 100));
+                    } else if (command instanceof PercentType number) {
+                        builder.setPosition(invert(number.floatValue() / 100));
+                    } else if (command instanceof DecimalType number) {
+                        builder.setPosition(invert(number.floatValue() / 100));
+                    } else if (command == UpDownType.UP) {
+                        builder.setPosition(1);
+                    } else if (command == UpDownType.DOWN) {
+                        builder.setPosition(0);
+                    }
+                    builder.setHasPosition(true);
+                });
     }
 
     public void buildChannels(ListEntitiesValveResponse rsp) {
@@ -102,9 +104,9 @@ public class ValveMessageHandler extends AbstractMessageHandler<ListEntitiesValv
 
     public void handleState(ValveStateResponse rsp) {
         findChannelByKeyAndField(rsp.getKey(), CHANNEL_POSITION).ifPresent(
-                channel -> handler.updateState(channel.getUID(), toPercentState(invert(rsp.getPosition()), false)));
-        findChannelByKeyAndField(rsp.getKey(), CHANNEL_CURRENT_OPERATION).ifPresent(channel -> handler
-                .updateState(channel.getUID(), new StringType(stripEnumPrefix(rsp.getCurrentOperation()))));
+                channel -> updateState(channel, toPercentState(invert(rsp.getPosition()), false)));
+        findChannelByKeyAndField(rsp.getKey(), CHANNEL_CURRENT_OPERATION)
+                .ifPresent(channel -> updateState(channel, new StringType(stripEnumPrefix(rsp.getCurrentOperation()))));
     }
 
     protected State toPercentState(float state, boolean missingState) {
@@ -0,0 +1,82 @@
+package no.seime.openhab.binding.esphome.internal.message;
+
+import org.eclipse.jdt.annotation.NonNullByDefault;
+
+/**
+ * Mean, minimum, maximum and sample count of a sensor over a tumbling window, kept in primitive accumulators so that
+ * adding a sample does not allocate.
+ * <p>
+ * A window starts with its first sample and is closed once the window length has passed, by a task scheduled when the
+ * window starts or by the first sample arriving after it, whichever comes first. Only accessed from the packet
+ * processing of the device.
+ *
+ * @author Arne Seime - Initial contribution
+ */
+@NonNullByDefault
+final class WindowAggregator {
+
+    private final long windowNanos;
+
+    private long windowStart;
+    private int count;
+    private double sum;
+    private float min;
+    private float max;
+
+    WindowAggregator(long windowNanos) {
+        this.windowNanos = windowNanos;
+    }
+
+    /**
+     * @return whether the current window has samples and is to be closed before adding a sample taken at {@code now}
+     */
+    boolean isComplete(long now) {
+        return count > 0 && now - windowStart >= windowNanos;
+    }
+
+    /**
+     * @return true if the sample starts a new window
+     */
+    boolean add(float value, long now) {
+        boolean first = count == 0;
+        if (first) {
+            windowStart = now;
+            min = value;
+            max = value;
+        } else {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        sum += value;
+        count++;
+        return first;
+    }
+
+    long getWindowNanos() {
+        return windowNanos;
+    }
+
+    /**
+     * Start a new window, discarding the samples of the current one
+     */
+    void reset() {
+        count = 0;
+        sum = 0;
+    }
+
+    float getAverage() {
+        return count == 0 ? Float.NaN : (float) (sum / count);
+    }
+
+    float getMin() {
+        return count == 0 ? Float.NaN : min;
+    }
+
+    float getMax() {
+        return count == 0 ? Float.NaN : max;
+    }
+
+    int getCount() {
+        return count;
+    }
+}
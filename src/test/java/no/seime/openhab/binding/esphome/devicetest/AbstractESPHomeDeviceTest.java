@@ -30,13 +30,12 @@ import org.openhab.core.thing.internal.ThingImpl;
 import org.openhab.core.types.State;
 import org.osgi.framework.BundleContext;
 
-import com.jano7.executor.KeySequentialExecutor;
-
 import no.seime.openhab.binding.esphome.deviceutil.ESPHomeDeviceRunner;
 import no.seime.openhab.binding.esphome.internal.BindingConstants;
 import no.seime.openhab.binding.esphome.internal.ESPHomeConfiguration;
 import no.seime.openhab.binding.esphome.internal.LogLevel;
 import no.seime.openhab.binding.esphome.internal.comm.ConnectionSelector;
+import no.seime.openhab.binding.esphome.internal.comm.PacketScheduler;
 import no.seime.openhab.binding.esphome.internal.handler.ESPChannelTypeProvider;
 import no.seime.openhab.binding.esphome.internal.handler.ESPHomeHandler;
 import no.seime.openhab.binding.esphome.internal.handler.ESPStateDescriptionProvider;
@@ -95,9 +94,11 @@ public abstract class AbstractESPHomeDeviceTest {
         when(networkAddressService.getPrimaryIpv4HostAddress()).thenReturn("127.0.0.1");
 
         thingHandler = new ESPHomeHandler(thing, selector, channelTypeProvider, stateDescriptionProvider,
-                eventSubscriber, executor, new KeySequentialExecutor(executor), eventPublisher, null, bundleContext,
+                eventSubscriber, executor, new PacketScheduler(executor, 1), eventPublisher, null, bundleContext,
                 audioHTTPServer, networkAddressService);
         thingHandlerCallback = Mockito.mock(ThingHandlerCallback.class);
+        // States are only posted to linked channels
+        when(thingHandlerCallback.isChannelLinked(Mockito.any())).thenReturn(true);
         thingHandler.setCallback(thingHandlerCallback);
 
         when(bundleContext.registerService(eq(ESPHomeHandler.class), eq(thingHandler), Mockito.any())).thenReturn(null);
@@ -2,12 +2,14 @@ package no.seime.openhab.binding.esphome.devicetest;
 
 import static org.awaitility.Awaitility.await;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 
 import java.io.File;
+import java.util.Map;
 
 import org.junit.jupiter.api.Test;
 import org.openhab.core.thing.ChannelUID;
@@ -27,9 +29,11 @@ public class NumberDeviceTest extends AbstractESPHomeDeviceTest {
 
         assertEquals(1, thingHandler.getDynamicChannels().size());
 
-        verify(stateDescriptionProvider, timeout(2000)).setDescription(
-                eq(new ChannelUID(thing.getUID(), "water_total")),
-                argThat((StateDescription stateDescription) -> isWholeGallonsStateDescription(stateDescription)));
+        ChannelUID channelUID = new ChannelUID(thing.getUID(), "water_total");
+        verify(stateDescriptionProvider, timeout(2000)).setDescriptions(eq(thing.getUID()),
+                argThat((Map<ChannelUID, StateDescription> stateDescriptions) -> isWholeGallonsStateDescription(
+                        stateDescriptions.get(channelUID))),
+                any());
     }
 
     private boolean isWholeGallonsStateDescription(StateDescription stateDescription) {
@@ -0,0 +1,80 @@
+package no.seime.openhab.binding.esphome.internal.comm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import io.esphome.api.PingRequest;
+import io.esphome.api.PingResponse;
+import io.esphome.api.SensorStateResponse;
+import no.seime.openhab.binding.esphome.internal.CommunicationListener;
+
+public class EncryptedFrameHelperTest {
+
+    private static final int PING_REQUEST = MessageTypeToClassConverter.getMessageId(PingRequest.class);
+
+    // Packets queued for processing, and tasks handed to the outbound executor
+    private final ArrayDeque<Runnable> processing = new ArrayDeque<>();
+    private final ArrayDeque<Runnable> outbound = new ArrayDeque<>();
+    private final ScheduledExecutorService outboundExecutor = mock(ScheduledExecutorService.class);
+    private final CommunicationListener listener = mock(CommunicationListener.class);
+    private EncryptedFrameHelper helper;
+
+    @BeforeEach
+    public void setUp() throws ProtocolAPIError {
+        doAnswer(invocation -> outbound.add(invocation.getArgument(0))).when(outboundExecutor).execute(any());
+        helper = spy(new EncryptedFrameHelper(mock(ConnectionSelector.class), listener, "", null, "test",
+                new PacketScheduler(processing::add, 1), "device", outboundExecutor, 0));
+        doNothing().when(helper).send(any());
+    }
+
+    @Test
+    public void answersPingOutsidePacketQueue() throws ProtocolAPIError {
+        when(listener.isConnected()).thenReturn(true);
+
+        helper.handleMessage(PING_REQUEST, new byte[0]);
+
+        verify(listener).onAlive();
+        assertTrue(processing.isEmpty());
+        // Not written on the I/O thread
+        verify(helper, never()).send(any());
+        assertEquals(1, outbound.size());
+
+        outbound.poll().run();
+        verify(helper).send(PingResponse.getDefaultInstance());
+    }
+
+    @Test
+    public void ignoresPingBeforeConnected() throws ProtocolAPIError {
+        when(listener.isConnected()).thenReturn(false);
+
+        helper.handleMessage(PING_REQUEST, new byte[0]);
+
+        verify(listener).onAlive();
+        assertTrue(processing.isEmpty());
+        assertTrue(outbound.isEmpty());
+        verify(helper, never()).send(any());
+    }
+
+    @Test
+    public void queuesOtherPacketsForProcessing() {
+        helper.handleMessage(MessageTypeToClassConverter.getMessageId(SensorStateResponse.class), new byte[0]);
+
+        verify(listener).onAlive();
+        assertEquals(1, processing.size());
+        assertTrue(outbound.isEmpty());
+    }
+}
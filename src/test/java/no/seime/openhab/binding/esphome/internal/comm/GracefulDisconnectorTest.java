@@ -0,0 +1,104 @@
+package no.seime.openhab.binding.esphome.internal.comm;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import io.esphome.api.DisconnectRequest;
+import io.esphome.api.DisconnectResponse;
+import no.seime.openhab.binding.esphome.internal.CommunicationListener;
+
+public class GracefulDisconnectorTest {
+
+    // Grace period tasks, run when asked
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+    private GracefulDisconnector disconnector;
+
+    @BeforeEach
+    public void setUp() {
+        when(scheduler.schedule(any(Runnable.class), anyLong(), any())).thenAnswer(invocation -> {
+            scheduled.add(invocation.getArgument(0));
+            return null;
+        });
+        disconnector = new GracefulDisconnector(scheduler);
+    }
+
+    @Test
+    public void closesConnectionWhenDeviceAcknowledges() throws Exception {
+        EncryptedFrameHelper helper = mock(EncryptedFrameHelper.class);
+
+        disconnector.disconnect(helper, "test");
+
+        verify(helper).send(DisconnectRequest.getDefaultInstance());
+        verify(helper, never()).close();
+        listenerOf(helper).onPacket(DisconnectResponse.getDefaultInstance());
+        verify(helper).close();
+    }
+
+    @Test
+    public void closesConnectionAfterGracePeriod() throws Exception {
+        EncryptedFrameHelper helper = mock(EncryptedFrameHelper.class);
+
+        disconnector.disconnect(helper, "test");
+
+        verify(scheduler).schedule(any(Runnable.class), eq(1000L), eq(TimeUnit.MILLISECONDS));
+        verify(helper, never()).close();
+        scheduled.forEach(Runnable::run);
+        verify(helper).close();
+    }
+
+    @Test
+    public void waitsForAllConnectionsWithOneDeadline() {
+        EncryptedFrameHelper first = mock(EncryptedFrameHelper.class);
+        EncryptedFrameHelper second = mock(EncryptedFrameHelper.class);
+        EncryptedFrameHelper third = mock(EncryptedFrameHelper.class);
+        disconnector.disconnect(first, "first");
+        disconnector.disconnect(second, "second");
+        disconnector.disconnect(third, "third");
+
+        // Neither device acknowledges, and the grace period tasks never run
+        long start = System.nanoTime();
+        disconnector.awaitAll(200);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue(elapsedMs >= 190, "Returned before the deadline after " + elapsedMs + " ms");
+        assertTrue(elapsedMs < 600, "Waited per connection instead of once, " + elapsedMs + " ms");
+        verify(first).close();
+        verify(second).close();
+        verify(third).close();
+    }
+
+    @Test
+    public void returnsAtOnceWhenAllConnectionsAreClosed() throws Exception {
+        EncryptedFrameHelper helper = mock(EncryptedFrameHelper.class);
+        disconnector.disconnect(helper, "test");
+        listenerOf(helper).onEndOfStream("closed");
+
+        long start = System.nanoTime();
+        disconnector.awaitAll(10_000);
+
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 1000);
+        verify(helper).close();
+    }
+
+    private CommunicationListener listenerOf(EncryptedFrameHelper helper) {
+        ArgumentCaptor<CommunicationListener> listener = ArgumentCaptor.forClass(CommunicationListener.class);
+        verify(helper).setPacketListener(listener.capture());
+        return listener.getValue();
+    }
+}
@@ -0,0 +1,25 @@
+package no.seime.openhab.binding.esphome.internal.comm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import io.esphome.api.PingRequest;
+import io.esphome.api.SensorStateResponse;
+
+public class MessageTypeToClassConverterTest {
+
+    @Test
+    void resolvesMessageIdFromClass() {
+        assertEquals(25, MessageTypeToClassConverter.getMessageId(SensorStateResponse.class));
+        assertEquals(7, MessageTypeToClassConverter.getMessageId(PingRequest.class));
+    }
+
+    @Test
+    void messageIdsFitInDispatchTable() {
+        assertTrue(MessageTypeToClassConverter.MAX_MESSAGE_ID >= 25);
+        assertEquals(SensorStateResponse.class, new MessageTypeToClassConverter()
+                .getMethod(MessageTypeToClassConverter.getMessageId(SensorStateResponse.class)).getDeclaringClass());
+    }
+}
@@ -0,0 +1,194 @@
+package no.seime.openhab.binding.esphome.internal.comm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.google.protobuf.GeneratedMessage;
+
+import io.esphome.api.BluetoothGATTReadRequest;
+import io.esphome.api.ButtonCommandRequest;
+import io.esphome.api.ExecuteServiceArgument;
+import io.esphome.api.ExecuteServiceRequest;
+import io.esphome.api.HomeAssistantStateResponse;
+import io.esphome.api.LightCommandRequest;
+import io.esphome.api.NumberCommandRequest;
+import io.esphome.api.PingRequest;
+import no.seime.openhab.binding.esphome.internal.comm.OutboundScheduler.OutboundClass;
+
+public class OutboundSchedulerTest {
+
+    // Runs scheduled drains when asked, a second later
+    private final ArrayDeque<Runnable> scheduled = new ArrayDeque<>();
+    private long now;
+    private final ScheduledExecutorService executor = mock(ScheduledExecutorService.class);
+    private final List<GeneratedMessage> written = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        when(executor.schedule(any(Runnable.class), anyLong(), any())).thenAnswer(i -> {
+            scheduled.add(i.getArgument(0));
+            return mock(ScheduledFuture.class);
+        });
+    }
+
+    @Test
+    public void queuesMessagesBeyondBudgetByClass() throws ProtocolAPIError {
+        OutboundScheduler scheduler = new OutboundScheduler(executor, written::add, "test", 1, () -> now);
+
+        scheduler.send(number(1, 10));
+        scheduler.send(BluetoothGATTReadRequest.newBuilder().setAddress(1).build());
+        scheduler.send(HomeAssistantStateResponse.newBuilder().setEntityId("sun.sun").build());
+        scheduler.send(number(2, 20));
+        scheduler.send(PingRequest.getDefaultInstance());
+
+        assertEquals(List.of(number(1, 10), PingRequest.getDefaultInstance()), written);
+        assertEquals(3, scheduler.getQueued());
+
+        runScheduled();
+
+        assertEquals(5, written.size());
+        assertEquals(number(2, 20), written.get(2));
+        assertEquals(HomeAssistantStateResponse.class, written.get(3).getClass());
+        assertEquals(BluetoothGATTReadRequest.class, written.get(4).getClass());
+    }
+
+    @Test
+    public void replacesQueuedCommandForSameEntity() throws ProtocolAPIError {
+        OutboundScheduler scheduler = new OutboundScheduler(executor, written::add, "test", 1, () -> now);
+
+        scheduler.send(number(1, 10));
+        scheduler.send(number(1, 20));
+        scheduler.send(number(2, 30));
+        scheduler.send(number(1, 40));
+        runScheduled();
+
+        assertEquals(List.of(number(1, 10), number(1, 40), number(2, 30)), written);
+        assertEquals(1, scheduler.getReplaced());
+    }
+
+    @Test
+    public void sendsEveryQueuedButtonPress() throws ProtocolAPIError {
+        OutboundScheduler scheduler = new OutboundScheduler(executor, written::add, "test", 1, () -> now);
+        ButtonCommandRequest press = ButtonCommandRequest.newBuilder().setKey(1).build();
+
+        scheduler.send(number(2, 10));
+        scheduler.send(press);
+        scheduler.send(press);
+        runScheduled();
+
+        assertEquals(List.of(number(2, 10), press, press), written);
+        assertEquals(0, scheduler.getReplaced());
+    }
+
+    @Test
+    public void sendsEveryQueuedServiceCall() throws ProtocolAPIError {
+        OutboundScheduler scheduler = new OutboundScheduler(executor, written::add, "test", 1, () -> now);
+        ExecuteServiceRequest first = ExecuteServiceRequest.newBuilder().setKey(1)
+                .addArgs(ExecuteServiceArgument.newBuilder().setInt(1)).build();
+        ExecuteServiceRequest second = ExecuteServiceRequest.newBuilder().setKey(1)
+                .addArgs(ExecuteServiceArgument.newBuilder().setInt(2)).build();
+
+        scheduler.send(number(2, 10));
+        scheduler.send(first);
+        scheduler.send(second);
+        runScheduled();
+
+        assertEquals(List.of(number(2, 10), first, second), written);
+    }
+
+    @Test
+    public void keepsQueuedCommandSettingOtherFields() throws ProtocolAPIError {
+        OutboundScheduler scheduler = new OutboundScheduler(executor, written::add, "test", 1, () -> now);
+        LightCommandRequest effect = LightCommandRequest.newBuilder().setKey(1).setEffect("rainbow").setHasEffect(true)
+                .build();
+        LightCommandRequest off = LightCommandRequest.newBuilder().setKey(1).setState(false).setHasState(true).build();
+
+        scheduler.send(number(2, 10));
+        scheduler.send(effect);
+        scheduler.send(off);
+        runScheduled();
+
+        assertEquals(List.of(number(2, 10), effect, off), written);
+        assertEquals(0, scheduler.getReplaced());
+    }
+
+    @Test
+    public void sendsRightAwayWithoutBudget() throws ProtocolAPIError {
+        OutboundScheduler scheduler = new OutboundScheduler(executor, written::add, "test", 0, () -> now);
+
+        for (int i = 0; i < 10; i++) {
+            scheduler.send(number(1, i));
+        }
+
+        assertEquals(10, written.size());
+        assertEquals(0, scheduler.getQueued());
+    }
+
+    @Test
+    public void dropsQueuedMessagesOnClose() throws ProtocolAPIError {
+        OutboundScheduler scheduler = new OutboundScheduler(executor, written::add, "test", 1, () -> now);
+        scheduler.send(number(1, 10));
+        scheduler.send(number(2, 20));
+
+        scheduler.close();
+        runScheduled();
+
+        assertEquals(List.of(number(1, 10)), written);
+    }
+
+    @Test
+    public void writesBatchAtOnceWithinBudget() throws ProtocolAPIError {
+        List<List<GeneratedMessage>> batches = new ArrayList<>();
+        OutboundScheduler scheduler = new OutboundScheduler(executor, new OutboundScheduler.MessageWriter() {
+            @Override
+            public void write(GeneratedMessage message) {
+                written.add(message);
+            }
+
+            @Override
+            public void writeAll(List<GeneratedMessage> messages) {
+                batches.add(messages);
+            }
+        }, "test", 3, () -> now);
+
+        scheduler.sendAll(List.of(number(1, 10), number(2, 20)));
+        scheduler.sendAll(List.of(number(3, 30), number(4, 40)));
+        runScheduled();
+
+        assertEquals(List.of(List.of(number(1, 10), number(2, 20))), batches);
+        assertEquals(List.of(number(3, 30), number(4, 40)), written);
+    }
+
+    @Test
+    public void classifiesMessages() {
+        assertEquals(OutboundClass.IMMEDIATE, OutboundClass.of(PingRequest.getDefaultInstance()));
+        assertEquals(OutboundClass.COMMAND, OutboundClass.of(number(1, 1)));
+        assertEquals(OutboundClass.STATE, OutboundClass.of(HomeAssistantStateResponse.getDefaultInstance()));
+        assertEquals(OutboundClass.BULK, OutboundClass.of(BluetoothGATTReadRequest.getDefaultInstance()));
+    }
+
+    private static NumberCommandRequest number(int key, float state) {
+        return NumberCommandRequest.newBuilder().setKey(key).setState(state).build();
+    }
+
+    private void runScheduled() {
+        Runnable task;
+        while ((task = scheduled.poll()) != null) {
+            now += TimeUnit.SECONDS.toNanos(1);
+            task.run();
+        }
+    }
+}
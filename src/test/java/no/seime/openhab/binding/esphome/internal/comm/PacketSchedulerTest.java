@@ -0,0 +1,195 @@
+package no.seime.openhab.binding.esphome.internal.comm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import io.esphome.api.BluetoothLEAdvertisementResponse;
+import io.esphome.api.PingRequest;
+import io.esphome.api.SensorStateResponse;
+import no.seime.openhab.binding.esphome.internal.comm.PacketScheduler.PacketClass;
+
+public class PacketSchedulerTest {
+
+    // Runs submitted tasks when asked, so that the order of processing is deterministic
+    private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    private final PacketScheduler scheduler = new PacketScheduler(tasks::add, 1);
+    private final List<String> processed = new ArrayList<>();
+
+    @Test
+    public void interleavesFloodingDeviceWithOtherDevices() {
+        for (int i = 0; i < 5; i++) {
+            queue("proxy", "advert" + i, PacketClass.BULK);
+        }
+        queue("sensor", "ping", PacketClass.CONTROL);
+        queue("sensor", "state", PacketClass.STATE);
+
+        runAll();
+
+        assertEquals(List.of("advert0", "ping", "state", "advert1", "advert2", "advert3", "advert4"), processed);
+    }
+
+    @Test
+    public void keepsOrderOfEachDeviceAcrossTurns() {
+        scheduler.setWeights(1, 1, 1);
+        for (int i = 0; i < 3; i++) {
+            queue("a", "a" + i, PacketClass.CONTROL);
+            queue("b", "b" + i, PacketClass.CONTROL);
+        }
+
+        runAll();
+
+        assertEquals(List.of("a0", "b0", "a1", "b1", "a2", "b2"), processed);
+    }
+
+    @Test
+    public void reportsQueueWaitSincePreviousCall() {
+        assertNull(scheduler.getQueueWait("device"));
+        queue("device", "state", PacketClass.STATE);
+        runAll();
+
+        PacketScheduler.QueueWait queueWait = scheduler.getQueueWait("device");
+        assertNotNull(queueWait);
+        assertEquals(1, queueWait.packets());
+        assertNull(scheduler.getQueueWait("device"));
+    }
+
+    @Test
+    public void forgetsQueuesOfDeviceAndItsEntities() {
+        queue("device", "list", PacketClass.STATE);
+        queueEntity("device", 7, "state", PacketClass.STATE);
+        queue("other", "state", PacketClass.STATE);
+        runAll();
+
+        scheduler.remove("device");
+
+        assertNull(scheduler.getQueueWait("device"));
+        assertNotNull(scheduler.getQueueWait("other"));
+    }
+
+    @Test
+    public void chargesEntityPacketsToTheirDevice() {
+        scheduler.setWeights(1, 1, 1);
+        for (int i = 0; i < 3; i++) {
+            queueEntity("parallel", i, "e" + i, PacketClass.STATE);
+            queue("plain", "p" + i, PacketClass.STATE);
+        }
+
+        runAll();
+
+        // One turn each, as if the entity queues were one queue
+        assertEquals(List.of("e0", "p0", "e1", "p1", "e2", "p2"), processed);
+        PacketScheduler.QueueWait queueWait = scheduler.getQueueWait("parallel");
+        assertNotNull(queueWait);
+        assertEquals(3, queueWait.packets());
+    }
+
+    @Test
+    public void keepsOrderOfEachEntity() {
+        queue("device", "list", PacketClass.STATE);
+        queueEntity("device", 1, "a0", PacketClass.STATE);
+        queueEntity("device", 2, "b0", PacketClass.STATE);
+        queueEntity("device", 1, "a1", PacketClass.STATE);
+
+        runAll();
+
+        assertEquals(List.of("list", "a0", "a1", "b0"), processed);
+    }
+
+    @Test
+    public void processesEntitiesConcurrentlyInTurnOfDevice() {
+        PacketScheduler parallel = new PacketScheduler(tasks::add, 2);
+        parallel.execute("device", 1, () -> {
+            // Entity 2 is taken by a second worker while this one is busy
+            processed.add("a start");
+            runAll();
+            processed.add("a end");
+            return PacketClass.STATE;
+        });
+        parallel.execute("device", 2, () -> {
+            processed.add("b");
+            return PacketClass.STATE;
+        });
+
+        runAll();
+
+        assertEquals(List.of("a start", "b", "a end"), processed);
+    }
+
+    @Test
+    public void keepsOrderOfEachDeviceOnSeveralThreads() throws InterruptedException {
+        int devices = 16;
+        int packetsPerDevice = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            PacketScheduler concurrent = new PacketScheduler(executor, 4);
+            List<List<Integer>> processedByDevice = new ArrayList<>();
+            for (int device = 0; device < devices; device++) {
+                processedByDevice.add(Collections.synchronizedList(new ArrayList<>()));
+            }
+            CountDownLatch done = new CountDownLatch(devices * packetsPerDevice);
+            for (int packet = 0; packet < packetsPerDevice; packet++) {
+                for (int device = 0; device < devices; device++) {
+                    List<Integer> packets = processedByDevice.get(device);
+                    int sequence = packet;
+                    concurrent.execute("device" + device, () -> {
+                        packets.add(sequence);
+                        done.countDown();
+                        return PacketClass.STATE;
+                    });
+                }
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+
+            for (List<Integer> packets : processedByDevice) {
+                assertEquals(IntStream.range(0, packetsPerDevice).boxed().toList(), packets);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void classifiesMessages() {
+        assertEquals(PacketClass.CONTROL, PacketClass.of(MessageTypeToClassConverter.getMessageId(PingRequest.class)));
+        assertEquals(PacketClass.STATE,
+                PacketClass.of(MessageTypeToClassConverter.getMessageId(SensorStateResponse.class)));
+        assertEquals(PacketClass.BULK,
+                PacketClass.of(MessageTypeToClassConverter.getMessageId(BluetoothLEAdvertisementResponse.class)));
+        assertEquals(PacketClass.STATE, PacketClass.of(-1));
+    }
+
+    private void queue(String key, String packet, PacketClass packetClass) {
+        scheduler.execute(key, () -> {
+            processed.add(packet);
+            return packetClass;
+        });
+    }
+
+    private void queueEntity(String key, int entity, String packet, PacketClass packetClass) {
+        scheduler.execute(key, entity, () -> {
+            processed.add(packet);
+            return packetClass;
+        });
+    }
+
+    private void runAll() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+}
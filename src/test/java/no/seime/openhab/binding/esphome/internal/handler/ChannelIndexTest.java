@@ -0,0 +1,103 @@
+package no.seime.openhab.binding.esphome.internal.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.openhab.core.config.core.Configuration;
+import org.openhab.core.thing.Channel;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.thing.binding.builder.ChannelBuilder;
+
+import no.seime.openhab.binding.esphome.internal.BindingConstants;
+
+class ChannelIndexTest {
+
+    private final ThingUID thingUID = new ThingUID(BindingConstants.THING_TYPE_DEVICE, "device");
+
+    @Test
+    void findsChannelsByKeyFieldAndId() {
+        Channel sensor = channel("sensor", 42, null);
+        Channel mode = channel("climate_mode", -7, "mode");
+        Channel target = channel("climate_target", -7, "target_temperature");
+
+        ChannelIndex index = new ChannelIndex(List.of(sensor, mode, target));
+
+        assertEquals(sensor, index.get(42));
+        assertEquals(mode, index.get(-7));
+        assertEquals(target, index.get(-7, "target_temperature"));
+        assertEquals(mode, index.get(-7, "mode"));
+        assertNull(index.get(-7, "preset"));
+        assertNull(index.get(43));
+        assertEquals(target, index.get("climate_target"));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    void handlesCollidingKeys() {
+        List<Channel> channels = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            channels.add(channel("channel_" + i, i << 16, null));
+        }
+
+        ChannelIndex index = new ChannelIndex(channels);
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(channels.get(i), index.get(i << 16));
+        }
+        assertNull(index.get(1));
+    }
+
+    @Test
+    void returnsOnlyLinkedChannelsForStateUpdates() {
+        Channel sensor = channel("sensor", 42, null);
+        Channel mode = channel("climate_mode", -7, "mode");
+        Channel target = channel("climate_target", -7, "target_temperature");
+
+        ChannelIndex index = new ChannelIndex(List.of(sensor, mode, target),
+                channelUID -> channelUID.getId().equals("climate_target"));
+
+        assertNull(index.getLinked(42));
+        assertEquals(sensor, index.get(42));
+        assertNull(index.getLinked(-7, "mode"));
+        assertEquals(target, index.getLinked(-7, "target_temperature"));
+    }
+
+    @Test
+    void updatesLinkOfSingleChannel() {
+        Channel sensor = channel("sensor", 42, null);
+        Channel mode = channel("climate_mode", -7, "mode");
+
+        ChannelIndex index = new ChannelIndex(List.of(sensor, mode), channelUID -> false);
+
+        assertTrue(index.setLinked("climate_mode", true));
+        assertEquals(mode, index.getLinked(-7, "mode"));
+        assertNull(index.getLinked(42));
+
+        assertTrue(index.setLinked("climate_mode", false));
+        assertNull(index.getLinked(-7, "mode"));
+        assertFalse(index.setLinked("unknown", true));
+    }
+
+    @Test
+    void emptyIndexFindsNothing() {
+        assertNull(ChannelIndex.EMPTY.get(0));
+        assertNull(ChannelIndex.EMPTY.get(0, "field"));
+        assertNull(ChannelIndex.EMPTY.get("channel"));
+    }
+
+    private Channel channel(String id, int key, String field) {
+        Configuration configuration = new Configuration();
+        configuration.put(BindingConstants.CHANNEL_CONFIGURATION_ENTITY_KEY, key);
+        if (field != null) {
+            configuration.put(BindingConstants.CHANNEL_CONFIGURATION_ENTITY_FIELD, field);
+        }
+        return ChannelBuilder.create(new ChannelUID(thingUID, id)).withConfiguration(configuration).build();
+    }
+}
@@ -0,0 +1,73 @@
+package no.seime.openhab.binding.esphome.internal.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.types.UnDefType;
+
+class ChannelStateStoreTest {
+
+    private final ChannelStateStore store = new ChannelStateStore();
+
+    @Test
+    void returnsLastRecordedStatePerChannel() {
+        assertNull(store.get("sensor", DecimalType::new));
+
+        store.recordNumber("sensor", 21.5f);
+        store.recordState("switch", OnOffType.ON);
+        assertEquals(new DecimalType(21.5), store.get("sensor", DecimalType::new));
+        assertEquals(OnOffType.ON, store.get("switch", DecimalType::new));
+
+        store.recordState("sensor", UnDefType.UNDEF);
+        assertEquals(UnDefType.UNDEF, store.get("sensor", DecimalType::new));
+
+        store.clear();
+        assertNull(store.get("switch", DecimalType::new));
+    }
+
+    @Test
+    void growsBeyondInitialCapacity() {
+        for (int i = 0; i < 100; i++) {
+            store.recordNumber("sensor" + i, i);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(new DecimalType(i), store.get("sensor" + i, DecimalType::new));
+        }
+    }
+
+    @Test
+    void internsStrings() {
+        store.recordState("first", new StringType("idle"));
+        store.recordState("second", new StringType("idle"));
+        assertSame(store.get("first", DecimalType::new), store.get("second", DecimalType::new));
+    }
+
+    @Test
+    void onlyReturnsFreshStatesWhenAskedFor() throws InterruptedException {
+        store.recordState("switch", OnOffType.ON);
+        assertEquals(OnOffType.ON, store.getConfirmed("switch", TimeUnit.SECONDS.toNanos(10), DecimalType::new));
+
+        Thread.sleep(5);
+        assertNull(store.getConfirmed("switch", TimeUnit.MILLISECONDS.toNanos(1), DecimalType::new));
+    }
+
+    @Test
+    void stateIsUnconfirmedFromCommandUntilReportedAgain() {
+        store.recordState("switch", OnOffType.ON);
+        store.recordCommand("switch");
+
+        assertNull(store.getConfirmed("switch", Long.MAX_VALUE, DecimalType::new));
+        // Still answers a REFRESH
+        assertEquals(OnOffType.ON, store.get("switch", DecimalType::new));
+
+        store.recordState("switch", OnOffType.OFF);
+        assertEquals(OnOffType.OFF, store.getConfirmed("switch", Long.MAX_VALUE, DecimalType::new));
+    }
+}
@@ -0,0 +1,52 @@
+package no.seime.openhab.binding.esphome.internal.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.openhab.core.library.types.HSBType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.PercentType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.library.types.UpDownType;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.ThingUID;
+
+import no.seime.openhab.binding.esphome.internal.handler.CommandBatchService.ChannelCommand;
+
+public class CommandBatchServiceTest {
+
+    @Test
+    public void groupsCommandsByDevice() {
+        ESPHomeHandler kitchen = mock(ESPHomeHandler.class);
+        ESPHomeHandler hall = mock(ESPHomeHandler.class);
+        Map<ThingUID, ESPHomeHandler> handlers = Map.of(new ThingUID("esphome:device:kitchen"), kitchen,
+                new ThingUID("esphome:device:hall"), hall);
+        CommandBatchService service = new CommandBatchService(handlers::get, Runnable::run);
+
+        ChannelCommand kitchenLight = new ChannelCommand(new ChannelUID("esphome:device:kitchen:light"), OnOffType.ON);
+        ChannelCommand hallLight = new ChannelCommand(new ChannelUID("esphome:device:hall:light"), OnOffType.OFF);
+        ChannelCommand kitchenFan = new ChannelCommand(new ChannelUID("esphome:device:kitchen:fan"), OnOffType.ON);
+        ChannelCommand unknown = new ChannelCommand(new ChannelUID("esphome:device:garage:light"), OnOffType.ON);
+
+        service.sendCommands(List.of(kitchenLight, hallLight, kitchenFan, unknown)).join();
+
+        verify(kitchen).handleCommandBatch(List.of(kitchenLight, kitchenFan));
+        verify(hall).handleCommandBatch(List.of(hallLight));
+    }
+
+    @Test
+    public void parsesCommandsByItemType() {
+        assertEquals(OnOffType.ON, CommandBatchService.parseCommand("Switch", "ON"));
+        assertEquals(new PercentType(40), CommandBatchService.parseCommand("Dimmer", "40"));
+        assertEquals(new HSBType("120,100,50"), CommandBatchService.parseCommand("Color", "120,100,50"));
+        assertEquals(UpDownType.UP, CommandBatchService.parseCommand("Rollershutter", "UP"));
+        assertEquals(new StringType("rainbow"), CommandBatchService.parseCommand("String", "rainbow"));
+        assertNull(CommandBatchService.parseCommand("Switch", "rainbow"));
+    }
+}
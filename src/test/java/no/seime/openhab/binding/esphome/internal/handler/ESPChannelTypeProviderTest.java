@@ -0,0 +1,115 @@
+package no.seime.openhab.binding.esphome.internal.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.openhab.core.storage.Storage;
+import org.openhab.core.storage.StorageService;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.thing.type.ChannelType;
+import org.openhab.core.thing.type.ChannelTypeBuilder;
+import org.openhab.core.thing.type.ChannelTypeUID;
+
+import no.seime.openhab.binding.esphome.internal.BindingConstants;
+
+@ExtendWith(MockitoExtension.class)
+class ESPChannelTypeProviderTest {
+
+    @Mock
+    private StorageService storageService;
+
+    private ESPChannelTypeProvider provider;
+
+    @BeforeEach
+    void setUp() {
+        when(storageService.getStorage(anyString(), any())).thenAnswer(invocation -> new MapStorage<>());
+        provider = new ESPChannelTypeProvider(storageService);
+    }
+
+    @Test
+    void replacesChannelTypesForThing() {
+        ThingUID thingUID = new ThingUID(BindingConstants.THING_TYPE_DEVICE, "kitchen");
+        ChannelType first = channelType("kitchen");
+        ChannelType second = channelType("kitchen");
+
+        provider.putChannelTypesForThing(thingUID, List.of(first));
+        provider.putChannelTypesForThing(thingUID, List.of(second));
+
+        assertNull(provider.getChannelType(first.getUID(), null));
+        assertNotNull(provider.getChannelType(second.getUID(), null));
+        assertEquals(1, provider.getChannelTypes(null).size());
+    }
+
+    @Test
+    void onlyRemovesChannelTypesOfGivenThing() {
+        ThingUID kitchen = new ThingUID(BindingConstants.THING_TYPE_DEVICE, "kitchen");
+        ThingUID kitchenSink = new ThingUID(BindingConstants.THING_TYPE_DEVICE, "kitchen_sink");
+        ChannelType kitchenType = channelType("kitchen");
+        ChannelType kitchenSinkType = channelType("kitchen_sink");
+
+        provider.putChannelTypesForThing(kitchen, List.of(kitchenType));
+        provider.putChannelTypesForThing(kitchenSink, List.of(kitchenSinkType));
+
+        provider.removeChannelTypesForThing(kitchen);
+
+        assertNull(provider.getChannelType(kitchenType.getUID(), null));
+        assertNotNull(provider.getChannelType(kitchenSinkType.getUID(), null));
+    }
+
+    private static ChannelType channelType(String thingId) {
+        return ChannelTypeBuilder
+                .state(new ChannelTypeUID(BindingConstants.BINDING_ID, thingId + "_" + UUID.randomUUID()), "Label",
+                        "Switch")
+                .build();
+    }
+
+    private static class MapStorage<T> implements Storage<T> {
+        private final Map<String, T> map = new ConcurrentHashMap<>();
+
+        @Override
+        public @Nullable T put(String key, @Nullable T value) {
+            return value == null ? map.remove(key) : map.put(key, value);
+        }
+
+        @Override
+        public @Nullable T remove(String key) {
+            return map.remove(key);
+        }
+
+        @Override
+        public boolean containsKey(String key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public @Nullable T get(String key) {
+            return map.get(key);
+        }
+
+        @Override
+        public Collection<String> getKeys() {
+            return map.keySet();
+        }
+
+        @Override
+        public Collection<@Nullable T> getValues() {
+            return List.copyOf(map.values());
+        }
+    }
+}
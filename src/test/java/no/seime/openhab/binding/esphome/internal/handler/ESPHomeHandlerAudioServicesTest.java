@@ -15,6 +15,7 @@ import java.lang.reflect.Method;
 import java.util.Dictionary;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -39,8 +40,6 @@ import org.openhab.core.thing.internal.ThingImpl;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceRegistration;
 
-import com.jano7.executor.KeySequentialExecutor;
-
 import io.esphome.api.DeviceInfoResponse;
 import io.esphome.api.ListEntitiesDoneResponse;
 import io.esphome.api.ListEntitiesMediaPlayerResponse;
@@ -52,6 +51,7 @@ import io.esphome.api.MediaPlayerSupportedFormat;
 import no.seime.openhab.binding.esphome.internal.BindingConstants;
 import no.seime.openhab.binding.esphome.internal.comm.ConnectionSelector;
 import no.seime.openhab.binding.esphome.internal.comm.EncryptedFrameHelper;
+import no.seime.openhab.binding.esphome.internal.comm.PacketScheduler;
 import no.seime.openhab.binding.esphome.internal.handler.ESPHomeHandler.VoiceAssistantFeature;
 import no.seime.openhab.binding.esphome.internal.message.MediaPlayerMessageHandler.MediaPlayerFeature;
 import no.seime.openhab.binding.esphome.internal.message.statesubscription.ESPHomeEventSubscriber;
@@ -95,10 +95,12 @@ class ESPHomeHandlerAudioServicesTest {
 
         handler = new ESPHomeHandler(new ThingImpl(BindingConstants.THING_TYPE_DEVICE, "device"),
                 new ConnectionSelector(), channelTypeProvider, stateDescriptionProvider, eventSubscriber, executor,
-                new KeySequentialExecutor(packetProcessorExecutor), eventPublisher, null, bundleContext,
+                new PacketScheduler(packetProcessorExecutor, 1), eventPublisher, null, bundleContext,
                 audioHTTPServer, networkAddressService);
+        // States are only posted to linked channels
+        Mockito.lenient().when(callback.isChannelLinked(any())).thenReturn(true);
         handler.setCallback(callback);
-        setField("connectionState", enumValue(getFieldType("connectionState"), "CONNECTED"));
+        setConnectionState("CONNECTED");
         setField("frameHelper", frameHelper);
     }
 
@@ -409,10 +411,12 @@ class ESPHomeHandlerAudioServicesTest {
         field.set(handler, value);
     }
 
-    private Class<?> getFieldType(String name) throws Exception {
-        Field field = ESPHomeHandler.class.getDeclaredField(name);
+    @SuppressWarnings("unchecked")
+    private void setConnectionState(String name) throws Exception {
+        Field field = ESPHomeHandler.class.getDeclaredField("connectionState");
         field.setAccessible(true);
-        return field.getType();
+        Class<?> stateType = Class.forName(ESPHomeHandler.class.getName() + "$ConnectionState");
+        ((AtomicReference<Object>) field.get(handler)).set(enumValue(stateType, name));
     }
 
     @SuppressWarnings({ "rawtypes", "unchecked" })
@@ -0,0 +1,97 @@
+package no.seime.openhab.binding.esphome.internal.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.openhab.core.audio.AudioHTTPServer;
+import org.openhab.core.events.EventPublisher;
+import org.openhab.core.net.NetworkAddressService;
+import org.openhab.core.thing.internal.ThingImpl;
+import org.osgi.framework.BundleContext;
+
+import io.esphome.api.ListEntitiesSensorResponse;
+import no.seime.openhab.binding.esphome.internal.BindingConstants;
+import no.seime.openhab.binding.esphome.internal.comm.ConnectionSelector;
+import no.seime.openhab.binding.esphome.internal.comm.PacketScheduler;
+import no.seime.openhab.binding.esphome.internal.comm.ProtocolAPIError;
+import no.seime.openhab.binding.esphome.internal.message.AbstractMessageHandler;
+import no.seime.openhab.binding.esphome.internal.message.SensorMessageHandler;
+import no.seime.openhab.binding.esphome.internal.message.statesubscription.ESPHomeEventSubscriber;
+
+/**
+ * Keeps the fixed per-device cost of a handler in check: nothing that depends on the entities of a device should be
+ * allocated before the device reports such an entity.
+ */
+@ExtendWith(MockitoExtension.class)
+class ESPHomeHandlerFootprintTest {
+
+    @Mock
+    private ESPChannelTypeProvider channelTypeProvider;
+    @Mock
+    private ESPStateDescriptionProvider stateDescriptionProvider;
+    @Mock
+    private ESPHomeEventSubscriber eventSubscriber;
+    @Mock
+    private EventPublisher eventPublisher;
+    @Mock
+    private BundleContext bundleContext;
+    @Mock
+    private AudioHTTPServer audioHTTPServer;
+    @Mock
+    private NetworkAddressService networkAddressService;
+
+    private ESPHomeHandler handler;
+    private MonitoredScheduledThreadPoolExecutor executor;
+    private ExecutorService packetProcessorExecutor;
+
+    @BeforeEach
+    void setUp() {
+        ThingImpl thing = new ThingImpl(BindingConstants.THING_TYPE_DEVICE, "device");
+        executor = new MonitoredScheduledThreadPoolExecutor(1, Executors.defaultThreadFactory(), 1000);
+        packetProcessorExecutor = Executors.newSingleThreadExecutor();
+        handler = new ESPHomeHandler(thing, new ConnectionSelector(), channelTypeProvider, stateDescriptionProvider,
+                eventSubscriber, executor, new PacketScheduler(packetProcessorExecutor, 1), eventPublisher, null,
+                bundleContext, audioHTTPServer, networkAddressService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        packetProcessorExecutor.shutdownNow();
+    }
+
+    @Test
+    void createsNoMessageHandlersUpFront() {
+        assertTrue(handler.getCreatedMessageHandlers().isEmpty());
+    }
+
+    @Test
+    void createsMessageHandlerOnFirstEntityOfItsType() throws ProtocolAPIError {
+        handler.handleConnected(ListEntitiesSensorResponse.newBuilder().setKey(1).setName("Temperature")
+                .setObjectId("temperature").build());
+        handler.handleConnected(ListEntitiesSensorResponse.newBuilder().setKey(2).setName("Humidity")
+                .setObjectId("humidity").build());
+
+        List<AbstractMessageHandler<?, ?>> messageHandlers = handler.getCreatedMessageHandlers();
+        assertEquals(1, messageHandlers.size());
+        assertInstanceOf(SensorMessageHandler.class, messageHandlers.get(0));
+        assertFalse(handler.hasMediaPlayerState());
+    }
+
+    @Test
+    void allocatesNoMediaPlayerStateUpFront() {
+        assertFalse(handler.hasMediaPlayerState());
+    }
+}
@@ -27,11 +27,10 @@ import org.openhab.core.thing.binding.ThingHandlerCallback;
 import org.openhab.core.thing.internal.ThingImpl;
 import org.osgi.framework.BundleContext;
 
-import com.jano7.executor.KeySequentialExecutor;
-
 import io.esphome.api.DeviceInfoResponse;
 import no.seime.openhab.binding.esphome.internal.BindingConstants;
 import no.seime.openhab.binding.esphome.internal.comm.ConnectionSelector;
+import no.seime.openhab.binding.esphome.internal.comm.PacketScheduler;
 import no.seime.openhab.binding.esphome.internal.comm.ProtocolAPIError;
 import no.seime.openhab.binding.esphome.internal.message.statesubscription.ESPHomeEventSubscriber;
 
@@ -66,7 +65,7 @@ class ESPHomeHandlerLastKnownIpAddressTest {
         executor = new MonitoredScheduledThreadPoolExecutor(1, Executors.defaultThreadFactory(), 1000);
         packetProcessorExecutor = Executors.newSingleThreadExecutor();
         handler = new ESPHomeHandler(thing, new ConnectionSelector(), channelTypeProvider, stateDescriptionProvider,
-                eventSubscriber, executor, new KeySequentialExecutor(packetProcessorExecutor), eventPublisher, null,
+                eventSubscriber, executor, new PacketScheduler(packetProcessorExecutor, 1), eventPublisher, null,
                 bundleContext, audioHTTPServer, networkAddressService);
         handler.setCallback(callback);
     }
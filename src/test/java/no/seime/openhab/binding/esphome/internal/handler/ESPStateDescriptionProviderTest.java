@@ -0,0 +1,83 @@
+package no.seime.openhab.binding.esphome.internal.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.openhab.core.thing.Channel;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.thing.binding.builder.ChannelBuilder;
+import org.openhab.core.types.CommandDescription;
+import org.openhab.core.types.CommandDescriptionBuilder;
+import org.openhab.core.types.CommandOption;
+import org.openhab.core.types.StateDescription;
+import org.openhab.core.types.StateDescriptionFragmentBuilder;
+
+import no.seime.openhab.binding.esphome.internal.BindingConstants;
+
+class ESPStateDescriptionProviderTest {
+
+    private final ESPStateDescriptionProvider provider = new ESPStateDescriptionProvider();
+    private final ThingUID kitchen = new ThingUID(BindingConstants.THING_TYPE_DEVICE, "kitchen");
+    private final ThingUID hallway = new ThingUID(BindingConstants.THING_TYPE_DEVICE, "hallway");
+
+    @Test
+    void replacesAllDescriptionsOfThing() {
+        Channel temperature = channel(kitchen, "temperature");
+        Channel humidity = channel(kitchen, "humidity");
+        Channel hallwayTemperature = channel(hallway, "temperature");
+        provider.setDescriptions(kitchen, Map.of(temperature.getUID(), stateDescription("%.1f %unit%"),
+                humidity.getUID(), stateDescription("%.0f %%")), Map.of());
+        provider.setDescriptions(hallway, Map.of(hallwayTemperature.getUID(), stateDescription("%.1f %unit%")),
+                Map.of());
+
+        provider.setDescriptions(kitchen, Map.of(temperature.getUID(), stateDescription("%.2f %unit%")), Map.of());
+
+        assertEquals("%.2f %unit%", provider.getStateDescription(temperature, null, null).getPattern());
+        assertNull(provider.getStateDescription(humidity, null, null));
+        assertEquals("%.1f %unit%", provider.getStateDescription(hallwayTemperature, null, null).getPattern());
+
+        provider.removeDescriptionsForThing(kitchen);
+
+        assertNull(provider.getStateDescription(temperature, null, null));
+        assertEquals("%.1f %unit%", provider.getStateDescription(hallwayTemperature, null, null).getPattern());
+    }
+
+    @Test
+    void sharesEqualDescriptionsBetweenThings() {
+        Channel kitchenMode = channel(kitchen, "mode");
+        Channel hallwayMode = channel(hallway, "mode");
+        Channel kitchenTemperature = channel(kitchen, "temperature");
+        Channel hallwayTemperature = channel(hallway, "temperature");
+
+        provider.setDescriptions(kitchen, Map.of(kitchenTemperature.getUID(), stateDescription("%.1f %unit%")),
+                Map.of(kitchenMode.getUID(), commandDescription("HEAT", "COOL")));
+        provider.setDescriptions(hallway, Map.of(hallwayTemperature.getUID(), stateDescription("%.1f %unit%")),
+                Map.of(hallwayMode.getUID(), commandDescription("HEAT", "COOL")));
+
+        assertSame(provider.getStateDescription(kitchenTemperature, null, null),
+                provider.getStateDescription(hallwayTemperature, null, null));
+        CommandDescription kitchenCommands = provider.getCommandDescription(kitchenMode, null, null);
+        assertSame(kitchenCommands, provider.getCommandDescription(hallwayMode, null, null));
+        assertEquals(2, kitchenCommands.getCommandOptions().size());
+    }
+
+    private Channel channel(ThingUID thingUID, String id) {
+        return ChannelBuilder.create(new ChannelUID(thingUID, id)).build();
+    }
+
+    private StateDescription stateDescription(String pattern) {
+        return StateDescriptionFragmentBuilder.create().withPattern(pattern).build().toStateDescription();
+    }
+
+    private CommandDescription commandDescription(String... commands) {
+        CommandDescriptionBuilder builder = CommandDescriptionBuilder.create();
+        List.of(commands).forEach(command -> builder.withCommandOption(new CommandOption(command, command)));
+        return builder.build();
+    }
+}
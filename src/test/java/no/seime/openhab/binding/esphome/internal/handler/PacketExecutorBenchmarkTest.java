@@ -0,0 +1,90 @@
+package no.seime.openhab.binding.esphome.internal.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import no.seime.openhab.binding.esphome.internal.comm.PacketScheduler;
+import no.seime.openhab.binding.esphome.internal.comm.PacketScheduler.PacketClass;
+
+/**
+ * Compares packet processing on the shared scheduler with processing on virtual threads, for devices that block
+ * briefly on every packet as when posting to the event bus. Both must keep the packets of each device in order.
+ * <p>
+ * Only logs timings, and is not part of the default build. Run with {@code mvn test -DexcludedGroups=}.
+ */
+@Tag("benchmark")
+class PacketExecutorBenchmarkTest {
+
+    private static final int DEVICES = 16;
+    private static final int PACKETS_PER_DEVICE = 50;
+    private static final long BLOCKING_MS = 2;
+
+    private final Logger logger = LoggerFactory.getLogger(PacketExecutorBenchmarkTest.class);
+
+    @Test
+    void sharedScheduler() throws InterruptedException {
+        ExecutorService executor = new MonitoredScheduledThreadPoolExecutor(4, Executors.defaultThreadFactory(), 300);
+        try {
+            run("shared scheduler", new PacketScheduler(executor, 4));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void virtualThreads() throws InterruptedException {
+        ExecutorService executor = ESPHomeHandlerFactory.createVirtualThreadExecutor();
+        try {
+            run("virtual threads", new PacketScheduler(executor, Integer.MAX_VALUE));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void run(String name, PacketScheduler packetExecutor) throws InterruptedException {
+        List<List<Integer>> processed = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(DEVICES * PACKETS_PER_DEVICE);
+        long start = System.nanoTime();
+        for (int device = 0; device < DEVICES; device++) {
+            processed.add(new ArrayList<>());
+        }
+        for (int packet = 0; packet < PACKETS_PER_DEVICE; packet++) {
+            for (int device = 0; device < DEVICES; device++) {
+                List<Integer> packets = processed.get(device);
+                int sequence = packet;
+                packetExecutor.execute("device" + device, () -> {
+                    try {
+                        Thread.sleep(BLOCKING_MS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    packets.add(sequence);
+                    done.countDown();
+                    return PacketClass.STATE;
+                });
+            }
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        logger.info("Processed {} packets of {} devices on {} in {} ms", DEVICES * PACKETS_PER_DEVICE, DEVICES, name,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        for (List<Integer> packets : processed) {
+            assertEquals(PACKETS_PER_DEVICE, packets.size());
+            for (int i = 0; i < PACKETS_PER_DEVICE; i++) {
+                assertEquals(i, packets.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package no.seime.openhab.binding.esphome.internal.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.types.State;
+
+import no.seime.openhab.binding.esphome.internal.BindingConstants;
+
+class StateAdmissionControllerTest {
+
+    private final ThingUID thingUID = new ThingUID(BindingConstants.THING_TYPE_DEVICE, "device");
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final StateAdmissionController controller = new StateAdmissionController(scheduler);
+    private final List<State> posted = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        controller.dispose();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void postsEverythingWithoutLimit() {
+        StateAdmissionController.Budget budget = controller.register("device", (uid, state) -> posted.add(state),
+                b -> {
+                });
+        for (int i = 0; i < 100; i++) {
+            budget.post(new ChannelUID(thingUID, "sensor"), new DecimalType(i), i % 2 == 0);
+        }
+        assertEquals(100, posted.size());
+        assertEquals(0, budget.getShed());
+    }
+
+    @Test
+    void shedsLowPriorityAndCoalescesOtherStatesWhenBudgetIsExceeded() {
+        controller.setRate(2);
+        StateAdmissionController.Budget budget = controller.register("device", (uid, state) -> {
+            synchronized (posted) {
+                posted.add(state);
+            }
+        }, b -> {
+        });
+        ChannelUID sensor = new ChannelUID(thingUID, "sensor");
+        ChannelUID diagnostic = new ChannelUID(thingUID, "diagnostic");
+
+        assertTrue(budget.post(sensor, new DecimalType(1), false));
+        assertTrue(budget.post(sensor, new DecimalType(2), false));
+        assertTrue(budget.post(sensor, new DecimalType(3), false));
+        assertTrue(budget.post(sensor, new DecimalType(4), false));
+        assertFalse(budget.post(diagnostic, new DecimalType(5), true));
+
+        synchronized (posted) {
+            assertEquals(List.of(new DecimalType(1), new DecimalType(2)), posted);
+        }
+        assertEquals(1, budget.getShed());
+        assertEquals(1, budget.getCoalesced());
+
+        // The latest pending state is posted when the limit is lifted
+        controller.setRate(0);
+        synchronized (posted) {
+            assertEquals(List.of(new DecimalType(1), new DecimalType(2), new DecimalType(4)), posted);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package no.seime.openhab.binding.esphome.internal.handler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openhab.core.library.types.DecimalType;
+import org.openhab.core.library.types.HSBType;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.library.types.QuantityType;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.thing.ThingUID;
+import org.openhab.core.types.UnDefType;
+
+import no.seime.openhab.binding.esphome.internal.BindingConstants;
+
+class StateSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    private final ThingUID thingUID = new ThingUID(BindingConstants.THING_TYPE_DEVICE, "kitchen");
+
+    @Test
+    void restoresLastStatePerChannel() {
+        StateSnapshotStore store = new StateSnapshotStore(directory);
+        try (StateSnapshot snapshot = store.open(thingUID)) {
+            snapshot.record("temperature", new QuantityType<>("20.5 °C"));
+            snapshot.record("temperature", new QuantityType<>("21.5 °C"));
+            snapshot.record("relay", OnOffType.ON);
+            snapshot.record("color", new HSBType("120,100,50"));
+            snapshot.record("count", new DecimalType(42));
+            snapshot.record("name", new StringType("hello"));
+            snapshot.record("name", UnDefType.UNDEF);
+        }
+
+        try (StateSnapshot snapshot = store.open(thingUID)) {
+            Map<String, ?> states = snapshot.getStates();
+            assertEquals(4, states.size());
+            assertEquals(new QuantityType<>("21.5 °C"), states.get("temperature"));
+            assertEquals(OnOffType.ON, states.get("relay"));
+            assertEquals(new HSBType("120,100,50"), states.get("color"));
+            assertEquals(new DecimalType(42), states.get("count"));
+        }
+    }
+
+    @Test
+    void ignoresStatesRecordedAfterClose() {
+        StateSnapshotStore store = new StateSnapshotStore(directory);
+        StateSnapshot closed = store.open(thingUID);
+        closed.record("relay", OnOffType.ON);
+        closed.close();
+        closed.record("relay", OnOffType.OFF);
+        closed.close();
+
+        try (StateSnapshot snapshot = store.open(thingUID)) {
+            assertEquals(OnOffType.ON, snapshot.getStates().get("relay"));
+        }
+    }
+
+    @Test
+    void keepsDeletedSnapshotDeleted() throws IOException {
+        StateSnapshotStore store = new StateSnapshotStore(directory);
+        StateSnapshot snapshot = store.open(thingUID);
+        for (int i = 0; i < 1000; i++) {
+            snapshot.record("counter", new DecimalType(i));
+        }
+        snapshot.delete();
+        snapshot.record("relay", OnOffType.ON);
+        snapshot.close();
+
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void compactsAndDropsRemovedChannels() throws IOException {
+        StateSnapshotStore store = new StateSnapshotStore(directory);
+        try (StateSnapshot snapshot = store.open(thingUID)) {
+            for (int i = 0; i < 1000; i++) {
+                snapshot.record("counter", new DecimalType(i));
+            }
+            snapshot.record("gone", OnOffType.OFF);
+            snapshot.retain(List.of("counter"));
+        }
+
+        try (StateSnapshot snapshot = store.open(thingUID)) {
+            assertEquals(Map.of("counter", new DecimalType(999)), snapshot.getStates());
+        }
+        try (var files = Files.list(directory)) {
+            Path file = files.findFirst().orElseThrow();
+            assertTrue(Files.size(file) < 100);
+        }
+    }
+
+    @Test
+    void ignoresTornRecordAtEndOfFile() throws IOException {
+        StateSnapshotStore store = new StateSnapshotStore(directory);
+        try (StateSnapshot snapshot = store.open(thingUID)) {
+            snapshot.record("relay", OnOffType.ON);
+        }
+        try (var files = Files.list(directory)) {
+            Path file = files.findFirst().orElseThrow();
+            Files.write(file, new byte[] { 0, 5, 'r' }, StandardOpenOption.APPEND);
+        }
+
+        try (StateSnapshot snapshot = store.open(thingUID)) {
+            assertEquals(Map.of("relay", OnOffType.ON), snapshot.getStates());
+        }
+    }
+}
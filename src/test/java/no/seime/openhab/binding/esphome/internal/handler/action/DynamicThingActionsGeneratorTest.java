@@ -0,0 +1,40 @@
+package no.seime.openhab.binding.esphome.internal.handler.action;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.Test;
+
+import io.esphome.api.ListEntitiesServicesArgument;
+import io.esphome.api.ListEntitiesServicesResponse;
+import io.esphome.api.ServiceArgType;
+
+public class DynamicThingActionsGeneratorTest {
+
+    @Test
+    public void reusesClassForIdenticalSignature() throws Exception {
+        AbstractESPHomeThingAction first = DynamicThingActionsGenerator
+                .generateDynamicThingAction(service(1, ServiceArgType.SERVICE_ARG_TYPE_INT_VALUE));
+        AbstractESPHomeThingAction second = DynamicThingActionsGenerator
+                .generateDynamicThingAction(service(2, ServiceArgType.SERVICE_ARG_TYPE_INT_VALUE));
+
+        assertNotSame(first, second);
+        assertSame(first.getClass(), second.getClass());
+    }
+
+    @Test
+    public void generatesNewClassForDifferentArgumentType() throws Exception {
+        AbstractESPHomeThingAction first = DynamicThingActionsGenerator
+                .generateDynamicThingAction(service(1, ServiceArgType.SERVICE_ARG_TYPE_INT_VALUE));
+        AbstractESPHomeThingAction second = DynamicThingActionsGenerator
+                .generateDynamicThingAction(service(1, ServiceArgType.SERVICE_ARG_TYPE_STRING_VALUE));
+
+        assertNotSame(first.getClass(), second.getClass());
+    }
+
+    private static ListEntitiesServicesResponse service(int key, int argType) {
+        return ListEntitiesServicesResponse.newBuilder().setKey(key).setName("set_level")
+                .addArgs(ListEntitiesServicesArgument.newBuilder().setName("level").setTypeValue(argType).build())
+                .build();
+    }
+}
@@ -0,0 +1,151 @@
+package no.seime.openhab.binding.esphome.internal.message;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.openhab.core.config.core.Configuration;
+import org.openhab.core.library.types.StringType;
+import org.openhab.core.library.unit.SIUnits;
+import org.openhab.core.library.unit.Units;
+
+import no.seime.openhab.binding.esphome.internal.message.ChannelStateConverter.NumericKind;
+import no.seime.openhab.binding.esphome.internal.message.LightMessageHandler.LightColorCapability;
+
+public class ChannelStateConverterTest {
+
+    @Test
+    public void resolvesUnitAndDeviceClassOnce() {
+        ChannelStateConverter converter = ChannelStateConverter
+                .compile(new Configuration(Map.of("deviceClass", "temperature", "unit", "°C")));
+        assertEquals(NumericKind.NUMBER, converter.getNumericKind());
+        assertEquals(SIUnits.CELSIUS, converter.getUnit());
+    }
+
+    @Test
+    public void transformsEsphomeUnits() {
+        ChannelStateConverter converter = ChannelStateConverter.compile(new Configuration(Map.of("unit", "seconds")));
+        assertEquals(Units.SECOND, converter.getUnit());
+    }
+
+    @Test
+    public void resolvesTimestampAsDateTime() {
+        ChannelStateConverter converter = ChannelStateConverter
+                .compile(new Configuration(Map.of("deviceClass", "timestamp")));
+        assertEquals(NumericKind.DATETIME, converter.getNumericKind());
+        assertNull(converter.getUnit());
+    }
+
+    @Test
+    public void resolvesContactAndLightCapabilities() {
+        assertTrue(ChannelStateConverter.compile(new Configuration(Map.of("deviceClass", "door"))).isContact());
+
+        ChannelStateConverter light = ChannelStateConverter
+                .compile(new Configuration(Map.of("capabilities", "ON_OFF,BRIGHTNESS")));
+        assertFalse(light.isContact());
+        assertTrue(light.hasCapability(LightColorCapability.ON_OFF));
+        assertTrue(light.hasCapability(LightColorCapability.BRIGHTNESS));
+        assertFalse(light.hasCapability(LightColorCapability.RGB));
+    }
+
+    @Test
+    public void suppressesUnchangedStatesWhenPublishingChangesOnly() {
+        ChannelStateConverter converter = ChannelStateConverter.compile(new Configuration(), true, 0, false);
+        assertTrue(converter.shouldPublish(21.5f));
+        assertFalse(converter.shouldPublish(21.5f));
+        assertTrue(converter.shouldPublish(21.6f));
+        assertTrue(converter.shouldPublish(new StringType("on")));
+        assertFalse(converter.shouldPublish(new StringType("on")));
+        assertTrue(converter.shouldPublish(21.6f));
+    }
+
+    @Test
+    public void publishesStateAgainAfterItWasShed() {
+        ChannelStateConverter converter = ChannelStateConverter.compile(new Configuration(), true, 0, true);
+        assertTrue(converter.shouldPublish(21.5f));
+        converter.shed();
+        assertTrue(converter.shouldPublish(21.5f));
+        assertFalse(converter.shouldPublish(21.5f));
+
+        assertTrue(converter.shouldPublish(new StringType("on")));
+        converter.shed();
+        assertTrue(converter.shouldPublish(new StringType("on")));
+    }
+
+    @Test
+    public void channelOverridesThingPublishMode() {
+        ChannelStateConverter all = ChannelStateConverter.compile(new Configuration(Map.of("publishMode", "all")), true,
+                0, false);
+        assertTrue(all.shouldPublish(1f));
+        assertTrue(all.shouldPublish(1f));
+
+        ChannelStateConverter changes = ChannelStateConverter
+                .compile(new Configuration(Map.of("publishMode", "changes")), false, 0, false);
+        assertTrue(changes.shouldPublish(1f));
+        assertFalse(changes.shouldPublish(1f));
+    }
+
+    @Test
+    public void appliesDeadbandsAgainstLastPublishedValue() {
+        ChannelStateConverter absolute = ChannelStateConverter
+                .compile(new Configuration(Map.of("deadband", new BigDecimal("0.5"))));
+        assertTrue(absolute.shouldPublish(20f));
+        assertFalse(absolute.shouldPublish(20.3f));
+        assertFalse(absolute.shouldPublish(20.5f));
+        assertTrue(absolute.shouldPublish(20.6f));
+        assertFalse(absolute.shouldPublish(20.2f));
+
+        ChannelStateConverter relative = ChannelStateConverter
+                .compile(new Configuration(Map.of("deadbandPercent", new BigDecimal("10"))));
+        assertTrue(relative.shouldPublish(1000f));
+        assertFalse(relative.shouldPublish(1090f));
+        assertTrue(relative.shouldPublish(1101f));
+    }
+
+    @Test
+    public void limitsPublishRate() {
+        ChannelStateConverter converter = ChannelStateConverter
+                .compile(new Configuration(Map.of("minInterval", new BigDecimal("60"))));
+        assertTrue(converter.shouldPublish(1f));
+        assertFalse(converter.shouldPublish(2f));
+    }
+
+    @Test
+    public void keepsStateSuppressedByMinimumInterval() {
+        ChannelStateConverter converter = ChannelStateConverter
+                .compile(new Configuration(Map.of("minInterval", new BigDecimal("60"))));
+        assertEquals(-1, converter.scheduleTrailing());
+        assertTrue(converter.shouldPublish(1f));
+        assertFalse(converter.shouldPublish(2f));
+        assertFalse(converter.shouldPublish(3f));
+
+        long delayNanos = converter.scheduleTrailing();
+        assertTrue(delayNanos > 0 && delayNanos <= TimeUnit.SECONDS.toNanos(60));
+        // Scheduled once
+        assertEquals(-1, converter.scheduleTrailing());
+
+        // Still within the interval, kept for later
+        assertTrue(Float.isNaN(converter.takeTrailing()));
+        assertTrue(converter.scheduleTrailing() > 0);
+    }
+
+    @Test
+    public void publishesSuppressedStateOnceIntervalHasPassed() throws InterruptedException {
+        ChannelStateConverter converter = ChannelStateConverter
+                .compile(new Configuration(Map.of("minInterval", new BigDecimal("0.001"))));
+        assertTrue(converter.shouldPublish(1f));
+        assertFalse(converter.shouldPublish(2f));
+        long delayNanos = converter.scheduleTrailing();
+
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(delayNanos) + 5);
+        assertEquals(2f, converter.takeTrailing());
+        assertEquals(-1, converter.scheduleTrailing());
+        assertTrue(Float.isNaN(converter.takeTrailing()));
+    }
+}
@@ -2,6 +2,10 @@ package no.seime.openhab.binding.esphome.internal.message;
 
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -27,6 +31,9 @@ public class ClimateMessageHandlerTest {
 
     @Test
     public void testAggregateCommand() throws InterruptedException, ProtocolAPIError {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        when(handler.getCommandAggregator())
+                .thenReturn(new CommandAggregator(scheduler, m -> handler.sendMessage(m), "test", 200));
         ClimateMessageHandler messageHandler = new ClimateMessageHandler(handler);
 
         Configuration fanModeConfig = new Configuration();
@@ -47,5 +54,6 @@ public class ClimateMessageHandlerTest {
 
         Thread.sleep(500);
         verify(handler).sendMessage(isA(GeneratedMessage.class));
+        scheduler.shutdownNow();
     }
 }
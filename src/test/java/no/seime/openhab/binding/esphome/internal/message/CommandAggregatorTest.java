@@ -0,0 +1,133 @@
+package no.seime.openhab.binding.esphome.internal.message;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.google.protobuf.GeneratedMessage;
+
+import io.esphome.api.CoverCommandRequest;
+import io.esphome.api.LightCommandRequest;
+
+public class CommandAggregatorTest {
+
+    private final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+    private final ScheduledFuture<?> future = mock(ScheduledFuture.class);
+    private final List<GeneratedMessage> sent = new ArrayList<>();
+
+    @Test
+    public void mergesCommandsWithinWindow() {
+        CommandAggregator aggregator = aggregator(200);
+        when(scheduler.schedule(any(Runnable.class), anyLong(), any())).thenAnswer(i -> future);
+
+        light(aggregator, 1, b -> b.setState(true).setHasState(true));
+        light(aggregator, 1, b -> b.setEffect("rainbow").setHasEffect(true));
+        light(aggregator, 2, b -> b.setState(false).setHasState(true));
+        assertTrue(sent.isEmpty());
+
+        ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler, times(2)).schedule(flush.capture(), eq(200L), eq(TimeUnit.MILLISECONDS));
+        flush.getAllValues().forEach(Runnable::run);
+
+        assertEquals(2, sent.size());
+        LightCommandRequest first = (LightCommandRequest) sent.get(0);
+        assertEquals(1, first.getKey());
+        assertTrue(first.getState());
+        assertEquals("rainbow", first.getEffect());
+        assertEquals(2, ((LightCommandRequest) sent.get(1)).getKey());
+    }
+
+    @Test
+    public void sendsRightAwayWithoutWindow() {
+        CommandAggregator aggregator = aggregator(0);
+
+        light(aggregator, 1, b -> b.setState(true).setHasState(true));
+
+        assertEquals(1, sent.size());
+    }
+
+    @Test
+    public void sendsFirstCommandOfBurstRightAway() {
+        CommandAggregator aggregator = aggregator(200);
+        when(scheduler.schedule(any(Runnable.class), anyLong(), any())).thenAnswer(i -> future);
+
+        burst(aggregator, b -> b.setState(true).setHasState(true));
+        assertEquals(1, sent.size());
+
+        burst(aggregator, b -> b.setBrightness(0.5f).setHasBrightness(true));
+        burst(aggregator, b -> b.setEffect("rainbow").setHasEffect(true));
+        assertEquals(1, sent.size());
+
+        ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(flush.capture(), eq(200L), eq(TimeUnit.MILLISECONDS));
+        flush.getValue().run();
+
+        assertEquals(2, sent.size());
+        LightCommandRequest merged = (LightCommandRequest) sent.get(1);
+        assertEquals(0.5f, merged.getBrightness());
+        assertEquals("rainbow", merged.getEffect());
+    }
+
+    @Test
+    public void sendsNothingMoreForSingleCommandOfBurst() {
+        CommandAggregator aggregator = aggregator(200);
+        when(scheduler.schedule(any(Runnable.class), anyLong(), any())).thenAnswer(i -> future);
+
+        burst(aggregator, b -> b.setState(true).setHasState(true));
+
+        ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(flush.capture(), anyLong(), any());
+        flush.getValue().run();
+        assertEquals(1, sent.size());
+
+        // The window has closed, so the next command goes out right away
+        burst(aggregator, b -> b.setState(false).setHasState(true));
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    public void discardsPendingRequest() {
+        CommandAggregator aggregator = aggregator(200);
+        when(scheduler.schedule(any(Runnable.class), anyLong(), any())).thenAnswer(i -> future);
+        aggregator.merge(1, CoverCommandRequest.Builder.class, k -> CoverCommandRequest.newBuilder().setKey(k),
+                b -> b.setPosition(0.5f).setHasPosition(true));
+
+        aggregator.discard(1, CoverCommandRequest.Builder.class);
+
+        verify(future).cancel(false);
+        ArgumentCaptor<Runnable> flush = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler).schedule(flush.capture(), anyLong(), any());
+        flush.getValue().run();
+        assertTrue(sent.isEmpty());
+    }
+
+    private CommandAggregator aggregator(long mergeWindowMillis) {
+        return new CommandAggregator(scheduler, sent::add, "test", mergeWindowMillis);
+    }
+
+    private void burst(CommandAggregator aggregator, Consumer<LightCommandRequest.Builder> merge) {
+        aggregator.mergeBurst(1, LightCommandRequest.Builder.class, k -> LightCommandRequest.newBuilder().setKey(k),
+                merge);
+    }
+
+    private void light(CommandAggregator aggregator, int key, Consumer<LightCommandRequest.Builder> merge) {
+        aggregator.merge(key, LightCommandRequest.Builder.class, k -> LightCommandRequest.newBuilder().setKey(k),
+                merge);
+    }
+}
@@ -0,0 +1,59 @@
+package no.seime.openhab.binding.esphome.internal.message;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openhab.core.library.types.OnOffType;
+import org.openhab.core.thing.Channel;
+import org.openhab.core.thing.ChannelUID;
+import org.openhab.core.thing.binding.builder.ChannelBuilder;
+import org.openhab.core.types.RefreshType;
+
+import no.seime.openhab.binding.esphome.internal.comm.ProtocolAPIError;
+import no.seime.openhab.binding.esphome.internal.handler.ChannelStateStore;
+import no.seime.openhab.binding.esphome.internal.handler.ESPHomeHandler;
+
+public class SwitchMessageHandlerTest {
+
+    private static final long WINDOW = TimeUnit.SECONDS.toNanos(10);
+
+    private final ESPHomeHandler handler = mock(ESPHomeHandler.class);
+    private final ChannelStateStore store = new ChannelStateStore();
+    private final Channel channel = ChannelBuilder.create(new ChannelUID("esphome:device:test:relay")).build();
+    private SwitchMessageHandler messageHandler;
+
+    @BeforeEach
+    public void setUp() {
+        when(handler.getStateStore()).thenReturn(store);
+        messageHandler = new SwitchMessageHandler(handler);
+    }
+
+    @Test
+    public void dropsCommandForReportedState() {
+        store.recordState(channel.getUID().getId(), OnOffType.ON);
+
+        assertTrue(messageHandler.isRedundantCommand(channel, OnOffType.ON, WINDOW));
+        assertFalse(messageHandler.isRedundantCommand(channel, OnOffType.OFF, WINDOW));
+        assertFalse(messageHandler.isRedundantCommand(channel, RefreshType.REFRESH, WINDOW));
+    }
+
+    @Test
+    public void sendsCommandAgainAfterOtherCommand() throws ProtocolAPIError {
+        store.recordState(channel.getUID().getId(), OnOffType.ON);
+
+        messageHandler.sendCommand(channel, OnOffType.OFF, 1);
+        // The device has not reported OFF yet, so ON is still needed
+        assertFalse(messageHandler.isRedundantCommand(channel, OnOffType.ON, WINDOW));
+        assertFalse(messageHandler.isRedundantCommand(channel, OnOffType.OFF, WINDOW));
+
+        store.recordState(channel.getUID().getId(), OnOffType.OFF);
+        assertTrue(messageHandler.isRedundantCommand(channel, OnOffType.OFF, WINDOW));
+        assertFalse(messageHandler.isRedundantCommand(channel, OnOffType.ON, WINDOW));
+    }
+}
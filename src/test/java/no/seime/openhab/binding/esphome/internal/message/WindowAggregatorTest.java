@@ -0,0 +1,41 @@
+package no.seime.openhab.binding.esphome.internal.message;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class WindowAggregatorTest {
+
+    @Test
+    public void aggregatesSamplesOfWindow() {
+        WindowAggregator aggregator = new WindowAggregator(1000);
+        assertFalse(aggregator.isComplete(0));
+
+        assertTrue(aggregator.add(2f, 0));
+        assertFalse(aggregator.add(6f, 400));
+        assertFalse(aggregator.add(1f, 900));
+        assertFalse(aggregator.isComplete(999));
+        assertTrue(aggregator.isComplete(1000));
+
+        assertEquals(3f, aggregator.getAverage());
+        assertEquals(1f, aggregator.getMin());
+        assertEquals(6f, aggregator.getMax());
+        assertEquals(3, aggregator.getCount());
+    }
+
+    @Test
+    public void startsNextWindowWithFirstSampleAfterReset() {
+        WindowAggregator aggregator = new WindowAggregator(1000);
+        aggregator.add(10f, 0);
+        aggregator.reset();
+
+        assertTrue(aggregator.add(-5f, 5000));
+        assertFalse(aggregator.isComplete(5999));
+        assertEquals(-5f, aggregator.getAverage());
+        assertEquals(-5f, aggregator.getMin());
+        assertEquals(-5f, aggregator.getMax());
+        assertEquals(1, aggregator.getCount());
+    }
+}